@@ -0,0 +1,73 @@
+package com.github.eclipseace.jtoolset.captcha_benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import javax.imageio.ImageIO;
+
+import com.github.eclipseace.jtoolset.captcha_maker.CaptchaEngine;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+/**
+ * Generates one captcha per operation, as an endpoint serving them would: a
+ * new prototype, its challenge image, and the image encoded to bytes. Besides
+ * the latency of the whole operation, rendering and encoding are recorded
+ * under the {@value #RENDER_METRIC} and {@value #ENCODE_METRIC} metrics, and
+ * the encoded bytes summed under {@value #BYTES_COUNTER}.
+ */
+public class CaptchaRoutine implements MultiThreadTest.Routine {
+	public static final String RENDER_METRIC = "render";
+	public static final String ENCODE_METRIC = "encode";
+	public static final String BYTES_COUNTER = "captcha:bytes";
+	public static final String DEFAULT_FORMAT = "png";
+
+	private final CaptchaEngine<String, BufferedImage> engine;
+	private final String format;
+	private final ThreadLocal<ByteArrayOutputStream> bufferHolder = ThreadLocal
+			.withInitial(() -> new ByteArrayOutputStream(16 * 1024));
+
+	public CaptchaRoutine(CaptchaEngine<String, BufferedImage> engine) {
+		this(engine, DEFAULT_FORMAT);
+	}
+
+	/**
+	 * @param format an {@link ImageIO} format name, e.g. png or jpg
+	 */
+	public CaptchaRoutine(CaptchaEngine<String, BufferedImage> engine, String format) {
+		if (!ImageIO.getImageWritersByFormatName(format).hasNext()) {
+			throw new IllegalArgumentException("No image writer for format " + format);
+		}
+		this.engine = engine;
+		this.format = format;
+	}
+
+	@Override
+	public void execute(RoutineContext context) {
+		context.run(() -> {
+			long begin = System.nanoTime();
+			BufferedImage image = engine.getChallenge(engine.getPrototype());
+			long rendered = System.nanoTime();
+			ByteArrayOutputStream buffer = bufferHolder.get();
+			buffer.reset();
+			try {
+				ImageIO.write(image, format, buffer);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			context.getRecorder(RENDER_METRIC).record(rendered - begin);
+			context.getRecorder(ENCODE_METRIC).record(System.nanoTime() - rendered);
+			context.getCounter(BYTES_COUNTER).add(buffer.size());
+		});
+	}
+
+	@Override
+	public void beforeLoop() {
+	}
+
+	@Override
+	public void afterLoop() {
+	}
+}
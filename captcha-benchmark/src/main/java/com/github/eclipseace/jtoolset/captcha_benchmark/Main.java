@@ -0,0 +1,184 @@
+package com.github.eclipseace.jtoolset.captcha_benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.HdrHistogram.Histogram;
+
+import com.github.eclipseace.jtoolset.captcha_maker.PooledCaptchaEngine;
+import com.github.eclipseace.jtoolset.captcha_maker.TextImageCaptchaEngine;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+public class Main {
+	private static int DISPLAY_WIDTH = 120;
+	private static double NANOS_PER_MILLI = 1000000.0;
+
+	public static void main(String[] args) throws Exception {
+		Options opts = new Options()
+				.addOption("t", "threads", true, "total threads, default available processors")
+				.addOption("h", "thread-interval", true, "thread startup interval, in millis, default 0")
+				.addOption("l", "loops", true, "total loops per thread, default 1000")
+				.addOption("o", "loop-interval", true, "interval per loop, in millis, default 0")
+				.addOption("d", "duration", true, "stop after this many millis even if loops remain, default 0 (none)")
+				.addOption("r", "rate", true, "target generations/s across all threads, enables open-loop mode, default 0")
+				.addOption(null, "warmup-time", true, "warmup recorded apart from results, in millis, default 0")
+				.addOption("f", "format", true, "image format the challenges are encoded to, default png")
+				.addOption(null, "disk-cache", false, "let ImageIO buffer encoded images in temporary files")
+				.addOption(null, "width", true, "image width, default " + TextImageCaptchaEngine.DEFAULT_WIDTH)
+				.addOption(null, "height", true, "image height, default " + TextImageCaptchaEngine.DEFAULT_HEIGHT)
+				.addOption(null, "length", true, "characters per challenge, default " + TextImageCaptchaEngine.DEFAULT_LENGTH)
+				.addOption(null, "pool-depth", true, "captchas pre-rendered by background workers, default 0 (render on request)")
+				.addOption(null, "pool-workers", true, "threads refilling the pool, default " + PooledCaptchaEngine.DEFAULT_WORKERS)
+				.addOption(null, "refill-rate", true, "captchas rendered per second into the pool, default 0 (unlimited)")
+				.addOption(null, "prefill", false, "wait for the pool to fill before starting")
+				.addOption("I", "report-interval", true, "reporting interval, in millis, default 1000");
+		CommandLine cl = new DefaultParser().parse(opts, args);
+
+		int threads = Integer.parseInt(cl.getOptionValue("t",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		int threadInterval = Integer.parseInt(cl.getOptionValue("h", "0"));
+		int loops = Integer.parseInt(cl.getOptionValue("l", "1000"));
+		int loopInterval = Integer.parseInt(cl.getOptionValue("o", "0"));
+		long duration = Long.parseLong(cl.getOptionValue("d", "0"));
+		double rate = Double.parseDouble(cl.getOptionValue("r", "0"));
+		long warmupTime = Long.parseLong(cl.getOptionValue("warmup-time", "0"));
+		String format = cl.getOptionValue("f", CaptchaRoutine.DEFAULT_FORMAT);
+		long reportInterval = Long.parseLong(cl.getOptionValue("I", "1000"));
+
+		TextImageCaptchaEngine engine = new TextImageCaptchaEngine();
+		engine.setWidth(Integer.parseInt(cl.getOptionValue("width", String.valueOf(engine.getWidth()))));
+		engine.setHeight(Integer.parseInt(cl.getOptionValue("height", String.valueOf(engine.getHeight()))));
+		engine.setLength(Integer.parseInt(cl.getOptionValue("length", String.valueOf(engine.getLength()))));
+		ImageIO.setUseCache(cl.hasOption("disk-cache"));
+		int poolDepth = Integer.parseInt(cl.getOptionValue("pool-depth", "0"));
+		PooledCaptchaEngine pool = null;
+		MultiThreadTest.Routine routine;
+		if (poolDepth > 0) {
+			pool = new PooledCaptchaEngine(engine, format);
+			pool.setDepth(poolDepth);
+			pool.setWorkers(Integer.parseInt(cl.getOptionValue("pool-workers",
+					String.valueOf(PooledCaptchaEngine.DEFAULT_WORKERS))));
+			pool.setRefillRate(Double.parseDouble(cl.getOptionValue("refill-rate", "0")));
+			routine = new PooledCaptchaRoutine(pool);
+		} else {
+			routine = new CaptchaRoutine(engine, format);
+		}
+
+		System.out.println(String.join("\r\n", Arrays.asList(
+				"Threads          :" + threads,
+				"Loops            :" + loops + (duration > 0 ? " or " + duration + "ms" : ""),
+				"Loops interval   :" + loopInterval,
+				"Warmup           :" + (warmupTime > 0 ? warmupTime + "ms" : "none"),
+				"Target rate      :" + (rate > 0 ? rate + " generations/s (open-loop)" : "unlimited (closed-loop)"),
+				"Captcha          :" + engine.getWidth() + "x" + engine.getHeight() + ", " + engine.getLength()
+						+ " characters, " + format + (cl.hasOption("disk-cache") ? " (disk cache)" : ""),
+				"Pool             :" + (pool != null ? pool.getDepth() + " deep, " + pool.getWorkers() + " workers, "
+						+ (pool.getRefillRate() > 0 ? pool.getRefillRate() + "/s" : "unlimited") + " refill" : "none"))));
+		for (int n = 0; n < DISPLAY_WIDTH; n++) {
+			System.out.print('=');
+		}
+		System.out.println();
+
+		MultiThreadTest mtt = new MultiThreadTest("captcha-", threads, threadInterval, loops, loopInterval);
+		mtt.setTargetRate(rate);
+		mtt.setWarmupDuration(warmupTime, TimeUnit.MILLISECONDS);
+		if (duration > 0) {
+			mtt.setDuration(duration, TimeUnit.MILLISECONDS);
+		}
+		if (pool != null) {
+			pool.start();
+			while (cl.hasOption("prefill") && pool.getSize() < pool.getDepth()) {
+				if (pool.getFailures() >= pool.getDepth()) {
+					pool.close();
+					throw new IllegalStateException(
+							"Pool workers failed to render " + pool.getFailures() + " captchas while prefilling");
+				}
+				Thread.sleep(10);
+			}
+		}
+		mtt.start(routine);
+		while (!mtt.join(reportInterval, TimeUnit.MILLISECONDS)) {
+			mtt.compute(Main::printInterval);
+		}
+		if (pool != null) {
+			pool.close();
+		}
+		mtt.compute(Main::printInterval);
+		System.out.println();
+		mtt.compute(Main::printSummary);
+		if (pool != null && pool.getFailures() > 0) {
+			System.out.println("Pool failures    :" + pool.getFailures() + " captchas failed to render in the workers");
+		}
+	}
+
+	private static Void printInterval(MultiThreadTest.ComputeContext cc) {
+		System.out.print('\r');
+		for (int n = 0; n < DISPLAY_WIDTH; n++) {
+			System.out.print(' ');
+		}
+		System.out.print('\r');
+		List<Object> events = new ArrayList<>();
+		cc.getPendingEvents().drainTo(events);
+		for (Object event : events) {
+			System.out.println(event instanceof Throwable ? ((Throwable) event).getMessage() : event.toString());
+		}
+		if (cc.isWarmingUp()) {
+			System.out.print(String.format("warming up, threads=%d", cc.getActiveThreads()));
+			return null;
+		}
+		Histogram h = cc.getIntervalHistogram();
+		System.out.print(String.format("gen/s=%.0f, 50%%=%.3f, 99%%=%.3f, max=%.3f, threads=%d, errors=%d",
+				cc.getIntervalThroughput(), h.getValueAtPercentile(50) / NANOS_PER_MILLI,
+				h.getValueAtPercentile(99) / NANOS_PER_MILLI, h.getMaxValue() / NANOS_PER_MILLI,
+				cc.getActiveThreads(), cc.getTotalErrors()));
+		return null;
+	}
+
+	private static Void printSummary(MultiThreadTest.ComputeContext cc) {
+		for (int n = 0; n < DISPLAY_WIDTH; n++) {
+			System.out.print('=');
+		}
+		System.out.println();
+		Histogram h = cc.getHistogram();
+		double seconds = cc.getMeasuredNanos() / 1e9;
+		System.out.println(String.format("Measured         :%.3f s", seconds));
+		System.out.println(String.format("Generations      :%d (%.0f/s)", h.getTotalCount(), h.getTotalCount() / seconds));
+		System.out.println("Errors           :" + cc.getTotalErrors());
+		System.out.println("Latency (ms)     :" + formatLatency(h));
+		if (cc.getCorrectedHistogram().getTotalCount() > 0) {
+			System.out.println("Corrected (ms)   :" + formatLatency(cc.getCorrectedHistogram()));
+		}
+		for (String metric : Arrays.asList(CaptchaRoutine.RENDER_METRIC, CaptchaRoutine.ENCODE_METRIC)) {
+			if (cc.getHistogram(metric) != null) {
+				System.out.println(String.format("%-17s:%s", metric + " (ms)", formatLatency(cc.getHistogram(metric))));
+			}
+		}
+		Long hits = cc.getCounters().get(PooledCaptchaRoutine.HITS_COUNTER);
+		Long misses = cc.getCounters().get(PooledCaptchaRoutine.MISSES_COUNTER);
+		if (hits != null || misses != null) {
+			long hit = hits != null ? hits : 0;
+			long miss = misses != null ? misses : 0;
+			System.out.println(String.format("Pool             :%d hits, %d misses (%.1f%% hit)", hit, miss,
+					100.0 * hit / (hit + miss)));
+		}
+		Long bytes = cc.getCounters().get(CaptchaRoutine.BYTES_COUNTER);
+		if (bytes != null && h.getTotalCount() > 0) {
+			System.out.println(String.format("Image size       :%.0f bytes avg", (double) bytes / h.getTotalCount()));
+		}
+		return null;
+	}
+
+	private static String formatLatency(Histogram h) {
+		return String.format("avg=%.3f, 50%%=%.3f, 90%%=%.3f, 99%%=%.3f, 99.9%%=%.3f, max=%.3f, n=%d",
+				h.getMean() / NANOS_PER_MILLI, h.getValueAtPercentile(50) / NANOS_PER_MILLI,
+				h.getValueAtPercentile(90) / NANOS_PER_MILLI, h.getValueAtPercentile(99) / NANOS_PER_MILLI,
+				h.getValueAtPercentile(99.9) / NANOS_PER_MILLI, h.getMaxValue() / NANOS_PER_MILLI, h.getTotalCount());
+	}
+}
@@ -0,0 +1,43 @@
+package com.github.eclipseace.jtoolset.captcha_benchmark;
+
+import com.github.eclipseace.jtoolset.captcha_maker.PooledCaptchaEngine;
+import com.github.eclipseace.jtoolset.captcha_maker.PooledCaptchaEngine.Captcha;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+/**
+ * Takes one captcha per operation from a {@link PooledCaptchaEngine}, counting
+ * takes served by the pool under {@value #HITS_COUNTER} and those rendered on
+ * the thread under {@value #MISSES_COUNTER}, both only once warmed up. The
+ * pool is started and closed by the caller, who may let it fill before the
+ * test starts.
+ */
+public class PooledCaptchaRoutine implements MultiThreadTest.Routine {
+	public static final String HITS_COUNTER = "pool:hits";
+	public static final String MISSES_COUNTER = "pool:misses";
+
+	private final PooledCaptchaEngine pool;
+
+	public PooledCaptchaRoutine(PooledCaptchaEngine pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public void execute(RoutineContext context) {
+		context.run(() -> {
+			Captcha captcha = pool.take();
+			if (!context.isWarmingUp()) {
+				context.getCounter(captcha.isPooled() ? HITS_COUNTER : MISSES_COUNTER).increment();
+			}
+			context.getCounter(CaptchaRoutine.BYTES_COUNTER).add(captcha.getImage().length);
+		});
+	}
+
+	@Override
+	public void beforeLoop() {
+	}
+
+	@Override
+	public void afterLoop() {
+	}
+}
@@ -0,0 +1,34 @@
+package com.github.eclipseace.jtoolset.captcha_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.captcha_maker.TextImageCaptchaEngine;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+class CaptchaRoutineTest {
+	@Test
+	void generatesAndEncodesAcrossThreads() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("captcha-", 2, 0, 5, 0);
+		mtt.start(new CaptchaRoutine(new TextImageCaptchaEngine()));
+		assertThat(mtt.join(60, TimeUnit.SECONDS)).isTrue();
+		mtt.compute(cc -> {
+			assertThat(cc.getTotalErrors()).isZero();
+			assertThat(cc.getHistogram().getTotalCount()).isEqualTo(10);
+			assertThat(cc.getHistogram(CaptchaRoutine.RENDER_METRIC).getTotalCount()).isEqualTo(10);
+			assertThat(cc.getHistogram(CaptchaRoutine.ENCODE_METRIC).getTotalCount()).isEqualTo(10);
+			assertThat(cc.getCounters().get(CaptchaRoutine.BYTES_COUNTER)).isGreaterThan(10 * 100L);
+			return null;
+		});
+	}
+
+	@Test
+	void rejectsUnknownFormat() {
+		assertThatThrownBy(() -> new CaptchaRoutine(new TextImageCaptchaEngine(), "nope"))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
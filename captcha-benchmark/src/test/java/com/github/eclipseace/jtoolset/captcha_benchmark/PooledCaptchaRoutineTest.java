@@ -0,0 +1,40 @@
+package com.github.eclipseace.jtoolset.captcha_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.captcha_maker.PooledCaptchaEngine;
+import com.github.eclipseace.jtoolset.captcha_maker.TextImageCaptchaEngine;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+class PooledCaptchaRoutineTest {
+	@Test
+	void countsHitsAndMissesOnceWarmedUp() throws Exception {
+		try (PooledCaptchaEngine pool = new PooledCaptchaEngine(new TextImageCaptchaEngine())) {
+			pool.setDepth(4);
+			pool.start();
+			long deadline = System.currentTimeMillis() + 30000;
+			while (pool.getSize() < 4 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			MultiThreadTest mtt = new MultiThreadTest("pooled-", 1, 0, 12, 0);
+			mtt.setWarmupOps(4);
+			mtt.start(new PooledCaptchaRoutine(pool));
+			assertThat(mtt.join(60, TimeUnit.SECONDS)).isTrue();
+			mtt.compute(cc -> {
+				assertThat(cc.getTotalErrors()).isZero();
+				long measured = cc.getHistogram().getTotalCount();
+				assertThat(measured + cc.getWarmupHistogram().getTotalCount()).isEqualTo(12);
+				long hits = cc.getCounters().getOrDefault(PooledCaptchaRoutine.HITS_COUNTER, 0L);
+				long misses = cc.getCounters().getOrDefault(PooledCaptchaRoutine.MISSES_COUNTER, 0L);
+				assertThat(hits + misses).isEqualTo(measured);
+				return null;
+			});
+			assertThat(pool.getHits() + pool.getMisses()).isEqualTo(12);
+		}
+	}
+}
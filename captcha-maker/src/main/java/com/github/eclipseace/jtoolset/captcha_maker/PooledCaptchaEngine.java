@@ -0,0 +1,296 @@
+package com.github.eclipseace.jtoolset.captcha_maker;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Serves captchas rendered and encoded ahead of time. Background workers keep
+ * a bounded pool topped up, and {@link #take()} removes one without rendering.
+ * When the pool is empty, {@link #take()} renders on the calling thread
+ * instead, so a burst outlasting the pool degrades to the latency of the
+ * wrapped engine rather than waiting for the workers.
+ */
+public class PooledCaptchaEngine implements AutoCloseable {
+	public static final int DEFAULT_DEPTH = 64;
+	public static final int DEFAULT_WORKERS = 1;
+	public static final String DEFAULT_FORMAT = "png";
+
+	private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final long PARK_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final CaptchaEngine<String, BufferedImage> engine;
+	private final String format;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder refills = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final AtomicLong nextRefill = new AtomicLong();
+	private final List<Thread> workerThreads = new ArrayList<>();
+
+	private int depth = DEFAULT_DEPTH;
+	private int workers = DEFAULT_WORKERS;
+	private volatile double refillRate;
+	private volatile boolean closed;
+	private volatile BlockingQueue<Captcha> pool = new ArrayBlockingQueue<>(1);
+
+	public PooledCaptchaEngine(CaptchaEngine<String, BufferedImage> engine) {
+		this(engine, DEFAULT_FORMAT);
+	}
+
+	/**
+	 * @param format an {@link ImageIO} format name, e.g. png or jpg
+	 */
+	public PooledCaptchaEngine(CaptchaEngine<String, BufferedImage> engine, String format) {
+		if (!ImageIO.getImageWritersByFormatName(format).hasNext()) {
+			throw new IllegalArgumentException("No image writer for format " + format);
+		}
+		this.engine = engine;
+		this.format = format;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @param depth captchas kept ready, applied on {@link #start()}
+	 */
+	public void setDepth(int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("Pool depth must be positive: " + depth);
+		}
+		this.depth = depth;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @param workers threads refilling the pool, applied on {@link #start()}
+	 */
+	public void setWorkers(int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Pool workers must be positive: " + workers);
+		}
+		this.workers = workers;
+	}
+
+	public double getRefillRate() {
+		return refillRate;
+	}
+
+	/**
+	 * @param refillRate captchas rendered per second across workers, 0 (the
+	 *                   default) for as fast as they can, which lets a refill
+	 *                   compete with request threads for the CPU
+	 */
+	public void setRefillRate(double refillRate) {
+		this.refillRate = refillRate;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Starts the workers filling the pool.
+	 *
+	 * @throws IllegalStateException if already started
+	 */
+	public synchronized void start() {
+		if (!workerThreads.isEmpty()) {
+			throw new IllegalStateException("Pool already started");
+		}
+		pool = new ArrayBlockingQueue<>(depth);
+		closed = false;
+		for (int i = 0; i < workers; i++) {
+			Thread thread = new Thread(this::refill, "captcha-pool-" + i);
+			thread.setDaemon(true);
+			workerThreads.add(thread);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops the workers and discards the pooled captchas. Waits for the workers
+	 * even if interrupted, restoring the interrupt status afterwards.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		for (Thread thread : workerThreads) {
+			thread.interrupt();
+		}
+		boolean interrupted = false;
+		for (Thread thread : workerThreads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		workerThreads.clear();
+		pool.clear();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return a pooled captcha, or one rendered on the calling thread if the
+	 *         pool is empty
+	 */
+	public Captcha take() {
+		Captcha captcha = pool.poll();
+		if (captcha != null) {
+			hits.increment();
+			return captcha;
+		}
+		misses.increment();
+		return generate(false);
+	}
+
+	/**
+	 * @return captchas ready to be taken
+	 */
+	public int getSize() {
+		return pool.size();
+	}
+
+	/**
+	 * @return takes served from the pool
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return takes rendered on the calling thread
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return captchas rendered by the workers
+	 */
+	public long getRefills() {
+		return refills.sum();
+	}
+
+	/**
+	 * @return captchas the workers failed to render or encode
+	 */
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	private void refill() {
+		BlockingQueue<Captcha> target = pool;
+		long backoff = 0;
+		try {
+			while (!closed) {
+				pace();
+				Captcha captcha;
+				try {
+					captcha = generate(true);
+				} catch (RuntimeException e) {
+					// a broken engine must not keep the worker spinning
+					failures.increment();
+					backoff = Math.min(MAX_BACKOFF_NANOS, Math.max(MIN_BACKOFF_NANOS, backoff * 2));
+					parkUntil(System.nanoTime() + backoff);
+					continue;
+				}
+				backoff = 0;
+				refills.increment();
+				// image I/O may swallow the interrupt of close(), so wait in steps
+				while (!closed && !target.offer(captcha, 100, TimeUnit.MILLISECONDS)) {
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void pace() throws InterruptedException {
+		double rate = refillRate;
+		if (rate <= 0) {
+			return;
+		}
+		long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		long now = System.nanoTime();
+		long slot = nextRefill.getAndUpdate(next -> Math.max(next, now) + interval);
+		parkUntil(Math.max(slot, now));
+	}
+
+	/**
+	 * Parks in bounded steps, so that {@link #close()} is noticed promptly.
+	 */
+	private void parkUntil(long deadline) throws InterruptedException {
+		long wait;
+		while (!closed && (wait = deadline - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(Math.min(wait, PARK_STEP_NANOS));
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	private Captcha generate(boolean pooled) {
+		String answer = engine.getPrototype();
+		BufferedImage image = engine.getChallenge(answer);
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+		try {
+			ImageIO.write(image, format, buffer);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new Captcha(answer, buffer.toByteArray(), pooled);
+	}
+
+	/**
+	 * An answer and its challenge image, encoded.
+	 */
+	public static class Captcha {
+		private final String answer;
+		private final byte[] image;
+		private final boolean pooled;
+
+		Captcha(String answer, byte[] image, boolean pooled) {
+			this.answer = answer;
+			this.image = image;
+			this.pooled = pooled;
+		}
+
+		public String getAnswer() {
+			return answer;
+		}
+
+		public byte[] getImage() {
+			return image;
+		}
+
+		/**
+		 * @return false if rendered on the taking thread as the pool was empty
+		 */
+		public boolean isPooled() {
+			return pooled;
+		}
+	}
+}
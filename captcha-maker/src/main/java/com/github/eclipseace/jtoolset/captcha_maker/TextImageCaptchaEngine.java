@@ -137,7 +137,6 @@ public class TextImageCaptchaEngine implements CaptchaEngine<String, BufferedIma
 		Rectangle2D[] charBounds = new Rectangle2D[textLength];
 		for (int i = 0; i < textLength; ++i) {
 			int fontSize = minFontSize + random.nextInt(maxFontSize - minFontSize);
-			chars[i] = characters.charAt(random.nextInt(characters.length()));
 			charFonts[i] = fonts.get(random.nextInt(fonts.size())).deriveFont((float) fontSize);
 			FontMetrics metrics = g2d.getFontMetrics(charFonts[i]);
 			charBounds[i] = metrics.getStringBounds(String.valueOf(chars[i]), g2d);
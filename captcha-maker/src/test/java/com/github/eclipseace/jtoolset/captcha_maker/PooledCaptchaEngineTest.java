@@ -0,0 +1,110 @@
+package com.github.eclipseace.jtoolset.captcha_maker;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.captcha_maker.PooledCaptchaEngine.Captcha;
+
+class PooledCaptchaEngineTest {
+	@Test
+	void servesPooledCaptchasThenRendersWhenEmpty() throws Exception {
+		TextImageCaptchaEngine engine = new TextImageCaptchaEngine();
+		try (PooledCaptchaEngine pooled = new PooledCaptchaEngine(engine)) {
+			pooled.setDepth(3);
+			pooled.start();
+			long deadline = System.currentTimeMillis() + 30000;
+			while (pooled.getSize() < 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(pooled.getSize()).isEqualTo(3);
+
+			Captcha captcha = pooled.take();
+			assertThat(captcha.isPooled()).isTrue();
+			assertThat(captcha.getAnswer()).hasSize(engine.getLength());
+			assertThat(ImageIO.read(new ByteArrayInputStream(captcha.getImage())).getWidth())
+					.isEqualTo(engine.getWidth());
+			assertThat(pooled.getHits()).isEqualTo(1);
+		}
+
+		try (PooledCaptchaEngine unstarted = new PooledCaptchaEngine(engine)) {
+			assertThat(unstarted.take().isPooled()).isFalse();
+			assertThat(unstarted.getMisses()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void pacesRefillsAndClosesPromptly() throws Exception {
+		PooledCaptchaEngine pooled = new PooledCaptchaEngine(new TextImageCaptchaEngine());
+		pooled.setRefillRate(4);
+		pooled.start();
+		Thread.sleep(1000);
+		assertThat(pooled.getRefills()).isBetween(1L, 6L);
+
+		pooled.setRefillRate(0.1);
+		Thread.sleep(500);
+		long start = System.nanoTime();
+		pooled.close();
+		assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(2));
+	}
+
+	@Test
+	void rendersOnMissWhileWorkersRun() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		TextImageCaptchaEngine engine = new TextImageCaptchaEngine() {
+			@Override
+			public BufferedImage getChallenge(String prototype) {
+				if (Thread.currentThread().getName().startsWith("captcha-pool-")) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.getChallenge(prototype);
+			}
+		};
+		try (PooledCaptchaEngine pooled = new PooledCaptchaEngine(engine)) {
+			pooled.start();
+			assertThat(pooled.take().isPooled()).isFalse();
+			assertThat(pooled.getMisses()).isEqualTo(1);
+			assertThat(pooled.getHits()).isZero();
+			release.countDown();
+		}
+	}
+
+	@Test
+	void countsFailedRefills() throws Exception {
+		TextImageCaptchaEngine engine = new TextImageCaptchaEngine() {
+			@Override
+			public BufferedImage getChallenge(String prototype) {
+				throw new IllegalStateException("broken engine");
+			}
+		};
+		try (PooledCaptchaEngine pooled = new PooledCaptchaEngine(engine)) {
+			pooled.start();
+			long deadline = System.currentTimeMillis() + 30000;
+			while (pooled.getFailures() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(pooled.getFailures()).isGreaterThanOrEqualTo(2);
+			assertThat(pooled.getSize()).isZero();
+			Thread.sleep(300);
+			assertThat(pooled.getFailures()).as("failed refills back off").isLessThan(20);
+		}
+	}
+
+	@Test
+	void rejectsUnknownFormat() {
+		assertThatThrownBy(() -> new PooledCaptchaEngine(new TextImageCaptchaEngine(), "nope"))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
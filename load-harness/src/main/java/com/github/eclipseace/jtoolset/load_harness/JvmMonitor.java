@@ -0,0 +1,305 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+import java.io.Closeable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Watches the load generator's own JVM, so latency outliers can be told apart
+ * from client stalls: GC collections, CPU time and allocation of the
+ * registered worker threads, and pauses seen by a sleeper thread that wakes
+ * up every millisecond, like jHiccup. The sleeper sees any stop of the JVM,
+ * safepoints included, as a late wake-up. Only collectors that pause the
+ * application count as stalls: the time of concurrent cycles, as reported by
+ * G1, ZGC, Shenandoah and CMS, is left out.
+ */
+public class JvmMonitor implements Closeable {
+	public static final long DEFAULT_RESOLUTION_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	public static final long DEFAULT_STALL_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+	private final List<GarbageCollectorMXBean> pauseCollectors = new ArrayList<>();
+	private final Map<Long, long[]> baselines = new ConcurrentHashMap<>();
+	private final LongAdder finishedCpuNanos = new LongAdder();
+	private final LongAdder finishedAllocatedBytes = new LongAdder();
+	private final LatencyRecorder hiccups = new LatencyRecorder();
+	private final long resolutionNanos;
+	private final Thread sleeper;
+	private final long startGcCount;
+	private final long startGcNanos;
+	private long stallThresholdNanos = DEFAULT_STALL_THRESHOLD_NANOS;
+	private long lastGcCount;
+	private long lastGcNanos;
+	private long lastGcPauseNanos;
+	private long lastCpuNanos;
+	private long lastAllocatedBytes;
+	private long lastSample = System.nanoTime();
+
+	public JvmMonitor() {
+		this(DEFAULT_RESOLUTION_NANOS);
+	}
+
+	public JvmMonitor(long resolutionNanos) {
+		this.resolutionNanos = resolutionNanos;
+		if (threadBean.isThreadCpuTimeSupported() && !threadBean.isThreadCpuTimeEnabled()) {
+			threadBean.setThreadCpuTimeEnabled(true);
+		}
+		for (GarbageCollectorMXBean collector : collectors) {
+			if (!isConcurrent(collector.getName())) {
+				pauseCollectors.add(collector);
+			}
+		}
+		this.startGcCount = gcCount();
+		this.startGcNanos = gcNanos(collectors);
+		this.lastGcCount = startGcCount;
+		this.lastGcNanos = startGcNanos;
+		this.lastGcPauseNanos = gcNanos(pauseCollectors);
+		this.sleeper = new Thread(this::sleep, "hiccup-meter");
+		sleeper.setDaemon(true);
+		sleeper.start();
+	}
+
+	/**
+	 * @param stallThresholdNanos GC pause time or hiccup within one interval
+	 *                            from which the interval counts as a client
+	 *                            stall
+	 */
+	public void setStallThreshold(long stallThresholdNanos) {
+		this.stallThresholdNanos = stallThresholdNanos;
+	}
+
+	public long getStallThreshold() {
+		return stallThresholdNanos;
+	}
+
+	/**
+	 * Starts accounting CPU time and allocation of the calling thread.
+	 */
+	public void register() {
+		baselines.put(Thread.currentThread().getId(), new long[] { currentCpuNanos(), currentAllocatedBytes() });
+	}
+
+	/**
+	 * Stops accounting the calling thread, keeping what it used so far.
+	 */
+	public void unregister() {
+		long[] baseline = baselines.remove(Thread.currentThread().getId());
+		if (baseline != null) {
+			finishedCpuNanos.add(Math.max(0, currentCpuNanos() - baseline[0]));
+			finishedAllocatedBytes.add(Math.max(0, currentAllocatedBytes() - baseline[1]));
+		}
+	}
+
+	/**
+	 * Collects everything observed since the previous call. Like
+	 * {@link LatencyRecorder#sample()}, it must have a single caller.
+	 */
+	public synchronized Sample sample() {
+		long now = System.nanoTime();
+		long cpuNanos = finishedCpuNanos.sum();
+		long allocatedBytes = finishedAllocatedBytes.sum();
+		for (Map.Entry<Long, long[]> baseline : baselines.entrySet()) {
+			long cpu = threadBean.getThreadCpuTime(baseline.getKey());
+			long allocated = threadAllocatedBytes(baseline.getKey());
+			cpuNanos += cpu >= 0 ? Math.max(0, cpu - baseline.getValue()[0]) : 0;
+			allocatedBytes += allocated >= 0 ? Math.max(0, allocated - baseline.getValue()[1]) : 0;
+		}
+		long gcCount = gcCount();
+		long gcNanos = gcNanos(collectors);
+		long gcPauseNanos = gcNanos(pauseCollectors);
+		Sample sample = new Sample(now - lastSample, gcCount - lastGcCount, gcNanos - lastGcNanos,
+				gcPauseNanos - lastGcPauseNanos, Math.max(0, cpuNanos - lastCpuNanos),
+				Math.max(0, allocatedBytes - lastAllocatedBytes), hiccups.sample(), stallThresholdNanos);
+		lastSample = now;
+		lastGcCount = gcCount;
+		lastGcNanos = gcNanos;
+		lastGcPauseNanos = gcPauseNanos;
+		lastCpuNanos = Math.max(lastCpuNanos, cpuNanos);
+		lastAllocatedBytes = Math.max(lastAllocatedBytes, allocatedBytes);
+		return sample;
+	}
+
+	public long getTotalGcCount() {
+		return gcCount() - startGcCount;
+	}
+
+	public long getTotalGcNanos() {
+		return gcNanos(collectors) - startGcNanos;
+	}
+
+	/**
+	 * @return every hiccup collected by {@link #sample()} so far
+	 */
+	public Histogram getTotalHiccupHistogram() {
+		return hiccups.getTotal();
+	}
+
+	@Override
+	public void close() {
+		sleeper.interrupt();
+	}
+
+	private void sleep() {
+		while (true) {
+			long start = System.nanoTime();
+			try {
+				TimeUnit.NANOSECONDS.sleep(resolutionNanos);
+			} catch (InterruptedException e) {
+				return;
+			}
+			hiccups.record(Math.max(0, System.nanoTime() - start - resolutionNanos));
+		}
+	}
+
+	private long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : collectors) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcNanos(List<GarbageCollectorMXBean> collectors) {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : collectors) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * @return true for the beans of concurrent cycles: G1 Concurrent GC, ZGC
+	 *         Cycles (ZGC before JDK 17), Shenandoah Cycles and
+	 *         ConcurrentMarkSweep, whose time is mostly spent alongside the
+	 *         application; their pauses are still seen as hiccups
+	 */
+	static boolean isConcurrent(String collectorName) {
+		return collectorName.contains("Concurrent") || collectorName.contains("Cycles")
+				|| collectorName.equals("ZGC");
+	}
+
+	private long currentCpuNanos() {
+		return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : -1;
+	}
+
+	private long currentAllocatedBytes() {
+		return threadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private long threadAllocatedBytes(long threadId) {
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+			if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+				return bean.getThreadAllocatedBytes(threadId);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * What the JVM did during one interval.
+	 */
+	public static class Sample {
+		private final long intervalNanos;
+		private final long gcCount;
+		private final long gcNanos;
+		private final long gcPauseNanos;
+		private final long workerCpuNanos;
+		private final long workerAllocatedBytes;
+		private final Histogram hiccupHistogram;
+		private final long stallThresholdNanos;
+
+		/**
+		 * Usually taken by {@link JvmMonitor#sample()}, or rebuilt from one
+		 * taken elsewhere, e.g. by a remote load generator.
+		 */
+		public Sample(long intervalNanos, long gcCount, long gcNanos, long gcPauseNanos, long workerCpuNanos,
+				long workerAllocatedBytes, Histogram hiccupHistogram, long stallThresholdNanos) {
+			this.intervalNanos = intervalNanos;
+			this.gcCount = gcCount;
+			this.gcNanos = gcNanos;
+			this.gcPauseNanos = gcPauseNanos;
+			this.workerCpuNanos = workerCpuNanos;
+			this.workerAllocatedBytes = workerAllocatedBytes;
+			this.hiccupHistogram = hiccupHistogram;
+			this.stallThresholdNanos = stallThresholdNanos;
+		}
+
+		public long getIntervalNanos() {
+			return intervalNanos;
+		}
+
+		public long getGcCount() {
+			return gcCount;
+		}
+
+		/**
+		 * @return time spent in collections, concurrent ones included, at
+		 *         millisecond resolution
+		 */
+		public long getGcNanos() {
+			return gcNanos;
+		}
+
+		/**
+		 * @return time spent in collections that pause the application, at
+		 *         millisecond resolution
+		 */
+		public long getGcPauseNanos() {
+			return gcPauseNanos;
+		}
+
+		public long getWorkerCpuNanos() {
+			return workerCpuNanos;
+		}
+
+		/**
+		 * @return CPU time of the worker threads per wall-clock time, 1 for
+		 *         one fully busy core
+		 */
+		public double getWorkerCpuLoad() {
+			return intervalNanos > 0 ? (double) workerCpuNanos / intervalNanos : 0;
+		}
+
+		public long getWorkerAllocatedBytes() {
+			return workerAllocatedBytes;
+		}
+
+		public double getWorkerAllocationRate() {
+			return intervalNanos > 0 ? workerAllocatedBytes * 1e9 / intervalNanos : 0;
+		}
+
+		/**
+		 * @return how late the sleeper thread woke up, in nanoseconds
+		 */
+		public Histogram getHiccupHistogram() {
+			return hiccupHistogram;
+		}
+
+		/**
+		 * @return the longest client-side stall seen in the interval, either
+		 *         a hiccup or the GC pause time
+		 */
+		public long getStallNanos() {
+			return Math.max(hiccupHistogram.getMaxValue(), gcPauseNanos);
+		}
+
+		public long getStallThreshold() {
+			return stallThresholdNanos;
+		}
+
+		public boolean isStalled() {
+			return getStallNanos() >= stallThresholdNanos;
+		}
+	}
+}
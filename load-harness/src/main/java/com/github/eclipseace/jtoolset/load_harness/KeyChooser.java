@@ -0,0 +1,13 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+/**
+ * Picks the key of the next operation. Instances are confined to one worker
+ * thread and must not allocate.
+ */
+@FunctionalInterface
+public interface KeyChooser {
+	/**
+	 * @return a key index in {@code [0, keyCount)}
+	 */
+	int next(int keyCount);
+}
@@ -0,0 +1,214 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A key access pattern, creating one {@link KeyChooser} per worker thread.
+ */
+public abstract class KeyDistribution {
+	public static final double DEFAULT_ZIPFIAN_THETA = 0.99;
+
+	public abstract KeyChooser newChooser();
+
+	/**
+	 * Does the set-up choosing among {@code keyCount} keys needs ahead of the
+	 * run, so that the first {@link KeyChooser#next(int)} of every thread does
+	 * not pay for it while timed. Nothing to do by default.
+	 */
+	public void prepare(int keyCount) {
+	}
+
+	/**
+	 * Every thread walks the key space in order, all threads in lockstep.
+	 */
+	public static KeyDistribution sequential() {
+		return new KeyDistribution() {
+			@Override
+			public KeyChooser newChooser() {
+				return new KeyChooser() {
+					private int cursor;
+
+					@Override
+					public int next(int keyCount) {
+						if (cursor >= keyCount) {
+							cursor = 0;
+						}
+						return cursor++;
+					}
+				};
+			}
+
+			@Override
+			public String toString() {
+				return "sequential";
+			}
+		};
+	}
+
+	public static KeyDistribution uniform() {
+		return new KeyDistribution() {
+			@Override
+			public KeyChooser newChooser() {
+				return keyCount -> ThreadLocalRandom.current().nextInt(keyCount);
+			}
+
+			@Override
+			public String toString() {
+				return "uniform";
+			}
+		};
+	}
+
+	/**
+	 * Low key indexes are the most popular, with popularity decaying as a power
+	 * law of the rank.
+	 *
+	 * @param theta skew in {@code [0, 1)}, 0 is uniform, values close to 1 are
+	 *              highly skewed
+	 * @throws IllegalArgumentException if theta is out of range
+	 */
+	public static KeyDistribution zipfian(double theta) {
+		return new Zipfian(theta, false);
+	}
+
+	/**
+	 * Like {@link #zipfian(double)}, but popularity decays with the distance
+	 * from each thread's sequential cursor, so recently visited keys are the
+	 * hottest.
+	 */
+	public static KeyDistribution latest(double theta) {
+		return new Zipfian(theta, true);
+	}
+
+	/**
+	 * @param hotKeyFraction fraction of the key space that is hot
+	 * @param hotOpFraction  fraction of the operations hitting the hot keys
+	 * @throws IllegalArgumentException if a fraction is not in {@code [0, 1]}
+	 */
+	public static KeyDistribution hotspot(double hotKeyFraction, double hotOpFraction) {
+		if (!(hotKeyFraction >= 0 && hotKeyFraction <= 1 && hotOpFraction >= 0 && hotOpFraction <= 1)) {
+			throw new IllegalArgumentException(
+					"Hotspot fractions must be in [0, 1]: " + hotKeyFraction + ", " + hotOpFraction);
+		}
+		return new KeyDistribution() {
+			@Override
+			public KeyChooser newChooser() {
+				return keyCount -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					int hotKeys = Math.max(1, Math.min(keyCount, (int) (keyCount * hotKeyFraction)));
+					if (hotKeys == keyCount || random.nextDouble() < hotOpFraction) {
+						return random.nextInt(hotKeys);
+					}
+					return hotKeys + random.nextInt(keyCount - hotKeys);
+				};
+			}
+
+			@Override
+			public String toString() {
+				return "hotspot, " + hotKeyFraction + " of keys take " + hotOpFraction + " of ops";
+			}
+		};
+	}
+
+	/**
+	 * @param spec {@code sequential}, {@code uniform}, {@code zipfian[:theta]},
+	 *             {@code latest[:theta]} or
+	 *             {@code hotspot:<hot key fraction>:<hot op fraction>}
+	 */
+	public static KeyDistribution parse(String spec) {
+		String[] parts = spec.split(":");
+		switch (parts[0]) {
+		case "sequential":
+			return sequential();
+		case "uniform":
+			return uniform();
+		case "zipfian":
+			return zipfian(parts.length > 1 ? Double.parseDouble(parts[1]) : DEFAULT_ZIPFIAN_THETA);
+		case "latest":
+			return latest(parts.length > 1 ? Double.parseDouble(parts[1]) : DEFAULT_ZIPFIAN_THETA);
+		case "hotspot":
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("Hotspot needs <hot key fraction>:<hot op fraction>: " + spec);
+			}
+			return hotspot(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+		default:
+			throw new IllegalArgumentException("Unknown key distribution: " + spec);
+		}
+	}
+
+	/**
+	 * Gray et al., "Quickly Generating Billion-Record Synthetic Databases", as
+	 * used by YCSB. The zeta constant, linear in the key count, is computed once
+	 * per key count and shared by all threads, ideally by {@link #prepare(int)}.
+	 */
+	private static class Zipfian extends KeyDistribution {
+		private final double theta;
+		private final boolean latest;
+		private final ConcurrentMap<Integer, Double> zetas = new ConcurrentHashMap<>();
+
+		private Zipfian(double theta, boolean latest) {
+			if (!(theta >= 0 && theta < 1)) {
+				throw new IllegalArgumentException("Zipfian theta must be in [0, 1): " + theta);
+			}
+			this.theta = theta;
+			this.latest = latest;
+		}
+
+		@Override
+		public void prepare(int keyCount) {
+			zetas.computeIfAbsent(keyCount, this::zeta);
+		}
+
+		@Override
+		public KeyChooser newChooser() {
+			double alpha = 1.0 / (1.0 - theta);
+			double zeta2 = zeta(2);
+			double halfPowTheta = 1.0 + Math.pow(0.5, theta);
+			return new KeyChooser() {
+				private int keyCount = -1;
+				private double zetaN;
+				private double eta;
+				private int cursor;
+
+				@Override
+				public int next(int keyCount) {
+					if (keyCount != this.keyCount) {
+						this.keyCount = keyCount;
+						this.zetaN = zetas.computeIfAbsent(keyCount, n -> zeta(n));
+						this.eta = (1 - Math.pow(2.0 / keyCount, 1 - theta)) / (1 - zeta2 / zetaN);
+					}
+					double u = ThreadLocalRandom.current().nextDouble();
+					double uz = u * zetaN;
+					int rank;
+					if (uz < 1.0) {
+						rank = 0;
+					} else if (uz < halfPowTheta) {
+						rank = 1;
+					} else {
+						rank = Math.min(keyCount - 1, (int) (keyCount * Math.pow(eta * u - eta + 1, alpha)));
+					}
+					if (!latest) {
+						return rank;
+					}
+					cursor = (cursor + 1) % keyCount;
+					return ((cursor - rank) % keyCount + keyCount) % keyCount;
+				}
+			};
+		}
+
+		private double zeta(int n) {
+			double sum = 0;
+			for (int i = 1; i <= n; i++) {
+				sum += 1 / Math.pow(i, theta);
+			}
+			return sum;
+		}
+
+		@Override
+		public String toString() {
+			return (latest ? "latest" : "zipfian") + ", theta " + theta;
+		}
+	}
+}
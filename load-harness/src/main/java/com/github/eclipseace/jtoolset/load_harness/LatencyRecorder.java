@@ -0,0 +1,99 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+/**
+ * Records latencies in nanoseconds into one fixed-size histogram per writer
+ * thread. Writers never block each other, {@link #sample()} flips every
+ * per-thread recorder and merges the interval histograms on the reader side.
+ */
+public class LatencyRecorder {
+	public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = TimeUnit.MINUTES.toNanos(1);
+	public static final int DEFAULT_SIGNIFICANT_DIGITS = 3;
+
+	private final long highestTrackableValue;
+	private final int significantDigits;
+	private final boolean packed;
+	private final Queue<SingleWriterRecorder> recorders = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<SingleWriterRecorder> recorderHolder = ThreadLocal.withInitial(this::newRecorder);
+
+	private final Histogram total;
+	private final Histogram scratch;
+
+	public LatencyRecorder() {
+		this(DEFAULT_HIGHEST_TRACKABLE_VALUE, DEFAULT_SIGNIFICANT_DIGITS);
+	}
+
+	public LatencyRecorder(long highestTrackableValue, int significantDigits) {
+		this(highestTrackableValue, significantDigits, false);
+	}
+
+	/**
+	 * @param packed keep per-thread histograms in packed, sparsely allocated
+	 *               arrays, trading some recording speed for a much smaller
+	 *               footprint when there are many thousands of writer threads
+	 */
+	public LatencyRecorder(long highestTrackableValue, int significantDigits, boolean packed) {
+		this.highestTrackableValue = highestTrackableValue;
+		this.significantDigits = significantDigits;
+		this.packed = packed;
+		this.total = newHistogram();
+		this.scratch = newHistogram();
+	}
+
+	public void record(long nanos) {
+		recorderHolder.get().recordValue(clamp(nanos));
+	}
+
+	public void record(long nanos, long count) {
+		recorderHolder.get().recordValueWithCount(clamp(nanos), count);
+	}
+
+	/**
+	 * Collects everything recorded since the previous call.
+	 *
+	 * @return a new histogram holding the interval samples
+	 */
+	public synchronized Histogram sample() {
+		Histogram interval = newHistogram();
+		for (SingleWriterRecorder recorder : recorders) {
+			recorder.getIntervalHistogramInto(scratch);
+			interval.add(scratch);
+		}
+		total.add(interval);
+		return interval;
+	}
+
+	/**
+	 * @return a copy of every sample collected by {@link #sample()} so far
+	 */
+	public synchronized Histogram getTotal() {
+		return total.copy();
+	}
+
+	public synchronized void reset() {
+		sample();
+		total.reset();
+	}
+
+	private long clamp(long nanos) {
+		return nanos < 0 ? 0 : Math.min(nanos, highestTrackableValue);
+	}
+
+	private Histogram newHistogram() {
+		return new Histogram(1, highestTrackableValue, significantDigits);
+	}
+
+	private SingleWriterRecorder newRecorder() {
+		SingleWriterRecorder recorder = packed
+				? new SingleWriterRecorder(significantDigits, true)
+				: new SingleWriterRecorder(1, highestTrackableValue, significantDigits);
+		recorders.add(recorder);
+		return recorder;
+	}
+}
@@ -0,0 +1,749 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.HdrHistogram.Histogram;
+
+public class MultiThreadTest {
+	public static final String BATCH_METRIC = "batch";
+	public static final String OPERATION_METRIC_PREFIX = "op:";
+	public static final String OPERATION_ERRORS_PREFIX = "errors:";
+	public static final String WARMUP_PREFIX = "warmup:";
+
+	private final String threadNamePrefix;
+	private final int threadCount;
+	private final int loopCount;
+	private final long loopInterval;
+
+	public MultiThreadTest(
+			String threadNamePrefix,
+			int threadCount,
+			long threadInterval,
+			int loopCount,
+			long loopInterval) {
+		this.threadNamePrefix = threadNamePrefix;
+		this.threadCount = threadCount;
+		this.loopCount = loopCount;
+		this.loopInterval = loopInterval;
+		this.rampUp = RampUp.linear(threadInterval);
+	}
+
+	private WorkerRunner runner = WorkerRunner.PLATFORM;
+	private RampUp rampUp;
+	private KeyDistribution keyDistribution = KeyDistribution.sequential();
+	private JvmMonitor jvmMonitor;
+
+	private double targetRate;
+
+	/**
+	 * Switches the test to open-loop mode: operations are scheduled on a fixed
+	 * timeline shared by all threads instead of sleeping between loops, and
+	 * latency is additionally measured from each operation's intended start.
+	 *
+	 * @param targetRate operations per second across all threads, 0 for
+	 *                   closed-loop mode
+	 */
+	public void setTargetRate(double targetRate) {
+		this.targetRate = targetRate;
+	}
+
+	public double getTargetRate() {
+		return targetRate;
+	}
+
+	public WorkerRunner getRunner() {
+		return runner;
+	}
+
+	/**
+	 * Must be called before the recorders are first used, virtual threads
+	 * switch them to packed per-thread histograms.
+	 */
+	public void setRunner(WorkerRunner runner) {
+		this.runner = runner;
+		this.recorder = newRecorder();
+		this.correctedRecorder = newRecorder();
+		this.warmupRecorder = newRecorder();
+		this.metrics.clear();
+		this.warmupMetrics.clear();
+		this.operations.clear();
+	}
+
+	/**
+	 * Makes workers stop looping once {@code duration} has passed since the
+	 * start, even if loops are left, 0 to run all loops.
+	 */
+	public void setDuration(long duration, TimeUnit unit) {
+		this.durationNanos = unit.toNanos(duration);
+	}
+
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * Operations completing during the first {@code duration} of the test are
+	 * recorded in the warmup histogram only, 0 for no warmup by time.
+	 */
+	public void setWarmupDuration(long duration, TimeUnit unit) {
+		this.warmupNanos = unit.toNanos(duration);
+	}
+
+	public long getWarmupNanos() {
+		return warmupNanos;
+	}
+
+	/**
+	 * The first {@code warmupOps} operations across all threads are recorded in
+	 * the warmup histogram only, 0 for no warmup by count.
+	 */
+	public void setWarmupOps(long warmupOps) {
+		this.warmupOps = warmupOps;
+	}
+
+	public long getWarmupOps() {
+		return warmupOps;
+	}
+
+	/**
+	 * Keeps the test warming up until {@link #endWarmup(String)} is called,
+	 * typically by a listener watching throughput and latency settle. The
+	 * warmup duration and op count, when set, become upper bounds.
+	 */
+	public void setWarmupUntilSteady(boolean warmupUntilSteady) {
+		this.warmupUntilSteady = warmupUntilSteady;
+	}
+
+	public boolean isWarmupUntilSteady() {
+		return warmupUntilSteady;
+	}
+
+	public boolean isWarmingUp() {
+		return warmingUp;
+	}
+
+	/**
+	 * Ends the warmup phase, operations completing from now on are measured.
+	 * Does nothing once the warmup has ended.
+	 */
+	public void endWarmup(String reason) {
+		if (warmingUp && warmupEnded.compareAndSet(false, true)) {
+			measureStart = System.nanoTime();
+			warmingUp = false;
+			pendingEvents.add("Warmup finished after " + warmupCompleted.get() + " ops, " + reason);
+		}
+	}
+
+	public JvmMonitor getJvmMonitor() {
+		return jvmMonitor;
+	}
+
+	/**
+	 * Samples the client JVM along with every compute, worker threads are
+	 * registered for CPU and allocation accounting.
+	 */
+	public void setJvmMonitor(JvmMonitor jvmMonitor) {
+		this.jvmMonitor = jvmMonitor;
+	}
+
+	public RampUp getRampUp() {
+		return rampUp;
+	}
+
+	public void setRampUp(RampUp rampUp) {
+		this.rampUp = rampUp;
+	}
+
+	public KeyDistribution getKeyDistribution() {
+		return keyDistribution;
+	}
+
+	/**
+	 * @param keyDistribution how routines pick the key of each operation, see
+	 *                        {@link RoutineContext#nextKey(int)}
+	 */
+	public void setKeyDistribution(KeyDistribution keyDistribution) {
+		this.keyDistribution = keyDistribution;
+	}
+
+	private LongAdder totalErrors = new LongAdder();
+	private AtomicBoolean bootstraping = new AtomicBoolean(false);
+	private LatencyRecorder recorder = newRecorder();
+	private LatencyRecorder correctedRecorder = newRecorder();
+	private LatencyRecorder warmupRecorder = newRecorder();
+	private long warmupNanos;
+	private long warmupOps;
+	private boolean warmupUntilSteady;
+	private volatile boolean warmingUp;
+	private AtomicBoolean warmupEnded = new AtomicBoolean();
+	private AtomicLong warmupCompleted = new AtomicLong();
+	private long warmupDeadline;
+	private long durationNanos;
+	private long deadline;
+	private volatile long measureStart;
+	private ConcurrentMap<String, LatencyRecorder> metrics = new ConcurrentHashMap<>();
+	private ConcurrentMap<String, LatencyRecorder> warmupMetrics = new ConcurrentHashMap<>();
+	private ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+	private ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private long lastCompute = System.nanoTime();
+	private AtomicLong scheduledOps = new AtomicLong();
+	private long scheduleStart;
+	private BlockingQueue<Object> pendingEvents = new LinkedBlockingDeque<>();
+	private Set<String> threads = ConcurrentHashMap.newKeySet();
+	private CountDownLatch finished = new CountDownLatch(0);
+	private Routine routine;
+
+	public void start(Routine routine) {
+		if (!threads.isEmpty() || !bootstraping.compareAndSet(false, true)) {
+			throw new IllegalStateException("Previous test is still running");
+		}
+		this.routine = routine;
+		this.scheduledOps.set(0);
+		this.scheduleStart = System.nanoTime();
+		this.lastCompute = scheduleStart;
+		this.measureStart = scheduleStart;
+		this.warmupDeadline = warmupNanos > 0 ? scheduleStart + warmupNanos : 0;
+		this.deadline = durationNanos > 0 ? scheduleStart + durationNanos : 0;
+		this.warmupCompleted.set(0);
+		this.warmupEnded.set(false);
+		this.warmingUp = warmupNanos > 0 || warmupOps > 0 || warmupUntilSteady;
+		this.finished = new CountDownLatch(threadCount);
+		ExecutorService executor = runner.newExecutor(threadNamePrefix, threadCount);
+		Thread bootstrapThread = new Thread(() -> {
+			int fmtDigits = (int) Math.floor(Math.log10(threadCount) + 1);
+			for (int t = 0; t < threadCount; t++) {
+				String workerName = String.format("%s%0" + fmtDigits + "d", threadNamePrefix, t);
+				threads.add(workerName);
+				executor.execute(new RoutineWrapper(t, workerName));
+
+				if ((t + 1) % rampUp.getStepSize() != 0 || t + 1 == threadCount) {
+					continue;
+				}
+				try {
+					Thread.sleep(rampUp.getInterval());
+				} catch (InterruptedException e) {
+					pendingEvents.add("Bootstrap thread interruped, exit");
+					for (int r = t + 1; r < threadCount; r++) {
+						finished.countDown();
+					}
+					executor.shutdown();
+					bootstraping.set(false);
+					return;
+				}
+			}
+			executor.shutdown();
+			pendingEvents.add("Bootstrap done");
+			bootstraping.set(false);
+		}, threadNamePrefix + "bootstrap");
+		bootstrapThread.start();
+	}
+
+	/**
+	 * Blocks until every worker of the current test has finished.
+	 */
+	public void join() throws InterruptedException {
+		finished.await();
+	}
+
+	public boolean join(long timeout, TimeUnit unit) throws InterruptedException {
+		return finished.await(timeout, unit);
+	}
+
+	/**
+	 * Returns the recorder of a named metric, which is reported alongside the
+	 * main latency histogram.
+	 */
+	public LatencyRecorder getRecorder(String metric) {
+		return metrics.computeIfAbsent(metric, m -> newRecorder());
+	}
+
+	/**
+	 * Returns a named event counter, reported alongside the error count.
+	 */
+	public LongAdder getCounter(String counter) {
+		return counters.computeIfAbsent(counter, c -> new LongAdder());
+	}
+
+	/**
+	 * Queues an event or error raised outside the workers, e.g. by a reporter,
+	 * for the next {@link ComputeContext#getPendingEvents()}.
+	 */
+	public void report(Object event) {
+		pendingEvents.add(event);
+	}
+
+	private LatencyRecorder newRecorder() {
+		return new LatencyRecorder(LatencyRecorder.DEFAULT_HIGHEST_TRACKABLE_VALUE,
+				LatencyRecorder.DEFAULT_SIGNIFICANT_DIGITS, runner == WorkerRunner.VIRTUAL);
+	}
+
+	public <T> T compute(Function<ComputeContext, T> fn) {
+		synchronized (this) {
+			return fn.apply(new ComputeContext(this));
+		}
+	}
+
+	public static interface Routine {
+		void execute(RoutineContext context);
+
+		void beforeLoop();
+
+		void afterLoop();
+	}
+
+	public class RoutineContext {
+		private final int threadIndex;
+		private final int loopIndex;
+		private final long intendedStart;
+		private final KeyChooser keyChooser;
+		private final OperationMetrics operation;
+
+		private RoutineContext(int threadIndex, int loopIndex, long intendedStart, KeyChooser keyChooser) {
+			this(threadIndex, loopIndex, intendedStart, keyChooser, null);
+		}
+
+		private RoutineContext(int threadIndex, int loopIndex, long intendedStart, KeyChooser keyChooser,
+				OperationMetrics operation) {
+			this.threadIndex = threadIndex;
+			this.loopIndex = loopIndex;
+			this.intendedStart = intendedStart;
+			this.keyChooser = keyChooser;
+			this.operation = operation;
+		}
+
+		public int getThreadIndex() {
+			return threadIndex;
+		}
+
+		public int getLoopIndex() {
+			return loopIndex;
+		}
+
+		/**
+		 * Picks the key of the next operation from the test's key distribution,
+		 * with a chooser owned by the worker.
+		 *
+		 * @return a key index in {@code [0, keyCount)}
+		 */
+		public int nextKey(int keyCount) {
+			return keyChooser.next(keyCount);
+		}
+
+		/**
+		 * @return the operation this loop runs, null outside a workload mix
+		 */
+		public String getOperation() {
+			return operation != null ? operation.name : null;
+		}
+
+		/**
+		 * Returns a context that additionally records latency under the
+		 * {@value MultiThreadTest#OPERATION_METRIC_PREFIX}{@code <operation>}
+		 * metric and counts errors under the
+		 * {@value MultiThreadTest#OPERATION_ERRORS_PREFIX}{@code <operation>}
+		 * counter. The metric and counter of an operation are resolved once per
+		 * test.
+		 */
+		public RoutineContext forOperation(String operation) {
+			OperationMetrics metrics = operations.get(operation);
+			if (metrics == null) {
+				metrics = operations.computeIfAbsent(operation, OperationMetrics::new);
+			}
+			return new RoutineContext(threadIndex, loopIndex, intendedStart, keyChooser, metrics);
+		}
+
+		/**
+		 * Like {@link MultiThreadTest#getRecorder(String)}, but while warming up
+		 * returns the recorder of {@value MultiThreadTest#WARMUP_PREFIX}
+		 * {@code <metric>} instead.
+		 */
+		public LatencyRecorder getRecorder(String metric) {
+			if (!warmingUp) {
+				return MultiThreadTest.this.getRecorder(metric);
+			}
+			LatencyRecorder recorder = warmupMetrics.get(metric);
+			if (recorder == null) {
+				recorder = warmupMetrics.computeIfAbsent(metric,
+						m -> MultiThreadTest.this.getRecorder(WARMUP_PREFIX + m));
+			}
+			return recorder;
+		}
+
+		/**
+		 * @see MultiThreadTest#getCounter(String)
+		 */
+		public LongAdder getCounter(String counter) {
+			return MultiThreadTest.this.getCounter(counter);
+		}
+
+		/**
+		 * @see MultiThreadTest#isWarmingUp()
+		 */
+		public boolean isWarmingUp() {
+			return warmingUp;
+		}
+
+		public void run(Runnable runnable) {
+			run(1, runnable);
+		}
+
+		/**
+		 * Runs a batch of operations, e.g. a pipeline. The round-trip of the
+		 * whole batch goes to the {@value MultiThreadTest#BATCH_METRIC} metric,
+		 * while the main histogram receives the amortized latency once per
+		 * operation.
+		 */
+		public void run(int ops, Runnable runnable) {
+			long begin = begin();
+			Throwable error = null;
+			try {
+				runnable.run();
+			} catch (Throwable t) {
+				error = t;
+			}
+			complete(begin, ops, error);
+		}
+
+		/**
+		 * Starts timing an asynchronous operation.
+		 *
+		 * @return the start timestamp to pass to
+		 *         {@link #complete(long, int, Throwable)}
+		 */
+		public long begin() {
+			return System.nanoTime();
+		}
+
+		/**
+		 * Records the outcome of an operation started by {@link #begin()}, may be
+		 * called from any thread.
+		 */
+		public void complete(long begin, int ops, Throwable error) {
+			if (error != null) {
+				fail(ops, error);
+				return;
+			}
+			long now = System.nanoTime();
+			long elapsed = now - begin;
+			if (warmingUp) {
+				warmupRecorder.record(elapsed / ops, ops);
+				long completed = warmupCompleted.addAndGet(ops);
+				if (warmupOps > 0 && completed >= warmupOps) {
+					endWarmup(warmupUntilSteady ? "op count limit reached" : "op count reached");
+				} else if (warmupDeadline != 0 && now - warmupDeadline >= 0) {
+					endWarmup(warmupUntilSteady ? "time limit reached" : "duration elapsed");
+				}
+				return;
+			}
+			if (ops == 1) {
+				recorder.record(elapsed);
+			} else {
+				getRecorder(BATCH_METRIC).record(elapsed);
+				recorder.record(elapsed / ops, ops);
+			}
+			if (operation != null) {
+				operation.recorder().record(elapsed / ops, ops);
+			}
+			if (targetRate > 0) {
+				correctedRecorder.record(now - intendedStart, ops);
+			}
+		}
+
+		/**
+		 * Counts failed operations without recording a latency, for failures
+		 * not timed by {@link #begin()}, e.g. a failed wait for messages.
+		 */
+		public void fail(int ops, Throwable error) {
+			pendingEvents.add(error);
+			if (warmingUp) {
+				getCounter(WARMUP_PREFIX + "errors").add(ops);
+				return;
+			}
+			totalErrors.add(ops);
+			if (operation != null) {
+				operation.errors().add(ops);
+			}
+		}
+	}
+
+	/**
+	 * The metric and error counter of a workload operation, created on first
+	 * use so operations that never succeed or fail do not report empty ones.
+	 */
+	private class OperationMetrics {
+		private final String name;
+		private volatile LatencyRecorder recorder;
+		private volatile LongAdder errors;
+
+		private OperationMetrics(String name) {
+			this.name = name;
+		}
+
+		private LatencyRecorder recorder() {
+			LatencyRecorder r = recorder;
+			if (r == null) {
+				recorder = r = getRecorder(OPERATION_METRIC_PREFIX + name);
+			}
+			return r;
+		}
+
+		private LongAdder errors() {
+			LongAdder e = errors;
+			if (e == null) {
+				errors = e = getCounter(OPERATION_ERRORS_PREFIX + name);
+			}
+			return e;
+		}
+	}
+
+	public static class ComputeContext {
+		private final long intervalNanos;
+		private final Histogram intervalHistogram;
+		private final Histogram histogram;
+		private final Histogram correctedIntervalHistogram;
+		private final Histogram correctedHistogram;
+		private final Map<String, Histogram> intervalMetrics = new TreeMap<>();
+		private final Map<String, Histogram> metrics = new TreeMap<>();
+		private final Map<String, Long> counters = new TreeMap<>();
+		private final BlockingQueue<Object> pendingEvents;
+		private final long totalErrors;
+		private final int activeThreads;
+		private final boolean warmingUp;
+		private final Histogram warmupIntervalHistogram;
+		private final Histogram warmupHistogram;
+		private final long measuredNanos;
+		private final JvmMonitor.Sample jvmSample;
+
+		private ComputeContext(MultiThreadTest mtt) {
+			long now = System.nanoTime();
+			this.intervalNanos = now - mtt.lastCompute;
+			mtt.lastCompute = now;
+			this.intervalHistogram = mtt.recorder.sample();
+			this.histogram = mtt.recorder.getTotal();
+			this.correctedIntervalHistogram = mtt.correctedRecorder.sample();
+			this.correctedHistogram = mtt.correctedRecorder.getTotal();
+			mtt.metrics.forEach((metric, recorder) -> {
+				intervalMetrics.put(metric, recorder.sample());
+				metrics.put(metric, recorder.getTotal());
+			});
+			mtt.counters.forEach((counter, adder) -> counters.put(counter, adder.sum()));
+			this.pendingEvents = mtt.pendingEvents;
+			this.totalErrors = mtt.totalErrors.sum();
+			this.activeThreads = mtt.threads.size();
+			this.warmingUp = mtt.warmingUp;
+			this.warmupIntervalHistogram = mtt.warmupRecorder.sample();
+			this.warmupHistogram = mtt.warmupRecorder.getTotal();
+			this.measuredNanos = warmingUp ? 0 : now - mtt.measureStart;
+			this.jvmSample = mtt.jvmMonitor != null ? mtt.jvmMonitor.sample() : null;
+		}
+
+		/**
+		 * @return the client JVM since the previous compute, null without a
+		 *         {@link JvmMonitor}
+		 */
+		public JvmMonitor.Sample getJvmSample() {
+			return jvmSample;
+		}
+
+		public boolean isWarmingUp() {
+			return warmingUp;
+		}
+
+		/**
+		 * @return latencies in nanoseconds recorded during warmup since the
+		 *         previous compute
+		 */
+		public Histogram getWarmupIntervalHistogram() {
+			return warmupIntervalHistogram;
+		}
+
+		public Histogram getWarmupHistogram() {
+			return warmupHistogram;
+		}
+
+		/**
+		 * @return nanoseconds since the measured window started, 0 while
+		 *         warming up
+		 */
+		public long getMeasuredNanos() {
+			return measuredNanos;
+		}
+
+		/**
+		 * @return nanoseconds elapsed since the previous compute
+		 */
+		public long getIntervalNanos() {
+			return intervalNanos;
+		}
+
+		/**
+		 * @return operations per second completed since the previous compute
+		 */
+		public double getIntervalThroughput() {
+			return intervalNanos > 0 ? intervalHistogram.getTotalCount() * 1e9 / intervalNanos : 0;
+		}
+
+		/**
+		 * @return latencies in nanoseconds recorded since the previous compute
+		 */
+		public Histogram getIntervalHistogram() {
+			return intervalHistogram;
+		}
+
+		/**
+		 * @return latencies in nanoseconds recorded since the test started
+		 */
+		public Histogram getHistogram() {
+			return histogram;
+		}
+
+		/**
+		 * @return latencies in nanoseconds measured from the intended start of
+		 *         each operation since the previous compute, empty in
+		 *         closed-loop mode
+		 */
+		public Histogram getCorrectedIntervalHistogram() {
+			return correctedIntervalHistogram;
+		}
+
+		/**
+		 * @return latencies in nanoseconds measured from the intended start of
+		 *         each operation since the test started, empty in closed-loop
+		 *         mode
+		 */
+		public Histogram getCorrectedHistogram() {
+			return correctedHistogram;
+		}
+
+		public Set<String> getMetricNames() {
+			return metrics.keySet();
+		}
+
+		public Histogram getIntervalHistogram(String metric) {
+			return intervalMetrics.get(metric);
+		}
+
+		public Histogram getHistogram(String metric) {
+			return metrics.get(metric);
+		}
+
+		public double getIntervalThroughput(String metric) {
+			Histogram histogram = intervalMetrics.get(metric);
+			return histogram != null && intervalNanos > 0 ? histogram.getTotalCount() * 1e9 / intervalNanos : 0;
+		}
+
+		/**
+		 * @return the value of every named counter, sorted by name
+		 */
+		public Map<String, Long> getCounters() {
+			return counters;
+		}
+
+		public BlockingQueue<Object> getPendingEvents() {
+			return pendingEvents;
+		}
+
+		public long getTotalErrors() {
+			return totalErrors;
+		}
+
+		public int getActiveThreads() {
+			return activeThreads;
+		}
+	}
+
+	private class RoutineWrapper implements Runnable {
+		private final int threadIndex;
+		private final String workerName;
+
+		private RoutineWrapper(int threadIndex, String workerName) {
+			this.threadIndex = threadIndex;
+			this.workerName = workerName;
+		}
+
+		@Override
+		public void run() {
+			boolean interrupted = false;
+			Throwable exception = null;
+			JvmMonitor monitor = jvmMonitor;
+			if (monitor != null) {
+				monitor.register();
+			}
+			try {
+				KeyChooser keyChooser = keyDistribution.newChooser();
+				routine.beforeLoop();
+				try {
+					double opInterval = targetRate > 0 ? TimeUnit.SECONDS.toNanos(1) / targetRate : 0;
+					for (int l = 0; l < loopCount; l++) {
+						if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+							break;
+						}
+						if (opInterval > 0) {
+							long intendedStart = scheduleStart + (long) (scheduledOps.getAndIncrement() * opInterval);
+							if (deadline != 0 && intendedStart - deadline >= 0) {
+								break;
+							}
+							if (!parkUntil(intendedStart)) {
+								interrupted = true;
+								break;
+							}
+							routine.execute(new RoutineContext(threadIndex, l, intendedStart, keyChooser));
+							continue;
+						}
+						routine.execute(new RoutineContext(threadIndex, l, 0, keyChooser));
+						try {
+							Thread.sleep(loopInterval);
+						} catch (InterruptedException e) {
+							interrupted = true;
+							break;
+						}
+					}
+				} finally {
+					routine.afterLoop();
+				}
+			} catch (Throwable e) {
+				exception = e;
+			}
+			try {
+				if (monitor != null) {
+					monitor.unregister();
+				}
+				if (exception != null) {
+					pendingEvents.add(exception);
+				} else if (interrupted) {
+					pendingEvents.add("Thread [" + workerName + "] interruped, exit");
+				} else {
+					pendingEvents.add("Thread [" + workerName + "] finished");
+				}
+			} finally {
+				threads.remove(workerName);
+				finished.countDown();
+			}
+		}
+
+		private boolean parkUntil(long deadline) {
+			long remaining;
+			while ((remaining = deadline - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(remaining);
+				if (Thread.interrupted()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+/**
+ * How fast a {@link MultiThreadTest} starts its workers: {@code stepSize}
+ * workers at a time, {@code interval} millis apart.
+ */
+public class RampUp {
+	private final int stepSize;
+	private final long interval;
+
+	private RampUp(int stepSize, long interval) {
+		this.stepSize = stepSize;
+		this.interval = interval;
+	}
+
+	public static RampUp instant() {
+		return new RampUp(Integer.MAX_VALUE, 0);
+	}
+
+	public static RampUp linear(long interval) {
+		return new RampUp(1, interval);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if {@code stepSize} is below 1
+	 */
+	public static RampUp step(int stepSize, long interval) {
+		if (stepSize < 1) {
+			throw new IllegalArgumentException("Ramp-up step must be at least 1 thread: " + stepSize);
+		}
+		return new RampUp(stepSize, interval);
+	}
+
+	/**
+	 * @param profile {@code instant}, {@code linear} or {@code step:<threads>}
+	 * @param interval millis between two steps
+	 */
+	public static RampUp parse(String profile, long interval) {
+		if ("instant".equals(profile)) {
+			return instant();
+		} else if ("linear".equals(profile)) {
+			return linear(interval);
+		} else if (profile.startsWith("step:")) {
+			return step(Integer.parseInt(profile.substring("step:".length())), interval);
+		}
+		throw new IllegalArgumentException("Unknown ramp-up profile: " + profile);
+	}
+
+	public int getStepSize() {
+		return stepSize;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	@Override
+	public String toString() {
+		if (stepSize == Integer.MAX_VALUE) {
+			return "instant";
+		}
+		return stepSize == 1 ? "linear, " + interval + "ms" : "step, " + stepSize + " threads/" + interval + "ms";
+	}
+}
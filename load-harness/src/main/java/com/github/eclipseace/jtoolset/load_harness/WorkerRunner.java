@@ -0,0 +1,70 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which kind of thread runs the workers of a {@link MultiThreadTest}.
+ */
+public enum WorkerRunner {
+	/**
+	 * A fixed pool of platform threads, one per worker.
+	 */
+	PLATFORM {
+		@Override
+		public ExecutorService newExecutor(String threadNamePrefix, int threadCount) {
+			AtomicInteger counter = new AtomicInteger();
+			return Executors.newFixedThreadPool(threadCount,
+					runnable -> new Thread(runnable, threadNamePrefix + counter.getAndIncrement()));
+		}
+	},
+
+	/**
+	 * One virtual thread per worker, requires JDK 21 or later.
+	 */
+	VIRTUAL {
+		@Override
+		public ExecutorService newExecutor(String threadNamePrefix, int threadCount) {
+			if (!isVirtualThreadsAvailable()) {
+				throw new UnsupportedOperationException("Virtual threads require JDK 21 or later");
+			}
+			try {
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+				ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+				Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+						ThreadFactory.class);
+				return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+			} catch (ReflectiveOperationException e) {
+				throw new UnsupportedOperationException("Virtual threads are not available", e);
+			}
+		}
+	};
+
+	public abstract ExecutorService newExecutor(String threadNamePrefix, int threadCount);
+
+	public static boolean isVirtualThreadsAvailable() {
+		try {
+			Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			Thread.class.getMethod("ofVirtual").invoke(null);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param name {@code platform}, {@code virtual}, or {@code auto} to use
+	 *             virtual threads when the running JDK supports them
+	 */
+	public static WorkerRunner of(String name) {
+		if ("auto".equalsIgnoreCase(name)) {
+			return isVirtualThreadsAvailable() ? VIRTUAL : PLATFORM;
+		}
+		return valueOf(name.toUpperCase());
+	}
+}
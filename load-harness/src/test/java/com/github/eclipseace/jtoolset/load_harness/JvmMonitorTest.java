@@ -0,0 +1,33 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+class JvmMonitorTest {
+	@Test
+	void flagsHiccupsAndGcPausesAboveThreshold() {
+		Histogram hiccups = new Histogram(3);
+		hiccups.recordValue(TimeUnit.MILLISECONDS.toNanos(30));
+		assertThat(new JvmMonitor.Sample(1, 0, 0, 0, 0, 0, hiccups, TimeUnit.MILLISECONDS.toNanos(10)).isStalled())
+				.isTrue();
+		assertThat(new JvmMonitor.Sample(1, 1, TimeUnit.MILLISECONDS.toNanos(5), TimeUnit.MILLISECONDS.toNanos(5), 0,
+				0, new Histogram(3), TimeUnit.MILLISECONDS.toNanos(10)).isStalled()).isFalse();
+		assertThat(new JvmMonitor.Sample(1, 1, TimeUnit.MILLISECONDS.toNanos(50), 0, 0, 0, new Histogram(3),
+				TimeUnit.MILLISECONDS.toNanos(10)).isStalled()).isFalse();
+	}
+
+	@Test
+	void leavesConcurrentCyclesOutOfPauses() {
+		assertThat(JvmMonitor.isConcurrent("G1 Young Generation")).isFalse();
+		assertThat(JvmMonitor.isConcurrent("G1 Old Generation")).isFalse();
+		assertThat(JvmMonitor.isConcurrent("ZGC Pauses")).isFalse();
+		assertThat(JvmMonitor.isConcurrent("G1 Concurrent GC")).isTrue();
+		assertThat(JvmMonitor.isConcurrent("ZGC Cycles")).isTrue();
+		assertThat(JvmMonitor.isConcurrent("Shenandoah Cycles")).isTrue();
+		assertThat(JvmMonitor.isConcurrent("ConcurrentMarkSweep")).isTrue();
+	}
+}
@@ -0,0 +1,65 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+class KeyDistributionTest {
+	private static final int KEYS = 1000;
+	private static final int SAMPLES = 200000;
+
+	@Test
+	void staysWithinKeySpace() {
+		for (String spec : new String[] { "sequential", "uniform", "zipfian", "latest:0.5", "hotspot:0.1:0.9" }) {
+			KeyChooser chooser = KeyDistribution.parse(spec).newChooser();
+			for (int i = 0; i < SAMPLES; i++) {
+				assertThat(chooser.next(KEYS)).as(spec).isBetween(0, KEYS - 1);
+			}
+		}
+	}
+
+	@Test
+	void rejectsThetaOutOfRange() {
+		for (String spec : new String[] { "zipfian:1", "zipfian:1.5", "latest:-0.1", "zipfian:NaN" }) {
+			assertThatThrownBy(() -> KeyDistribution.parse(spec)).as(spec).isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test
+	void rejectsInvalidHotspots() {
+		for (String spec : new String[] { "hotspot", "hotspot:0.1", "hotspot:1.5:0.9", "hotspot:0.1:-0.2",
+				"hotspot:0.1:0.9:1" }) {
+			assertThatThrownBy(() -> KeyDistribution.parse(spec)).as(spec).isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test
+	void zipfianFavorsLowRanks() {
+		KeyDistribution distribution = KeyDistribution.zipfian(KeyDistribution.DEFAULT_ZIPFIAN_THETA);
+		distribution.prepare(KEYS);
+		KeyChooser chooser = distribution.newChooser();
+		int[] hits = new int[KEYS];
+		for (int i = 0; i < SAMPLES; i++) {
+			hits[chooser.next(KEYS)]++;
+		}
+		int top = 0;
+		for (int i = 0; i < KEYS / 100; i++) {
+			top += hits[i];
+		}
+		assertThat(hits[0]).isGreaterThan(hits[1]).isGreaterThan(hits[KEYS - 1]);
+		assertThat(top).isGreaterThan(SAMPLES / 3);
+	}
+
+	@Test
+	void hotspotSplitsOperations() {
+		KeyChooser chooser = KeyDistribution.hotspot(0.1, 0.9).newChooser();
+		int hot = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			if (chooser.next(KEYS) < KEYS / 10) {
+				hot++;
+			}
+		}
+		assertThat((double) hot / SAMPLES).isBetween(0.88, 0.92);
+	}
+}
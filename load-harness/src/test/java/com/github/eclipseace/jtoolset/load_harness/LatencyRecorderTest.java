@@ -0,0 +1,54 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+class LatencyRecorderTest {
+
+	@Test
+	void mergesPerThreadSamples() throws InterruptedException {
+		LatencyRecorder recorder = new LatencyRecorder();
+		List<Thread> writers = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread writer = new Thread(() -> {
+				for (int i = 1; i <= 100000; i++) {
+					recorder.record(TimeUnit.MICROSECONDS.toNanos(i % 1000 + 1));
+				}
+			});
+			writers.add(writer);
+			writer.start();
+		}
+		long sampled = 0;
+		for (Thread writer : writers) {
+			while (writer.isAlive()) {
+				sampled += recorder.sample().getTotalCount();
+				writer.join(1);
+			}
+		}
+		sampled += recorder.sample().getTotalCount();
+
+		Histogram total = recorder.getTotal();
+		assertThat(sampled).isEqualTo(800000);
+		assertThat(total.getTotalCount()).isEqualTo(800000);
+		assertThat(total.getValueAtPercentile(99.9)).isCloseTo(TimeUnit.MICROSECONDS.toNanos(1000), within(1000000L / 1000));
+	}
+
+	@Test
+	void clampsOutOfRangeValues() {
+		LatencyRecorder recorder = new LatencyRecorder(TimeUnit.SECONDS.toNanos(1), 2);
+		recorder.record(-1);
+		recorder.record(TimeUnit.SECONDS.toNanos(10));
+
+		Histogram interval = recorder.sample();
+		assertThat(interval.getTotalCount()).isEqualTo(2);
+		assertThat(interval.getMinValue()).isZero();
+		assertThat(interval.getMaxValue()).isGreaterThanOrEqualTo(TimeUnit.SECONDS.toNanos(1) * 99 / 100);
+	}
+}
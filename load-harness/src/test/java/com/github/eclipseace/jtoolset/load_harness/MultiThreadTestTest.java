@@ -0,0 +1,105 @@
+package com.github.eclipseace.jtoolset.load_harness;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class MultiThreadTestTest {
+	@Test
+	void rampsUpInSteps() throws Exception {
+		assertThatThrownBy(() -> RampUp.parse("step:0", 10)).isInstanceOf(IllegalArgumentException.class);
+		MultiThreadTest mtt = new MultiThreadTest("ramp-", 5, 0, 100, 0);
+		mtt.setRampUp(RampUp.parse("step:2", 10));
+		mtt.start(new NoopRoutine());
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		mtt.compute(cc -> {
+			assertThat(cc.getHistogram().getTotalCount()).isEqualTo(500);
+			return null;
+		});
+	}
+
+	@Test
+	void recordsWarmupApart() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("warmup-", 4, 0, 500, 0);
+		mtt.setWarmupOps(500);
+		mtt.start(new NoopRoutine());
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		mtt.compute(cc -> {
+			assertThat(cc.isWarmingUp()).isFalse();
+			assertThat(cc.getWarmupHistogram().getTotalCount()).isGreaterThanOrEqualTo(500);
+			assertThat(cc.getWarmupHistogram().getTotalCount() + cc.getHistogram().getTotalCount()).isEqualTo(2000);
+			return null;
+		});
+	}
+
+	@Test
+	void samplesClientJvm() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("jvm-", 2, 0, 20000, 0);
+		JvmMonitor monitor = new JvmMonitor();
+		mtt.setJvmMonitor(monitor);
+		mtt.compute(cc -> null);
+		mtt.start(new NoopRoutine());
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		JvmMonitor.Sample sample = mtt.compute(MultiThreadTest.ComputeContext::getJvmSample);
+		monitor.close();
+		assertThat(sample.getWorkerCpuNanos()).isPositive();
+		assertThat(sample.getWorkerAllocatedBytes()).isPositive();
+		assertThat(sample.getHiccupHistogram().getTotalCount()).isPositive();
+	}
+
+	@Test
+	void finishesWhenWorkerThrowsError() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("error-", 2, 0, 10, 0);
+		mtt.start(new NoopRoutine() {
+			@Override
+			public void beforeLoop() {
+				throw new AssertionError("broken routine");
+			}
+		});
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		List<Object> events = new ArrayList<>();
+		mtt.compute(cc -> cc.getPendingEvents().drainTo(events));
+		assertThat(events).hasAtLeastOneElementOfType(AssertionError.class);
+	}
+
+	@Test
+	void runsAfterLoopWhenRoutineThrows() throws Exception {
+		AtomicInteger closed = new AtomicInteger();
+		MultiThreadTest mtt = new MultiThreadTest("after-", 3, 0, 10, 0);
+		mtt.start(new NoopRoutine() {
+			@Override
+			public void execute(MultiThreadTest.RoutineContext context) {
+				throw new IllegalStateException("broken loop");
+			}
+
+			@Override
+			public void afterLoop() {
+				closed.incrementAndGet();
+			}
+		});
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		assertThat(closed).hasValue(3);
+	}
+
+	static class NoopRoutine implements MultiThreadTest.Routine {
+		@Override
+		public void execute(MultiThreadTest.RoutineContext context) {
+			context.run(() -> {
+			});
+		}
+
+		@Override
+		public void beforeLoop() {
+		}
+
+		@Override
+		public void afterLoop() {
+		}
+	}
+}
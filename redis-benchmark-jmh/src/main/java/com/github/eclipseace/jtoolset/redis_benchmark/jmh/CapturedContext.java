@@ -0,0 +1,46 @@
+package com.github.eclipseace.jtoolset.redis_benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+/**
+ * Takes the context of the single loop of a one-thread test. The context keeps
+ * recording into the test's recorders after the test ends, so benchmarks can
+ * drive the per-operation paths of the harness without worker threads.
+ */
+final class CapturedContext {
+	private CapturedContext() {
+	}
+
+	/**
+	 * @param openLoop capture the context of an open-loop test, which also
+	 *                 records corrected latencies
+	 */
+	static RoutineContext capture(MultiThreadTest mtt, boolean openLoop) throws InterruptedException {
+		AtomicReference<RoutineContext> captured = new AtomicReference<>();
+		mtt.setTargetRate(openLoop ? TimeUnit.SECONDS.toNanos(1) : 0);
+		mtt.start(new MultiThreadTest.Routine() {
+			@Override
+			public void execute(RoutineContext context) {
+				captured.set(context);
+			}
+
+			@Override
+			public void beforeLoop() {
+			}
+
+			@Override
+			public void afterLoop() {
+			}
+		});
+		mtt.join();
+		return captured.get();
+	}
+
+	static MultiThreadTest newTest() {
+		return new MultiThreadTest("jmh-", 1, 0, 1, 0);
+	}
+}
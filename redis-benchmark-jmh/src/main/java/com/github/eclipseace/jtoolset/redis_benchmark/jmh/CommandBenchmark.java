@@ -0,0 +1,75 @@
+package com.github.eclipseace.jtoolset.redis_benchmark.jmh;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.eclipseace.jtoolset.load_harness.KeyChooser;
+import com.github.eclipseace.jtoolset.load_harness.KeyDistribution;
+import com.github.eclipseace.jtoolset.redis_benchmark.PayloadGenerator;
+import com.github.eclipseace.jtoolset.redis_benchmark.RespCommandFactory;
+import com.github.eclipseace.jtoolset.redis_benchmark.RespWriter;
+import com.github.eclipseace.jtoolset.redis_benchmark.RoutineParameters;
+import com.github.eclipseace.jtoolset.redis_benchmark.RoutineRegistry;
+
+/**
+ * Client-side work of an operation before it reaches the socket: picking the
+ * key, building the command of a routine and encoding it to RESP, as the async
+ * engine does. Routines are created without connecting, nothing is sent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+	@Param({ "set", "set:ttl=60", "hset", "mget:10" })
+	private String type;
+
+	@Param({ "sequential", "uniform", "zipfian" })
+	private String keyDistribution;
+
+	private RespCommandFactory factory;
+	private KeyChooser keyChooser;
+	private RespWriter writer;
+
+	@Setup
+	public void setup() throws Exception {
+		RoutineRegistry registry = RoutineRegistry.load();
+		RoutineParameters params = new RoutineParameters(URI.create("redis://127.0.0.1:6379"),
+				new PayloadGenerator(128), registry.resolve(type, Collections.emptyMap()));
+		factory = (RespCommandFactory) registry.get(type).create(params);
+		keyChooser = KeyDistribution.parse(keyDistribution).newChooser();
+		writer = new RespWriter(64 * 1024);
+	}
+
+	@Benchmark
+	public int nextKey() {
+		return keyChooser.next(factory.getKeySpace());
+	}
+
+	@Benchmark
+	public byte[][] command() {
+		return factory.command(keyChooser.next(factory.getKeySpace()));
+	}
+
+	@Benchmark
+	public int encode() {
+		writer.reset();
+		writer.writeCommand(factory.command(keyChooser.next(factory.getKeySpace())));
+		return writer.size();
+	}
+}
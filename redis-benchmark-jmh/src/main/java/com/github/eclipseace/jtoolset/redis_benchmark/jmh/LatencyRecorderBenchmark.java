@@ -0,0 +1,71 @@
+package com.github.eclipseace.jtoolset.redis_benchmark.jmh;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.eclipseace.jtoolset.load_harness.LatencyRecorder;
+
+/**
+ * Cost of recording a latency, plain and packed, and while a reader keeps
+ * flipping the per-thread recorders as the interval sampler does, at a far
+ * higher rate than the sampler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyRecorderBenchmark {
+	@Param({ "false", "true" })
+	private boolean packed;
+
+	private LatencyRecorder recorder;
+
+	@Setup
+	public void setup() {
+		recorder = new LatencyRecorder(LatencyRecorder.DEFAULT_HIGHEST_TRACKABLE_VALUE,
+				LatencyRecorder.DEFAULT_SIGNIFICANT_DIGITS, packed);
+	}
+
+	@Benchmark
+	public void record() {
+		recorder.record(latency());
+	}
+
+	@Benchmark
+	@Group("sampled")
+	@GroupThreads(3)
+	public void recordWhileSampling() {
+		recorder.record(latency());
+	}
+
+	@Benchmark
+	@Group("sampled")
+	@GroupThreads(1)
+	public Histogram sample() {
+		return recorder.sample();
+	}
+
+	/**
+	 * @return 100us to 10ms, spread over many histogram buckets
+	 */
+	private static long latency() {
+		return ThreadLocalRandom.current().nextLong(100_000, 10_000_000);
+	}
+}
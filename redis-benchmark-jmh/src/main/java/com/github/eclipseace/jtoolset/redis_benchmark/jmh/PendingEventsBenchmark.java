@@ -0,0 +1,76 @@
+package com.github.eclipseace.jtoolset.redis_benchmark.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+/**
+ * Cost of a failed operation, which queues its error into the test's pending
+ * events, drained by one reader as the interval snapshots do. Against a
+ * failing target every operation takes this path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PendingEventsBenchmark {
+	private static final RuntimeException ERROR = new RuntimeException("benchmark", null, false, false) {
+		private static final long serialVersionUID = 1L;
+	};
+
+	private RoutineContext context;
+	private BlockingQueue<Object> events;
+
+	@Setup
+	public void setup() throws InterruptedException {
+		MultiThreadTest mtt = CapturedContext.newTest();
+		context = CapturedContext.capture(mtt, false);
+		events = mtt.compute(MultiThreadTest.ComputeContext::getPendingEvents);
+	}
+
+	@Benchmark
+	public Object failAndPoll() {
+		context.complete(context.begin(), 1, ERROR);
+		return events.poll();
+	}
+
+	@Benchmark
+	@Group("drained")
+	@GroupThreads(3)
+	public void fail() {
+		context.complete(context.begin(), 1, ERROR);
+	}
+
+	@Benchmark
+	@Group("drained")
+	@GroupThreads(1)
+	public int drain(Drain drain) {
+		int drained = events.drainTo(drain.events);
+		drain.events.clear();
+		return drained;
+	}
+
+	@State(Scope.Thread)
+	public static class Drain {
+		private final List<Object> events = new ArrayList<>();
+	}
+}
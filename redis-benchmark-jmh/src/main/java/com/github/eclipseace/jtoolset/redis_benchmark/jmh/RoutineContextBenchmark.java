@@ -0,0 +1,65 @@
+package com.github.eclipseace.jtoolset.redis_benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+/**
+ * What timing and recording add to every operation: an empty operation run
+ * through {@link RoutineContext}, alone, as a pipeline batch, as an operation
+ * of a workload mix and through the asynchronous begin/complete pair. The
+ * context is shared, so with several threads the benchmarks also show the
+ * contention on the test's recorders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutineContextBenchmark {
+	private static final Runnable NOOP = () -> {
+	};
+
+	@Param({ "closed", "open" })
+	private String loop;
+
+	private RoutineContext context;
+
+	@Setup
+	public void setup() throws InterruptedException {
+		context = CapturedContext.capture(CapturedContext.newTest(), "open".equals(loop));
+	}
+
+	@Benchmark
+	public void run() {
+		context.run(NOOP);
+	}
+
+	@Benchmark
+	public void runPipeline() {
+		context.run(10, NOOP);
+	}
+
+	@Benchmark
+	public void runWorkloadOperation() {
+		context.forOperation("read").run(NOOP);
+	}
+
+	@Benchmark
+	public void beginComplete() {
+		context.complete(context.begin(), 1, null);
+	}
+}
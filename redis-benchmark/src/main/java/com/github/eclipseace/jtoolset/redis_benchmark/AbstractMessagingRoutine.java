@@ -0,0 +1,208 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.Closeable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+/**
+ * Passes messages from producer to consumer threads. The first
+ * {@code consumers} threads of a test consume and the others produce, so a
+ * ramp-up starts consumers first. Producers record how long a send takes in
+ * the main histogram, consumers record the time from send to receipt under
+ * the {@value #E2E_METRIC} metric, whose throughput is the delivery rate.
+ * <p>
+ * Every message starts with a {@value #STAMP_LENGTH}-byte stamp: the routine
+ * it came from and its {@link System#nanoTime()} at send. Only messages sent
+ * by the same routine are timed, others, e.g. from other agents or earlier
+ * runs, are counted under {@value #FOREIGN_COUNTER}. Consumers keep receiving
+ * after their loops until nothing arrived for the drain timeout. Their loops
+ * take slots of an open-loop schedule as producer operations do.
+ */
+public abstract class AbstractMessagingRoutine implements MultiThreadTest.Routine {
+	public static final String E2E_METRIC = "e2e";
+	public static final String FOREIGN_COUNTER = "e2e:foreign";
+	public static final int STAMP_LENGTH = 16;
+	public static final long DEFAULT_POLL_MILLIS = 100;
+	public static final long DEFAULT_DRAIN_MILLIS = 1000;
+
+	private final ThreadLocal<Worker> workerHolder = new ThreadLocal<>();
+	private final ThreadLocal<byte[]> messageHolder = new ThreadLocal<>();
+	private final long origin = ThreadLocalRandom.current().nextLong();
+	private final PayloadGenerator payloads;
+	private final int consumers;
+	private long pollMillis = DEFAULT_POLL_MILLIS;
+	private long drainMillis = DEFAULT_DRAIN_MILLIS;
+
+	/**
+	 * @param consumers threads consuming, from thread index 0
+	 */
+	protected AbstractMessagingRoutine(PayloadGenerator payloads, int consumers) {
+		this.payloads = payloads;
+		this.consumers = consumers;
+	}
+
+	public int getConsumers() {
+		return consumers;
+	}
+
+	public long getPollTimeout() {
+		return pollMillis;
+	}
+
+	/**
+	 * @param pollMillis longest a consumer loop waits for messages
+	 */
+	public void setPollTimeout(long pollMillis) {
+		this.pollMillis = pollMillis;
+	}
+
+	public long getDrainTimeout() {
+		return drainMillis;
+	}
+
+	/**
+	 * @param drainMillis how long consumers wait for late messages once their
+	 *                    loops are done
+	 */
+	public void setDrainTimeout(long drainMillis) {
+		this.drainMillis = drainMillis;
+	}
+
+	/**
+	 * @return channels or streams the messages are spread over
+	 */
+	public abstract int getKeySpace();
+
+	protected abstract Producer newProducer(int threadIndex);
+
+	protected abstract Consumer newConsumer(int threadIndex);
+
+	@Override
+	public void beforeLoop() {
+	}
+
+	@Override
+	public void execute(RoutineContext context) {
+		Worker worker = workerHolder.get();
+		boolean consumer = context.getThreadIndex() < consumers;
+		if (worker == null) {
+			worker = consumer ? newConsumer(context.getThreadIndex()) : newProducer(context.getThreadIndex());
+			workerHolder.set(worker);
+		}
+		worker.context = context;
+		if (consumer) {
+			try {
+				((Consumer) worker).poll(pollMillis);
+			} catch (RuntimeException e) {
+				context.fail(1, e);
+			}
+			return;
+		}
+		int keyIndex = context.nextKey(getKeySpace());
+		byte[] payload = payloads.next();
+		long begin = context.begin();
+		RuntimeException error = null;
+		try {
+			((Producer) worker).send(keyIndex, stamp(payload, begin));
+		} catch (RuntimeException e) {
+			error = e;
+		}
+		context.complete(begin, 1, error);
+	}
+
+	@Override
+	public void afterLoop() {
+		Worker worker = workerHolder.get();
+		workerHolder.remove();
+		if (worker == null) {
+			return;
+		}
+		try {
+			if (worker instanceof Consumer) {
+				long drainNanos = TimeUnit.MILLISECONDS.toNanos(drainMillis);
+				long idleSince = System.nanoTime();
+				while (System.nanoTime() - idleSince < drainNanos) {
+					if (((Consumer) worker).poll(pollMillis) > 0) {
+						idleSince = System.nanoTime();
+					}
+				}
+			}
+		} finally {
+			worker.close();
+		}
+	}
+
+	/**
+	 * Copies the payload behind a stamp into a buffer reused by the thread.
+	 */
+	private byte[] stamp(byte[] payload, long nanos) {
+		int length = Math.max(STAMP_LENGTH, payload.length);
+		byte[] message = messageHolder.get();
+		if (message == null || message.length != length) {
+			message = new byte[length];
+			messageHolder.set(message);
+		}
+		if (payload.length > STAMP_LENGTH) {
+			System.arraycopy(payload, STAMP_LENGTH, message, STAMP_LENGTH, payload.length - STAMP_LENGTH);
+		}
+		writeLong(message, 0, origin);
+		writeLong(message, 8, nanos);
+		return message;
+	}
+
+	private static void writeLong(byte[] bytes, int offset, long value) {
+		for (int i = 7; i >= 0; i--) {
+			bytes[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	private static long readLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = value << 8 | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+	/**
+	 * Connection of one thread, either a {@link Producer} or a
+	 * {@link Consumer}.
+	 */
+	protected abstract class Worker implements Closeable {
+		private RoutineContext context;
+
+		protected RoutineContext getContext() {
+			return context;
+		}
+
+		@Override
+		public abstract void close();
+	}
+
+	protected abstract class Producer extends Worker {
+		protected abstract void send(int keyIndex, byte[] message);
+	}
+
+	protected abstract class Consumer extends Worker {
+		/**
+		 * Waits up to the timeout for messages, passing each to
+		 * {@link #received(byte[])}.
+		 *
+		 * @return messages received
+		 */
+		protected abstract int poll(long timeoutMillis);
+
+		protected void received(byte[] message) {
+			long now = System.nanoTime();
+			if (message.length < STAMP_LENGTH || readLong(message, 0) != origin) {
+				getContext().getCounter(FOREIGN_COUNTER).increment();
+				return;
+			}
+			getContext().getRecorder(E2E_METRIC).record(now - readLong(message, 8));
+		}
+	}
+}
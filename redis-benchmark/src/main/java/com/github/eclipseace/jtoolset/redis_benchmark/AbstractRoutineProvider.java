@@ -0,0 +1,49 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link RoutineProvider} with a fixed name, description and options.
+ */
+public abstract class AbstractRoutineProvider implements RoutineProvider {
+	private final String name;
+	private final String description;
+	private final List<RoutineOption> options;
+
+	protected AbstractRoutineProvider(String name, String description, RoutineOption... options) {
+		this.name = name;
+		this.description = description;
+		this.options = Collections.unmodifiableList(Arrays.asList(options));
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getDescription() {
+		return description;
+	}
+
+	@Override
+	public List<RoutineOption> getOptions() {
+		return options;
+	}
+
+	/**
+	 * @throws IllegalArgumentException in cluster mode
+	 */
+	protected void requireStandalone(RoutineParameters params) {
+		if (params.isCluster()) {
+			throw new IllegalArgumentException("Cluster mode does not support test type " + name);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
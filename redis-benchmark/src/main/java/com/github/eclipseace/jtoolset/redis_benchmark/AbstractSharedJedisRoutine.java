@@ -1,31 +1,267 @@
 package com.github.eclipseace.jtoolset.redis_benchmark;
 
+import java.io.Closeable;
 import java.net.URI;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Runs an operation per loop on Jedis connections, owned by each thread or
+ * borrowed from a shared pool. Routines implementing {@link JedisPipelinable}
+ * can also be pipelined, and those implementing {@link RespCommandFactory} can
+ * be replayed by the async engine or against a cluster.
+ */
+public abstract class AbstractSharedJedisRoutine implements MultiThreadTest.Routine, Closeable {
+	public static final String BORROW_METRIC = "borrow";
+	public static final int CLUSTER_KEY_GROUPS = 256;
 
-public abstract class AbstractSharedJedisRoutine implements MultiThreadTest.Routine {
 	private final ThreadLocal<Jedis> jedisHolder = new ThreadLocal<>();
+	private final ThreadLocal<int[]> keyIndexesHolder = new ThreadLocal<>();
 
 	private final URI jedisUri;
+	private final boolean cluster;
+	private int pipelineSize = 1;
+	private int poolSize;
+	private JedisPool pool;
+	private Preloader preloader;
+	private int seedCount;
+	private IntFunction<byte[][]> seedFactory;
+	private IntFunction<byte[][]> seedCheckFactory;
 
 	public AbstractSharedJedisRoutine(URI jedisUri) {
+		this(jedisUri, false);
+	}
+
+	/**
+	 * @param cluster spread keys over {@value #CLUSTER_KEY_GROUPS} hash-tagged
+	 *                groups covering the whole slot range, so they can be
+	 *                replayed against a Redis Cluster by {@link ClusterRoutine}
+	 */
+	public AbstractSharedJedisRoutine(URI jedisUri, boolean cluster) {
 		this.jedisUri = jedisUri;
+		this.cluster = cluster;
+	}
+
+	public boolean isCluster() {
+		return cluster;
+	}
+
+	public int getPipelineSize() {
+		return pipelineSize;
+	}
+
+	/**
+	 * @param pipelineSize commands queued on one {@link Pipeline} per loop, 1
+	 *                     sends every command on its own
+	 * @throws IllegalArgumentException if above 1 and the routine is not
+	 *                                  {@link JedisPipelinable}
+	 */
+	public void setPipelineSize(int pipelineSize) {
+		if (pipelineSize > 1 && !(this instanceof JedisPipelinable)) {
+			throw new IllegalArgumentException(getClass().getSimpleName() + " cannot be pipelined");
+		}
+		this.pipelineSize = pipelineSize;
+	}
+
+	/**
+	 * @return the number of distinct keys, or key groups, operations address
+	 */
+	public abstract int getKeySpace();
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * Makes all worker threads share a pool of connections instead of owning
+	 * one each. Time spent waiting to borrow a connection is recorded under
+	 * the {@value #BORROW_METRIC} metric, apart from command latency.
+	 *
+	 * @param poolSize max connections in the pool, 0 for a dedicated
+	 *                 connection per thread; a pool set earlier is closed
+	 */
+	public void setPoolSize(int poolSize) {
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
+		this.poolSize = poolSize;
+		if (poolSize > 0) {
+			JedisPoolConfig config = new JedisPoolConfig();
+			config.setMaxTotal(poolSize);
+			config.setMaxIdle(poolSize);
+			config.setJmxEnabled(false);
+			pool = new JedisPool(config, jedisUri);
+		}
+	}
+
+	public Preloader getPreloader() {
+		return preloader;
+	}
+
+	/**
+	 * @param preloader writes the dataset the routine reads, a default one if
+	 *                  not set
+	 */
+	public void setPreloader(Preloader preloader) {
+		this.preloader = preloader;
+	}
+
+	/**
+	 * Writes the dataset registered by {@link #seed(int, IntFunction, IntFunction)}, unless
+	 * already done. Runs before the first loop if not called earlier.
+	 */
+	public synchronized void preload() {
+		if (seedFactory == null) {
+			return;
+		}
+		IntFunction<byte[][]> commandFactory = seedFactory;
+		seedFactory = null;
+		if (cluster) {
+			try (ClusterRouter router = new ClusterRouter(jedisUri)) {
+				for (int i = 0; i < seedCount; i++) {
+					router.send(commandFactory.apply(i));
+				}
+			}
+			return;
+		}
+		(preloader != null ? preloader : new Preloader(jedisUri)).load(seedCount, commandFactory, seedCheckFactory);
 	}
 
 	protected Jedis getJedis() {
 		return jedisHolder.get();
 	}
 
+	@Override
+	public void execute(RoutineContext context) {
+		if (pool == null) {
+			execute(getJedis(), context);
+			return;
+		}
+		long borrowStart = System.nanoTime();
+		Jedis jedis;
+		try {
+			jedis = pool.getResource();
+		} catch (RuntimeException e) {
+			context.complete(borrowStart, pipelineSize, e);
+			return;
+		}
+		try {
+			context.getRecorder(BORROW_METRIC).record(System.nanoTime() - borrowStart);
+			execute(jedis, context);
+		} finally {
+			jedis.close();
+		}
+	}
+
+	private void execute(Jedis jedis, RoutineContext context) {
+		if (pipelineSize <= 1) {
+			int keyIndex = context.nextKey(getKeySpace());
+			context.run(() -> execute(jedis, keyIndex, context));
+			return;
+		}
+		int[] keyIndexes = keyIndexesHolder.get();
+		for (int i = 0; i < pipelineSize; i++) {
+			keyIndexes[i] = context.nextKey(getKeySpace());
+		}
+		context.run(pipelineSize, () -> {
+			Pipeline pipeline = jedis.pipelined();
+			for (int i = 0; i < pipelineSize; i++) {
+				((JedisPipelinable) this).execute(pipeline, keyIndexes[i]);
+			}
+			checkReplies(pipeline.syncAndReturnAll());
+		});
+	}
+
+	/**
+	 * Throws the first error among replies, including those an {@code EXEC}
+	 * reply holds for the commands of its transaction.
+	 */
+	protected static void checkReplies(List<Object> replies) {
+		for (Object reply : replies) {
+			if (reply instanceof JedisDataException) {
+				throw (JedisDataException) reply;
+			} else if (reply instanceof List) {
+				@SuppressWarnings("unchecked")
+				List<Object> nested = (List<Object>) reply;
+				checkReplies(nested);
+			}
+		}
+	}
+
+	/**
+	 * @return 1, or {@value #CLUSTER_KEY_GROUPS} in cluster mode
+	 */
+	protected int getKeyGroups() {
+		return cluster ? CLUSTER_KEY_GROUPS : 1;
+	}
+
+	/**
+	 * @return the hash tag keys of a group share, empty outside cluster mode
+	 */
+	protected String getKeyTag(int group) {
+		return cluster ? ClusterSlots.hashTag(group, CLUSTER_KEY_GROUPS) : "";
+	}
+
+	/**
+	 * Registers setup commands for {@link #preload()}. In cluster mode they are
+	 * sent one by one through a {@link ClusterRouter} instead.
+	 *
+	 * @param checkFactory command replying a positive integer when the i-th
+	 *                     command's data exists, used to skip it
+	 */
+	protected void seed(int count, IntFunction<byte[][]> commandFactory, IntFunction<byte[][]> checkFactory) {
+		this.seedCount = count;
+		this.seedFactory = commandFactory;
+		this.seedCheckFactory = checkFactory;
+	}
+
+	protected abstract void execute(Jedis jedis, int keyIndex);
+
+	/**
+	 * Runs one unpipelined operation, for routines that report more than its
+	 * latency.
+	 */
+	protected void execute(Jedis jedis, int keyIndex, RoutineContext context) {
+		execute(jedis, keyIndex);
+	}
+
 	@Override
 	public void beforeLoop() {
-		jedisHolder.set(new Jedis(jedisUri));
+		preload();
+		keyIndexesHolder.set(new int[pipelineSize]);
+		if (pool == null) {
+			jedisHolder.set(new Jedis(jedisUri));
+		}
 	}
 
 	@Override
 	public void afterLoop() {
+		keyIndexesHolder.remove();
 		Jedis jedis = jedisHolder.get();
-		jedisHolder.remove();
-		jedis.close();
+		if (jedis != null) {
+			jedisHolder.remove();
+			jedis.close();
+		}
+	}
+
+	/**
+	 * Closes the connection pool, once no test runs the routine any more.
+	 */
+	@Override
+	public void close() {
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,146 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates load on behalf of a {@link Coordinator}: it waits for a run
+ * request, starts the same benchmark at the agreed time and streams its
+ * intervals back. Coordinators are served one at a time.
+ * <p>
+ * Anyone who can connect may start a benchmark, so an agent listens on the
+ * loopback interface unless given an address to bind, which should only be
+ * reachable from trusted hosts.
+ */
+public class Agent implements Closeable {
+	/**
+	 * Interval of the heartbeats sent while a run is busy, e.g. preloading,
+	 * well below {@link Coordinator#DEFAULT_AGENT_TIMEOUT_MILLIS}.
+	 */
+	public static final long HEARTBEAT_MILLIS = 1000;
+	private static final int REQUEST_TIMEOUT_MILLIS = 30000;
+
+	private final ServerSocket serverSocket;
+	private final Runner runner;
+
+	public Agent(int port, Runner runner) throws IOException {
+		this(InetAddress.getLoopbackAddress(), port, runner);
+	}
+
+	/**
+	 * @param bindAddress interface to listen on, e.g. a private network one
+	 */
+	public Agent(InetAddress bindAddress, int port, Runner runner) throws IOException {
+		this.serverSocket = new ServerSocket();
+		this.serverSocket.bind(new InetSocketAddress(bindAddress, port));
+		this.runner = runner;
+	}
+
+	public InetAddress getAddress() {
+		return serverSocket.getInetAddress();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Serves coordinators until {@link #close()} is called.
+	 */
+	public void serve() throws IOException {
+		while (true) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (SocketException e) {
+				if (serverSocket.isClosed()) {
+					return;
+				}
+				throw e;
+			}
+			try (Socket s = socket) {
+				handle(s);
+			} catch (IOException e) {
+				System.err.println("Coordinator " + socket.getRemoteSocketAddress() + " lost: " + e);
+			}
+		}
+	}
+
+	private void handle(Socket socket) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+		RemoteIntervalWriter out = new RemoteIntervalWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8));
+		long startAtMillis;
+		List<String> args = new ArrayList<>();
+		socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+		try {
+			String request = in.readLine();
+			String[] fields = request != null ? request.split("\t") : new String[0];
+			if (fields.length != 3 || !Coordinator.RUN.equals(fields[0])) {
+				throw new IllegalArgumentException("Unexpected request: " + request);
+			}
+			startAtMillis = Long.parseLong(fields[1]);
+			for (int i = Integer.parseInt(fields[2]); i > 0; i--) {
+				String arg = in.readLine();
+				if (arg == null) {
+					throw new IllegalArgumentException("Request ended after " + args.size() + " of " + fields[2]
+							+ " arguments");
+				}
+				args.add(arg);
+			}
+		} catch (IllegalArgumentException e) {
+			out.fail(e);
+			return;
+		}
+		socket.setSoTimeout(0);
+		ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "agent-heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		heartbeat.scheduleAtFixedRate(() -> {
+			try {
+				out.heartbeat();
+			} catch (IOException e) {
+				// the run fails on its next interval
+			}
+		}, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+		try {
+			runner.run(args, out, startAtMillis);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			out.fail(e);
+		} finally {
+			heartbeat.shutdownNow();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+
+	@FunctionalInterface
+	public static interface Runner {
+		/**
+		 * Runs one benchmark, handing every interval to the listener and
+		 * closing it once done.
+		 */
+		void run(List<String> args, IntervalSampler.Listener listener, long startAtMillis) throws Exception;
+	}
+}
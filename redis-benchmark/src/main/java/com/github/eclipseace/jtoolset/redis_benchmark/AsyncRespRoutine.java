@@ -0,0 +1,50 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.util.concurrent.Semaphore;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+/**
+ * Replays the commands of another routine through a {@link RespClient}. Each
+ * worker thread keeps up to {@code maxInFlight} requests outstanding and
+ * latencies are recorded when replies arrive on the event loops, so a few
+ * worker threads can drive thousands of connections.
+ */
+public class AsyncRespRoutine implements MultiThreadTest.Routine {
+	private final ThreadLocal<Semaphore> inFlightHolder = new ThreadLocal<>();
+
+	private final RespClient client;
+	private final RespCommandFactory commandFactory;
+	private final int maxInFlight;
+
+	public AsyncRespRoutine(RespClient client, RespCommandFactory commandFactory, int maxInFlight) {
+		this.client = client;
+		this.commandFactory = commandFactory;
+		this.maxInFlight = maxInFlight;
+	}
+
+	@Override
+	public void execute(RoutineContext context) {
+		Semaphore inFlight = inFlightHolder.get();
+		byte[] command = RespWriter.command(commandFactory.command(context.nextKey(commandFactory.getKeySpace())));
+		inFlight.acquireUninterruptibly();
+		long begin = context.begin();
+		client.nextConnection().send(command, (reply, error) -> {
+			inFlight.release();
+			context.complete(begin, 1, error != null ? error : reply instanceof RespError ? (RespError) reply : null);
+		});
+	}
+
+	@Override
+	public void beforeLoop() {
+		commandFactory.preload();
+		inFlightHolder.set(new Semaphore(maxInFlight));
+	}
+
+	@Override
+	public void afterLoop() {
+		inFlightHolder.get().acquireUninterruptibly(maxInFlight);
+		inFlightHolder.remove();
+	}
+}
@@ -0,0 +1,164 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.redis_benchmark.RoutineOption.Type;
+
+/**
+ * The test types shipped with the tool, registered in
+ * {@code META-INF/services} like any other provider.
+ */
+public final class BuiltinRoutineProviders {
+	private static final String DEFAULT_KEYS = "10000";
+
+	private BuiltinRoutineProviders() {
+	}
+
+	public static class SetProvider extends AbstractRoutineProvider {
+		public SetProvider() {
+			super("set", "SET of a payload per key",
+					new RoutineOption("keys", Type.INT, DEFAULT_KEYS, "keys written in turn"),
+					new RoutineOption("ttl", Type.INT, "0", "expiry of the keys, in seconds, 0 to keep them"));
+		}
+
+		@Override
+		public MultiThreadTest.Routine create(RoutineParameters params) {
+			SETRoutine routine = new SETRoutine(params.getUri(), params.getPayloads(), params.getInt("keys"),
+					params.isCluster());
+			routine.setTtl(params.getInt("ttl"));
+			return routine;
+		}
+	}
+
+	public static class HsetProvider extends AbstractRoutineProvider {
+		public HsetProvider() {
+			super("hset", "HSET of a payload per field of one hash",
+					new RoutineOption("fields", Type.INT, DEFAULT_KEYS, "fields written in turn"));
+		}
+
+		@Override
+		public MultiThreadTest.Routine create(RoutineParameters params) {
+			return new HSETRoutine(params.getUri(), params.getPayloads(), params.getInt("fields"), params.isCluster());
+		}
+	}
+
+	public static class MgetProvider extends AbstractRoutineProvider {
+		public MgetProvider() {
+			super("mget", "MGET of a batch of preloaded keys",
+					new RoutineOption("keys", Type.INT, DEFAULT_KEYS, "keys read per MGET"));
+		}
+
+		@Override
+		public MultiThreadTest.Routine create(RoutineParameters params) {
+			return new MGETRoutine(params.getUri(), params.getPayloads(), params.getInt("keys"), params.isCluster());
+		}
+	}
+
+	public static class HmgetProvider extends AbstractRoutineProvider {
+		public HmgetProvider() {
+			super("hmget", "HMGET of a batch of preloaded fields of one hash",
+					new RoutineOption("fields", Type.INT, DEFAULT_KEYS, "fields read per HMGET"));
+		}
+
+		@Override
+		public MultiThreadTest.Routine create(RoutineParameters params) {
+			return new HMGETRoutine(params.getUri(), params.getPayloads(), params.getInt("fields"),
+					params.isCluster());
+		}
+	}
+
+	public static class MultiProvider extends AbstractRoutineProvider {
+		public MultiProvider() {
+			super("multi", "SETs of consecutive keys in one MULTI/EXEC",
+					new RoutineOption("keys", Type.INT, DEFAULT_KEYS, "keys written in turn"),
+					new RoutineOption("commands", Type.INT, String.valueOf(MULTIRoutine.DEFAULT_COMMANDS),
+							"SETs per transaction"));
+		}
+
+		@Override
+		public MultiThreadTest.Routine create(RoutineParameters params) {
+			requireStandalone(params);
+			return new MULTIRoutine(params.getUri(), params.getPayloads(), params.getInt("keys"),
+					params.getInt("commands"));
+		}
+	}
+
+	public static class EvalshaProvider extends AbstractRoutineProvider {
+		public EvalshaProvider() {
+			super("evalsha", "Lua script run by SHA, KEYS[1] is the value key, KEYS[2] its version key "
+					+ "and ARGV[1] the payload",
+					new RoutineOption("keys", Type.INT, DEFAULT_KEYS, "value keys used in turn"),
+					new RoutineOption("script", Type.FILE, null,
+							"script file, default sets the value and increments the version"));
+		}
+
+		@Override
+		public MultiThreadTest.Routine create(RoutineParameters params) throws Exception {
+			requireStandalone(params);
+			String script = params.getString("script");
+			return new EVALSHARoutine(params.getUri(), params.getPayloads(), params.getInt("keys"),
+					script != null ? new String(Files.readAllBytes(Paths.get(script)), StandardCharsets.UTF_8)
+							: EVALSHARoutine.DEFAULT_SCRIPT);
+		}
+	}
+
+	public static class WatchProvider extends AbstractRoutineProvider {
+		public WatchProvider() {
+			super("watch", "optimistic increment of a counter with WATCH and MULTI/EXEC",
+					new RoutineOption("keys", Type.INT, DEFAULT_KEYS, "counters, fewer make for more contention"),
+					new RoutineOption("retries", Type.INT, String.valueOf(WATCHRoutine.DEFAULT_MAX_RETRIES),
+							"retries of an aborted transaction before the operation fails"));
+		}
+
+		@Override
+		public MultiThreadTest.Routine create(RoutineParameters params) {
+			requireStandalone(params);
+			WATCHRoutine routine = new WATCHRoutine(params.getUri(), params.getInt("keys"));
+			routine.setMaxRetries(params.getInt("retries"));
+			return routine;
+		}
+	}
+
+	public static class PubSubProvider extends AbstractRoutineProvider {
+		public PubSubProvider() {
+			super("pubsub", "PUBLISH from producer threads to subscribed consumer threads, end-to-end latency",
+					new RoutineOption("channels", Type.INT, "1", "channels published to in turn"),
+					new RoutineOption("consumers", Type.INT, null, "subscribing threads, default half the threads"));
+		}
+
+		@Override
+		public MultiThreadTest.Routine create(RoutineParameters params) {
+			return new PubSubRoutine(params.getUri(), params.getPayloads(), params.getInt("channels"),
+					consumers(params));
+		}
+	}
+
+	public static class StreamProvider extends AbstractRoutineProvider {
+		public StreamProvider() {
+			super("stream", "XADD from producer threads, XREADGROUP and XACK by consumer threads, "
+					+ "end-to-end latency",
+					new RoutineOption("streams", Type.INT, "1", "streams appended to in turn"),
+					new RoutineOption("consumers", Type.INT, null, "threads of the consumer group, default half the threads"),
+					new RoutineOption("max-length", Type.LONG, String.valueOf(StreamRoutine.DEFAULT_MAX_LENGTH),
+							"entries kept per stream, trimmed approximately"),
+					new RoutineOption("read-count", Type.INT, String.valueOf(StreamRoutine.DEFAULT_READ_COUNT),
+							"max entries per XREADGROUP"));
+		}
+
+		@Override
+		public MultiThreadTest.Routine create(RoutineParameters params) {
+			StreamRoutine routine = new StreamRoutine(params.getUri(), params.getPayloads(), params.getInt("streams"),
+					consumers(params));
+			routine.setMaxLength(params.getLong("max-length"));
+			routine.setReadCount(params.getInt("read-count"));
+			return routine;
+		}
+	}
+
+	private static int consumers(RoutineParameters params) {
+		return params.has("consumers") ? params.getInt("consumers") : Math.max(1, params.getThreads() / 2);
+	}
+}
@@ -0,0 +1,155 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisClusterMaxAttemptsException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+
+/**
+ * Routes raw commands to the Redis Cluster node owning the slot of their first
+ * key. Keeps one connection per node per thread, follows MOVED and ASK
+ * redirections and, when given a {@link RoutineContext}, records latency per
+ * node and counts redirections.
+ */
+public class ClusterRouter implements Closeable {
+	public static final String NODE_METRIC_PREFIX = "node:";
+	public static final String MOVED_COUNTER = "moved";
+	public static final String ASK_COUNTER = "ask";
+
+	private static final int MAX_REDIRECTIONS = 5;
+
+	private final String password;
+	private final AtomicReferenceArray<HostAndPort> slots = new AtomicReferenceArray<>(ClusterSlots.SLOT_COUNT);
+	private final ThreadLocal<Map<HostAndPort, NodeConnection>> connectionsHolder = ThreadLocal
+			.withInitial(HashMap::new);
+
+	public ClusterRouter(URI seed) {
+		String userInfo = seed.getUserInfo();
+		this.password = userInfo == null ? null : userInfo.substring(userInfo.indexOf(':') + 1);
+		refreshSlots(new HostAndPort(seed.getHost(), seed.getPort() < 0 ? 6379 : seed.getPort()));
+	}
+
+	/**
+	 * @return every node currently owning at least one slot
+	 */
+	public Set<String> getNodes() {
+		Set<String> nodes = new TreeSet<>();
+		for (int i = 0; i < slots.length(); i++) {
+			if (slots.get(i) != null) {
+				nodes.add(slots.get(i).toString());
+			}
+		}
+		return nodes;
+	}
+
+	public Object send(byte[]... command) {
+		return send(null, command);
+	}
+
+	public Object send(RoutineContext context, byte[]... command) {
+		int slot = ClusterSlots.slot(command[1]);
+		ProtocolCommand protocolCommand = () -> command[0];
+		byte[][] args = Arrays.copyOfRange(command, 1, command.length);
+
+		HostAndPort node = slots.get(slot);
+		boolean asking = false;
+		for (int attempt = 0; attempt <= MAX_REDIRECTIONS; attempt++) {
+			if (node == null) {
+				throw new IllegalStateException("No node serves slot " + slot);
+			}
+			NodeConnection connection = connection(node);
+			long begin = System.nanoTime();
+			try {
+				if (asking) {
+					connection.jedis.asking();
+				}
+				Object reply = connection.jedis.sendCommand(protocolCommand, args);
+				if (context != null) {
+					context.getRecorder(connection.metric).record(System.nanoTime() - begin);
+				}
+				return reply;
+			} catch (JedisMovedDataException e) {
+				if (context != null) {
+					context.getCounter(MOVED_COUNTER).increment();
+				}
+				slots.set(e.getSlot(), e.getTargetNode());
+				node = e.getTargetNode();
+				asking = false;
+			} catch (JedisAskDataException e) {
+				if (context != null) {
+					context.getCounter(ASK_COUNTER).increment();
+				}
+				node = e.getTargetNode();
+				asking = true;
+			}
+		}
+		throw new JedisClusterMaxAttemptsException("Too many cluster redirections for slot " + slot);
+	}
+
+	/**
+	 * Closes the connections opened by the calling thread.
+	 */
+	@Override
+	public void close() {
+		Map<HostAndPort, NodeConnection> connections = connectionsHolder.get();
+		connectionsHolder.remove();
+		connections.values().forEach(connection -> connection.jedis.close());
+	}
+
+	private NodeConnection connection(HostAndPort node) {
+		return connectionsHolder.get().computeIfAbsent(node, n -> new NodeConnection(open(n), NODE_METRIC_PREFIX + n));
+	}
+
+	private Jedis open(HostAndPort node) {
+		Jedis jedis = new Jedis(node);
+		if (password != null && !password.isEmpty()) {
+			jedis.auth(password);
+		}
+		return jedis;
+	}
+
+	private void refreshSlots(HostAndPort seed) {
+		List<Object> clusterSlots;
+		try (Jedis jedis = open(seed)) {
+			clusterSlots = jedis.clusterSlots();
+		}
+		for (Object entry : clusterSlots) {
+			List<?> range = (List<?>) entry;
+			List<?> master = (List<?>) range.get(2);
+			HostAndPort node = new HostAndPort(new String((byte[]) master.get(0), UTF_8),
+					((Long) master.get(1)).intValue());
+			if (node.getHost().isEmpty()) {
+				node = new HostAndPort(seed.getHost(), node.getPort());
+			}
+			for (long slot = (Long) range.get(0); slot <= (Long) range.get(1); slot++) {
+				slots.set((int) slot, node);
+			}
+		}
+	}
+
+	private static class NodeConnection {
+		private final Jedis jedis;
+		private final String metric;
+
+		private NodeConnection(Jedis jedis, String metric) {
+			this.jedis = jedis;
+			this.metric = metric;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+/**
+ * Replays the commands of another routine against a Redis Cluster through a
+ * {@link ClusterRouter}, recording per-node latency and redirection counts.
+ */
+public class ClusterRoutine implements MultiThreadTest.Routine {
+	private final ClusterRouter router;
+	private final RespCommandFactory commandFactory;
+
+	public ClusterRoutine(ClusterRouter router, RespCommandFactory commandFactory) {
+		this.router = router;
+		this.commandFactory = commandFactory;
+	}
+
+	@Override
+	public void execute(RoutineContext context) {
+		byte[][] command = commandFactory.command(context.nextKey(commandFactory.getKeySpace()));
+		context.run(() -> router.send(context, command));
+	}
+
+	@Override
+	public void beforeLoop() {
+		commandFactory.preload();
+	}
+
+	@Override
+	public void afterLoop() {
+		router.close();
+	}
+}
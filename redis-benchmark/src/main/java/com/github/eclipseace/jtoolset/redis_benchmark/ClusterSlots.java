@@ -0,0 +1,47 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+/**
+ * Hash-slot helpers for spreading generated keys evenly across a Redis
+ * Cluster.
+ */
+public final class ClusterSlots {
+	public static final int SLOT_COUNT = 16384;
+
+	private static final String[] HASH_TAGS = new String[SLOT_COUNT];
+
+	static {
+		int remaining = SLOT_COUNT;
+		for (int n = 0; remaining > 0; n++) {
+			String tag = Integer.toString(n, 36);
+			int slot = JedisClusterCRC16.getSlot(tag);
+			if (HASH_TAGS[slot] == null) {
+				HASH_TAGS[slot] = "{" + tag + "}";
+				remaining--;
+			}
+		}
+	}
+
+	private ClusterSlots() {
+	}
+
+	/**
+	 * @return the shortest hash tag, braces included, mapping keys to the slot
+	 */
+	public static String hashTag(int slot) {
+		return HASH_TAGS[slot];
+	}
+
+	/**
+	 * @return a hash tag for the index-th of count groups, spread evenly over
+	 *         all slots
+	 */
+	public static String hashTag(int index, int count) {
+		return HASH_TAGS[(int) ((long) index * SLOT_COUNT / count) % SLOT_COUNT];
+	}
+
+	public static int slot(byte[] key) {
+		return JedisClusterCRC16.getSlot(key);
+	}
+}
@@ -0,0 +1,344 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.DataFormatException;
+
+import org.HdrHistogram.Histogram;
+
+import com.github.eclipseace.jtoolset.load_harness.JvmMonitor;
+import com.github.eclipseace.jtoolset.load_harness.LatencyRecorder;
+
+/**
+ * Runs the same benchmark on several {@link Agent}s at once. Agents start at
+ * a shared wall-clock time, so their clocks should be synchronized, and send
+ * their interval histograms back. The n-th intervals of all agents are merged
+ * into one {@link IntervalSnapshot} by adding histograms, which keeps
+ * percentiles exact where averaging per-agent percentiles would not. Their
+ * JVM samples are added up too, except for the GC pause time, which is the
+ * longest of any one agent, so that a stall stays flagged against its
+ * threshold. Agents send heartbeats while busy, so one silent for longer than
+ * the agent timeout is considered lost.
+ */
+public class Coordinator {
+	public static final long DEFAULT_START_DELAY_MILLIS = 2000;
+	public static final int DEFAULT_AGENT_TIMEOUT_MILLIS = 30000;
+
+	static final String RUN = "R";
+	static final String INTERVAL = "I";
+	static final String JVM = "J";
+	static final String METRIC = "M";
+	static final String COUNTER = "C";
+	static final String EVENT = "E";
+	static final String END_OF_INTERVAL = ".";
+	static final String HEARTBEAT = "H";
+	static final String DONE = "D";
+	static final String FAILED = "X";
+
+	private final List<InetSocketAddress> agents;
+	private long startDelayMillis = DEFAULT_START_DELAY_MILLIS;
+	private int agentTimeoutMillis = DEFAULT_AGENT_TIMEOUT_MILLIS;
+
+	public Coordinator(List<InetSocketAddress> agents) {
+		if (agents.isEmpty()) {
+			throw new IllegalArgumentException("No agents");
+		}
+		this.agents = new ArrayList<>(agents);
+	}
+
+	/**
+	 * @param spec comma-separated {@code <host>:<port>} list
+	 */
+	public static Coordinator parse(String spec) {
+		List<InetSocketAddress> agents = new ArrayList<>();
+		for (String agent : spec.split(",")) {
+			int colon = agent.lastIndexOf(':');
+			agents.add(new InetSocketAddress(agent.substring(0, colon).trim(),
+					Integer.parseInt(agent.substring(colon + 1).trim())));
+		}
+		return new Coordinator(agents);
+	}
+
+	/**
+	 * @param startDelayMillis time given to every agent to receive the request
+	 *                         and connect to Redis before the shared start
+	 */
+	public void setStartDelay(long startDelayMillis) {
+		this.startDelayMillis = startDelayMillis;
+	}
+
+	public int getAgentTimeout() {
+		return agentTimeoutMillis;
+	}
+
+	/**
+	 * @param agentTimeoutMillis time to connect to an agent, and longest
+	 *                           silence of an agent before it is considered
+	 *                           lost; must exceed {@link Agent#HEARTBEAT_MILLIS}
+	 */
+	public void setAgentTimeout(int agentTimeoutMillis) {
+		this.agentTimeoutMillis = agentTimeoutMillis;
+	}
+
+	public List<InetSocketAddress> getAgents() {
+		return agents;
+	}
+
+	/**
+	 * Runs the benchmark described by {@code args}, the same options as a
+	 * standalone run, on every agent and blocks until all are done.
+	 *
+	 * @return the last merged snapshot, holding the totals of all agents
+	 * @throws IOException if an agent is lost or reports a failure
+	 */
+	public IntervalSnapshot run(List<String> args, IntervalSampler.Listener listener)
+			throws IOException, InterruptedException {
+		long startAtMillis = System.currentTimeMillis() + startDelayMillis;
+		List<Socket> sockets = new ArrayList<>();
+		List<BlockingQueue<Object>> queues = new ArrayList<>();
+		try {
+			for (InetSocketAddress agent : agents) {
+				Socket socket = new Socket();
+				sockets.add(socket);
+				socket.connect(new InetSocketAddress(agent.getHostString(), agent.getPort()), agentTimeoutMillis);
+				socket.setSoTimeout(agentTimeoutMillis);
+				Writer out = new OutputStreamWriter(socket.getOutputStream(), UTF_8);
+				out.write(RUN + "\t" + startAtMillis + "\t" + args.size() + "\n");
+				for (String arg : args) {
+					out.write(arg.replaceAll("[\r\n]", " ") + "\n");
+				}
+				out.flush();
+			}
+			for (int i = 0; i < agents.size(); i++) {
+				BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+				queues.add(queue);
+				Socket socket = sockets.get(i);
+				String name = agents.get(i).getHostString() + ":" + agents.get(i).getPort();
+				Thread reader = new Thread(() -> read(name, socket, queue), "coordinator-" + name);
+				reader.setDaemon(true);
+				reader.start();
+			}
+			return merge(queues, listener);
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+	}
+
+	private IntervalSnapshot merge(List<BlockingQueue<Object>> queues, IntervalSampler.Listener listener)
+			throws IOException, InterruptedException {
+		Histogram histogram = newHistogram();
+		Histogram correctedHistogram = newHistogram();
+		Histogram warmupHistogram = newHistogram();
+		Map<String, Histogram> metrics = new TreeMap<>();
+		AgentInterval[] lastIntervals = new AgentInterval[queues.size()];
+		boolean[] done = new boolean[queues.size()];
+		IntervalSnapshot last = null;
+		while (true) {
+			List<AgentInterval> intervals = new ArrayList<>();
+			for (int i = 0; i < queues.size(); i++) {
+				if (done[i]) {
+					continue;
+				}
+				Object received = queues.get(i).take();
+				if (received instanceof IOException) {
+					throw (IOException) received;
+				} else if (received == DONE) {
+					done[i] = true;
+				} else {
+					lastIntervals[i] = (AgentInterval) received;
+					intervals.add(lastIntervals[i]);
+				}
+			}
+			if (intervals.isEmpty()) {
+				return last;
+			}
+
+			Histogram intervalHistogram = newHistogram();
+			Histogram correctedIntervalHistogram = newHistogram();
+			Histogram warmupIntervalHistogram = newHistogram();
+			Map<String, Histogram> intervalMetrics = new TreeMap<>();
+			List<Object> events = new ArrayList<>();
+			List<JvmMonitor.Sample> jvmSamples = new ArrayList<>();
+			long elapsedNanos = 0;
+			long intervalNanos = 0;
+			long errors = 0;
+			int activeThreads = 0;
+			boolean warmingUp = false;
+			for (AgentInterval interval : intervals) {
+				intervalHistogram.add(interval.histogram);
+				correctedIntervalHistogram.add(interval.correctedHistogram);
+				warmupIntervalHistogram.add(interval.warmupHistogram);
+				interval.metrics.forEach((metric, h) -> intervalMetrics.computeIfAbsent(metric, m -> newHistogram())
+						.add(h));
+				events.addAll(interval.events);
+				if (interval.jvmSample != null) {
+					jvmSamples.add(interval.jvmSample);
+				}
+				elapsedNanos = Math.max(elapsedNanos, interval.elapsedNanos);
+				intervalNanos += interval.intervalNanos;
+				errors += interval.errors;
+				activeThreads += interval.activeThreads;
+				warmingUp |= interval.warmingUp;
+			}
+			histogram.add(intervalHistogram);
+			correctedHistogram.add(correctedIntervalHistogram);
+			warmupHistogram.add(warmupIntervalHistogram);
+			intervalMetrics.forEach((metric, h) -> metrics.computeIfAbsent(metric, m -> newHistogram()).add(h));
+
+			long totalErrors = 0;
+			long measuredNanos = 0;
+			Map<String, Long> counters = new TreeMap<>();
+			for (AgentInterval interval : lastIntervals) {
+				if (interval != null) {
+					totalErrors += interval.totalErrors;
+					measuredNanos = Math.max(measuredNanos, interval.measuredNanos);
+					interval.counters.forEach((counter, value) -> counters.merge(counter, value, Long::sum));
+				}
+			}
+			Map<String, Histogram> metricTotals = new TreeMap<>();
+			metrics.forEach((metric, h) -> metricTotals.put(metric, h.copy()));
+			last = new IntervalSnapshot(elapsedNanos, intervalNanos / intervals.size(), intervalHistogram,
+					histogram.copy(), correctedIntervalHistogram, correctedHistogram.copy(), intervalMetrics,
+					metricTotals, counters, events, errors, totalErrors, activeThreads, warmingUp,
+					warmupIntervalHistogram, warmupHistogram.copy(), measuredNanos, mergeJvm(jvmSamples));
+			listener.onInterval(last);
+		}
+	}
+
+	private void read(String name, Socket socket, BlockingQueue<Object> queue) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+			AgentInterval interval = null;
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				switch (fields[0]) {
+				case INTERVAL:
+					interval = new AgentInterval(fields);
+					break;
+				case JVM:
+					interval.jvmSample = new JvmMonitor.Sample(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+							Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]),
+							Long.parseLong(fields[6]), decode(fields[8]), Long.parseLong(fields[7]));
+					break;
+				case METRIC:
+					interval.metrics.put(fields[1], decode(fields[2]));
+					break;
+				case COUNTER:
+					interval.counters.put(fields[1], Long.parseLong(fields[2]));
+					break;
+				case EVENT:
+					interval.events.add("[" + name + "] " + fields[1]);
+					break;
+				case END_OF_INTERVAL:
+					queue.add(interval);
+					interval = null;
+					break;
+				case HEARTBEAT:
+					break;
+				case DONE:
+					queue.add(DONE);
+					return;
+				case FAILED:
+					queue.add(new IOException("Agent " + name + " failed: " + fields[1]));
+					return;
+				default:
+					throw new IOException("Unexpected record from agent " + name + ": " + fields[0]);
+				}
+			}
+			queue.add(new IOException("Agent " + name + " closed the connection"));
+		} catch (SocketTimeoutException e) {
+			queue.add(new IOException("Agent " + name + " lost: silent for " + agentTimeoutMillis + "ms", e));
+		} catch (IOException | DataFormatException | RuntimeException e) {
+			queue.add(new IOException("Agent " + name + " lost: " + e, e));
+		}
+	}
+
+	private static JvmMonitor.Sample mergeJvm(List<JvmMonitor.Sample> samples) {
+		if (samples.isEmpty()) {
+			return null;
+		}
+		long intervalNanos = 0;
+		long gcCount = 0;
+		long gcNanos = 0;
+		long gcPauseNanos = 0;
+		long workerCpuNanos = 0;
+		long workerAllocatedBytes = 0;
+		Histogram hiccups = newHistogram();
+		for (JvmMonitor.Sample sample : samples) {
+			intervalNanos = Math.max(intervalNanos, sample.getIntervalNanos());
+			gcCount += sample.getGcCount();
+			gcNanos += sample.getGcNanos();
+			gcPauseNanos = Math.max(gcPauseNanos, sample.getGcPauseNanos());
+			workerCpuNanos += sample.getWorkerCpuNanos();
+			workerAllocatedBytes += sample.getWorkerAllocatedBytes();
+			hiccups.add(sample.getHiccupHistogram());
+		}
+		return new JvmMonitor.Sample(intervalNanos, gcCount, gcNanos, gcPauseNanos, workerCpuNanos,
+				workerAllocatedBytes, hiccups, samples.get(0).getStallThreshold());
+	}
+
+	private static Histogram newHistogram() {
+		return new Histogram(LatencyRecorder.DEFAULT_SIGNIFICANT_DIGITS);
+	}
+
+	static String encode(Histogram histogram) {
+		ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+		int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+		return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+	}
+
+	static Histogram decode(String encoded) throws DataFormatException {
+		return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(encoded)), 0);
+	}
+
+	private static class AgentInterval {
+		private final long elapsedNanos;
+		private final long intervalNanos;
+		private final long errors;
+		private final long totalErrors;
+		private final int activeThreads;
+		private final boolean warmingUp;
+		private final long measuredNanos;
+		private final Histogram histogram;
+		private final Histogram correctedHistogram;
+		private final Histogram warmupHistogram;
+		private final Map<String, Histogram> metrics = new HashMap<>();
+		private final Map<String, Long> counters = new HashMap<>();
+		private final List<Object> events = new ArrayList<>();
+		private JvmMonitor.Sample jvmSample;
+
+		private AgentInterval(String[] fields) throws DataFormatException {
+			this.elapsedNanos = Long.parseLong(fields[1]);
+			this.intervalNanos = Long.parseLong(fields[2]);
+			this.errors = Long.parseLong(fields[3]);
+			this.totalErrors = Long.parseLong(fields[4]);
+			this.activeThreads = Integer.parseInt(fields[5]);
+			this.warmingUp = "1".equals(fields[6]);
+			this.measuredNanos = Long.parseLong(fields[7]);
+			this.histogram = decode(fields[8]);
+			this.correctedHistogram = decode(fields[9]);
+			this.warmupHistogram = decode(fields[10]);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import org.HdrHistogram.Histogram;
+
+import com.github.eclipseace.jtoolset.load_harness.JvmMonitor;
+
+/**
+ * Writes one CSV row per interval, latencies in milliseconds.
+ */
+public class CsvIntervalWriter implements IntervalSampler.Listener, Closeable {
+	private static final String HEADER = "timestamp,elapsed_s,interval_s,phase,ops_per_s,errors,active_threads,"
+			+ "mean_ms,p50_ms,p90_ms,p99_ms,p99_9_ms,max_ms,corrected_p99_ms,corrected_max_ms,warmup_ops_per_s,"
+			+ "warmup_p50_ms,warmup_p99_ms,gc_count,gc_ms,hiccup_p99_ms,hiccup_max_ms,client_cpu,client_alloc_mb_s,"
+			+ "client_stall,server_ops_per_s,server_cpu,server_used_memory_mb,server_clients,server_keys,"
+			+ "server_slowlog,server_latency_event_ms";
+
+	private final Writer out;
+
+	public CsvIntervalWriter(Writer out) throws IOException {
+		this.out = new BufferedWriter(out);
+		this.out.write(HEADER);
+		this.out.write('\n');
+	}
+
+	@Override
+	public void onInterval(IntervalSnapshot snapshot) throws IOException {
+		Histogram h = snapshot.getIntervalHistogram();
+		Histogram ch = snapshot.getCorrectedIntervalHistogram();
+		Histogram wh = snapshot.getWarmupIntervalHistogram();
+		out.write(String.format(Locale.ROOT,
+				"%d,%.3f,%.3f,%s,%.1f,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.1f,%.3f,%.3f",
+				snapshot.getTimestamp(), snapshot.getElapsedNanos() / 1e9, snapshot.getIntervalNanos() / 1e9,
+				snapshot.isWarmingUp() ? "warmup" : "measure", snapshot.getThroughput(), snapshot.getErrors(),
+				snapshot.getActiveThreads(), h.getMean() / 1e6,
+				h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(90) / 1e6,
+				h.getValueAtPercentile(99) / 1e6, h.getValueAtPercentile(99.9) / 1e6, h.getMaxValue() / 1e6,
+				ch.getValueAtPercentile(99) / 1e6, ch.getMaxValue() / 1e6, snapshot.getWarmupThroughput(),
+				wh.getValueAtPercentile(50) / 1e6, wh.getValueAtPercentile(99) / 1e6));
+		JvmMonitor.Sample jvm = snapshot.getJvmSample();
+		if (jvm != null) {
+			out.write(String.format(Locale.ROOT, ",%d,%.3f,%.3f,%.3f,%.3f,%.3f,%d", jvm.getGcCount(),
+					jvm.getGcNanos() / 1e6, jvm.getHiccupHistogram().getValueAtPercentile(99) / 1e6,
+					jvm.getHiccupHistogram().getMaxValue() / 1e6, jvm.getWorkerCpuLoad(),
+					jvm.getWorkerAllocationRate() / 1e6, snapshot.isClientStalled() ? 1 : 0));
+		} else {
+			out.write(",,,,,,,");
+		}
+		ServerMonitor.Sample server = snapshot.getServerSample();
+		if (server != null && server.getError() == null) {
+			out.write(String.format(Locale.ROOT, ",%d,%.3f,%.3f,%d,%d,%d,%d\n", server.getOpsPerSecond(),
+					server.getCpuLoad(), server.getUsedMemory() / 1e6, server.getConnectedClients(), server.getKeys(),
+					server.getSlowlog().size(), server.getLatencyEvents().stream()
+							.mapToLong(ServerMonitor.LatencyEvent::getLatestMillis).max().orElse(0)));
+		} else {
+			out.write(",,,,,,,\n");
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,85 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol.Command;
+
+/**
+ * Runs a Lua script by SHA, loaded once when the routine is created. The
+ * script gets a value key and its version key as {@code KEYS[1]} and
+ * {@code KEYS[2]}, and the payload as {@code ARGV[1]}; by default it stores
+ * the payload and bumps the version.
+ */
+public class EVALSHARoutine extends AbstractSharedJedisRoutine implements JedisPipelinable, RespCommandFactory {
+	public static final String DEFAULT_SCRIPT = "redis.call('SET', KEYS[1], ARGV[1])\n"
+			+ "return redis.call('INCR', KEYS[2])\n";
+
+	private static final byte[] KEY_PREFIX = "presstest-script:".getBytes(UTF_8);
+	private static final byte[] VERSION_KEY_PREFIX = "presstest-script-version:".getBytes(UTF_8);
+	private static final byte[] KEY_COUNT = "2".getBytes(UTF_8);
+
+	private final PayloadGenerator payloads;
+	private final byte[] sha;
+	private final ThreadLocal<byte[][]> commandHolder = ThreadLocal
+			.withInitial(() -> new byte[][] { Command.EVALSHA.getRaw(), null, KEY_COUNT, null, null, null });
+	private final byte[][] keys;
+	private final byte[][] versionKeys;
+
+	public EVALSHARoutine(URI jedisUri, PayloadGenerator payloads, int keyCount) {
+		this(jedisUri, payloads, keyCount, DEFAULT_SCRIPT);
+	}
+
+	public EVALSHARoutine(URI jedisUri, PayloadGenerator payloads, int keyCount, String script) {
+		super(jedisUri);
+
+		this.payloads = payloads;
+		try (Jedis jedis = new Jedis(jedisUri)) {
+			this.sha = jedis.scriptLoad(script.getBytes(UTF_8));
+		}
+
+		keys = new byte[keyCount][];
+		versionKeys = new byte[keyCount][];
+		for (int i = 0; i < keyCount; i++) {
+			byte[] index = String.format("%011d", i).getBytes(UTF_8);
+			keys[i] = new byte[KEY_PREFIX.length + index.length];
+			System.arraycopy(KEY_PREFIX, 0, keys[i], 0, KEY_PREFIX.length);
+			System.arraycopy(index, 0, keys[i], KEY_PREFIX.length, index.length);
+			versionKeys[i] = new byte[VERSION_KEY_PREFIX.length + index.length];
+			System.arraycopy(VERSION_KEY_PREFIX, 0, versionKeys[i], 0, VERSION_KEY_PREFIX.length);
+			System.arraycopy(index, 0, versionKeys[i], VERSION_KEY_PREFIX.length, index.length);
+		}
+	}
+
+	public String getSha() {
+		return new String(sha, UTF_8);
+	}
+
+	@Override
+	public int getKeySpace() {
+		return keys.length;
+	}
+
+	@Override
+	protected void execute(Jedis jedis, int keyIndex) {
+		jedis.evalsha(sha, 2, keys[keyIndex % keys.length], versionKeys[keyIndex % keys.length], payloads.next());
+	}
+
+	@Override
+	public void execute(Pipeline pipeline, int keyIndex) {
+		pipeline.evalsha(sha, 2, keys[keyIndex % keys.length], versionKeys[keyIndex % keys.length], payloads.next());
+	}
+
+	@Override
+	public byte[][] command(int keyIndex) {
+		byte[][] command = commandHolder.get();
+		command[1] = sha;
+		command[3] = keys[keyIndex % keys.length];
+		command[4] = versionKeys[keyIndex % keys.length];
+		command[5] = payloads.next();
+		return command;
+	}
+}
@@ -4,43 +4,71 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.net.URI;
 
-import com.github.eclipseace.jtoolset.redis_benchmark.MultiThreadTest.RoutineContext;
-
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol.Command;
 
-public class HMGETRoutine extends AbstractSharedJedisRoutine {
-	private static final byte[] KEY = "presstest-hash".getBytes(UTF_8);
-	private static final byte[] CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
-			.getBytes(UTF_8);
+public class HMGETRoutine extends AbstractSharedJedisRoutine implements JedisPipelinable, RespCommandFactory {
+	private static final String KEY = "presstest-hash";
 
-	private final byte[] payload;
+	private final PayloadGenerator payloads;
+	private final byte[][] keys;
 	private final byte[][] hashKeys;
+	private final byte[][][] commands;
 
 	public HMGETRoutine(URI jedisUri, int payloadSize, int keyCount) {
-		super(jedisUri);
+		this(jedisUri, payloadSize, keyCount, false);
+	}
+
+	public HMGETRoutine(URI jedisUri, int payloadSize, int keyCount, boolean cluster) {
+		this(jedisUri, new PayloadGenerator(payloadSize), keyCount, cluster);
+	}
+
+	public HMGETRoutine(URI jedisUri, PayloadGenerator payloads, int keyCount, boolean cluster) {
+		super(jedisUri, cluster);
 
-		this.payload = new byte[payloadSize];
-		for (int i = 0; i < payloadSize; i++) {
-			this.payload[i] = CHARS[(int) (Math.random() * CHARS.length)];
+		this.payloads = payloads;
+
+		keys = new byte[getKeyGroups()][];
+		for (int g = 0; g < keys.length; g++) {
+			keys[g] = (KEY + getKeyTag(g)).getBytes(UTF_8);
 		}
 
 		hashKeys = new byte[keyCount][];
 		for (int i = 0; i < keyCount; i++) {
 			hashKeys[i] = String.format("%011d", i).getBytes(UTF_8);
 		}
-		
-		try (Jedis jedis = new Jedis(jedisUri)) {
-			for (int i = 0; i < keyCount; i++) {
-				jedis.hset(KEY, hashKeys[i % hashKeys.length], payload);
-			}
+
+		seed(keys.length * keyCount, i -> new byte[][] { Command.HSET.getRaw(), keys[i / keyCount],
+				hashKeys[i % keyCount], payloads.get(i) },
+				i -> new byte[][] { Command.HEXISTS.getRaw(), keys[i / keyCount], hashKeys[i % keyCount] });
+
+		commands = new byte[keys.length][][];
+		for (int g = 0; g < keys.length; g++) {
+			commands[g] = new byte[keyCount + 2][];
+			commands[g][0] = Command.HMGET.getRaw();
+			commands[g][1] = keys[g];
+			System.arraycopy(hashKeys, 0, commands[g], 2, keyCount);
 		}
 	}
 
 	@Override
-	public void execute(RoutineContext context) {
-		Jedis jedis = getJedis();
-		context.run(() -> {
-			jedis.hmget(KEY, hashKeys);
-		});
+	public int getKeySpace() {
+		return keys.length;
+	}
+
+	@Override
+	protected void execute(Jedis jedis, int keyIndex) {
+		jedis.hmget(keys[keyIndex % keys.length], hashKeys);
+	}
+
+	@Override
+	public void execute(Pipeline pipeline, int keyIndex) {
+		pipeline.hmget(keys[keyIndex % keys.length], hashKeys);
+	}
+
+	@Override
+	public byte[][] command(int keyIndex) {
+		return commands[keyIndex % commands.length];
 	}
 }
\ No newline at end of file
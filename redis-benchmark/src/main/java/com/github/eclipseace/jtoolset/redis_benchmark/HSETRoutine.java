@@ -4,24 +4,35 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.net.URI;
 
-import com.github.eclipseace.jtoolset.redis_benchmark.MultiThreadTest.RoutineContext;
-
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol.Command;
 
-public class HSETRoutine extends AbstractSharedJedisRoutine {
-	private static final byte[] KEY = "presstest-hash".getBytes(UTF_8);
-	private static final byte[] CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
-			.getBytes(UTF_8);
+public class HSETRoutine extends AbstractSharedJedisRoutine implements JedisPipelinable, RespCommandFactory {
+	private static final String KEY = "presstest-hash";
 
-	private final byte[] payload;
+	private final PayloadGenerator payloads;
+	private final ThreadLocal<byte[][]> commandHolder = ThreadLocal
+			.withInitial(() -> new byte[][] { Command.HSET.getRaw(), null, null, null });
+	private final byte[][] keys;
 	private final byte[][] hashKeys;
 
 	public HSETRoutine(URI jedisUri, int payloadSize, int keyCount) {
-		super(jedisUri);
+		this(jedisUri, payloadSize, keyCount, false);
+	}
+
+	public HSETRoutine(URI jedisUri, int payloadSize, int keyCount, boolean cluster) {
+		this(jedisUri, new PayloadGenerator(payloadSize), keyCount, cluster);
+	}
 
-		this.payload = new byte[payloadSize];
-		for (int i = 0; i < payloadSize; i++) {
-			this.payload[i] = CHARS[(int) (Math.random() * CHARS.length)];
+	public HSETRoutine(URI jedisUri, PayloadGenerator payloads, int keyCount, boolean cluster) {
+		super(jedisUri, cluster);
+
+		this.payloads = payloads;
+
+		keys = new byte[getKeyGroups()][];
+		for (int g = 0; g < keys.length; g++) {
+			keys[g] = (KEY + getKeyTag(g)).getBytes(UTF_8);
 		}
 
 		hashKeys = new byte[keyCount][];
@@ -31,11 +42,28 @@ public class HSETRoutine extends AbstractSharedJedisRoutine {
 	}
 
 	@Override
-	public void execute(RoutineContext context) {
-		Jedis jedis = getJedis();
-		byte[] hashKey = hashKeys[context.getLoopIndex() % hashKeys.length];
-		context.run(() -> {
-			jedis.hset(KEY, hashKey, payload);
-		});
+	public int getKeySpace() {
+		return keys.length * hashKeys.length;
+	}
+
+	@Override
+	protected void execute(Jedis jedis, int keyIndex) {
+		jedis.hset(keys[keyIndex / hashKeys.length % keys.length], hashKeys[keyIndex % hashKeys.length],
+				payloads.next());
+	}
+
+	@Override
+	public void execute(Pipeline pipeline, int keyIndex) {
+		pipeline.hset(keys[keyIndex / hashKeys.length % keys.length], hashKeys[keyIndex % hashKeys.length],
+				payloads.next());
+	}
+
+	@Override
+	public byte[][] command(int keyIndex) {
+		byte[][] command = commandHolder.get();
+		command[1] = keys[keyIndex / hashKeys.length % keys.length];
+		command[2] = hashKeys[keyIndex % hashKeys.length];
+		command[3] = payloads.next();
+		return command;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+/**
+ * Writes every interval histogram to an HdrHistogram log, readable by
+ * HistogramLogProcessor and HdrHistogram plotting tools. The main histogram is
+ * untagged; the corrected and warmup histograms, client hiccups and named
+ * metrics are tagged with their name. Values are in nanoseconds.
+ */
+public class HdrLogIntervalWriter implements IntervalSampler.Listener, Closeable {
+	public static final String CORRECTED_TAG = "corrected";
+	public static final String WARMUP_TAG = "warmup";
+	public static final String HICCUP_TAG = "hiccup";
+
+	private final PrintStream out;
+	private final HistogramLogWriter writer;
+	private boolean started;
+
+	public HdrLogIntervalWriter(PrintStream out) {
+		this.out = out;
+		this.writer = new HistogramLogWriter(out);
+	}
+
+	@Override
+	public void onInterval(IntervalSnapshot snapshot) {
+		if (!started) {
+			long startTime = snapshot.getIntervalHistogram().getStartTimeStamp();
+			writer.outputLogFormatVersion();
+			writer.outputStartTime(startTime);
+			writer.setBaseTime(startTime);
+			writer.outputLegend();
+			started = true;
+		}
+		writer.outputIntervalHistogram(snapshot.getIntervalHistogram());
+		if (snapshot.getCorrectedIntervalHistogram().getTotalCount() > 0) {
+			writeTagged(CORRECTED_TAG, snapshot.getCorrectedIntervalHistogram());
+		}
+		if (snapshot.getWarmupIntervalHistogram().getTotalCount() > 0) {
+			writeTagged(WARMUP_TAG, snapshot.getWarmupIntervalHistogram());
+		}
+		if (snapshot.getJvmSample() != null) {
+			writeTagged(HICCUP_TAG, snapshot.getJvmSample().getHiccupHistogram());
+		}
+		for (Map.Entry<String, Histogram> metric : snapshot.getIntervalMetrics().entrySet()) {
+			writeTagged(metric.getKey(), metric.getValue());
+		}
+		out.flush();
+	}
+
+	private void writeTagged(String tag, Histogram histogram) {
+		Histogram tagged = histogram.copy();
+		tagged.setStartTimeStamp(histogram.getStartTimeStamp());
+		tagged.setEndTimeStamp(histogram.getEndTimeStamp());
+		tagged.setTag(tag.replaceAll("[\\s,]", "_"));
+		writer.outputIntervalHistogram(tagged);
+	}
+
+	@Override
+	public void close() {
+		out.close();
+	}
+}
@@ -0,0 +1,187 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+/**
+ * Samples a {@link MultiThreadTest} at a fixed interval on its own thread and
+ * hands every {@link IntervalSnapshot} to the listeners, so reporting and
+ * exporting never run on worker threads. It must be the only caller of
+ * {@link MultiThreadTest#compute(java.util.function.Function)}, as every
+ * compute starts a new interval.
+ */
+public class IntervalSampler implements Closeable {
+	private final MultiThreadTest mtt;
+	private final long intervalMillis;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final Thread thread;
+	private long startNanos;
+	private long previousTotalErrors;
+	private IntervalSnapshot last;
+	private ServerMonitor serverMonitor;
+	private ExecutorService serverPoller;
+	private Future<ServerMonitor.Sample> pendingServerSample;
+	private long serverTimeoutMillis;
+
+	public IntervalSampler(MultiThreadTest mtt, long intervalMillis) {
+		this.mtt = mtt;
+		this.intervalMillis = intervalMillis;
+		this.serverTimeoutMillis = intervalMillis / 4;
+		this.thread = new Thread(this::run, "interval-sampler");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Polls the server at every interval, just before sampling the clients.
+	 * Polls run on a thread of their own, so a slow server does not stretch
+	 * the intervals.
+	 */
+	public void setServerMonitor(ServerMonitor serverMonitor) {
+		this.serverMonitor = serverMonitor;
+		if (serverMonitor != null && serverPoller == null) {
+			serverPoller = Executors.newSingleThreadExecutor(r -> {
+				Thread poller = new Thread(r, "server-monitor");
+				poller.setDaemon(true);
+				return poller;
+			});
+		}
+	}
+
+	public long getServerTimeout() {
+		return serverTimeoutMillis;
+	}
+
+	/**
+	 * @param serverTimeoutMillis how long an interval waits for its server
+	 *                            poll, default a quarter of the interval; a
+	 *                            poll still running is reported by the next
+	 *                            interval instead
+	 */
+	public void setServerTimeout(long serverTimeoutMillis) {
+		this.serverTimeoutMillis = serverTimeoutMillis;
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void start() {
+		startNanos = System.nanoTime();
+		mtt.compute(cc -> null);
+		if (serverMonitor != null) {
+			serverMonitor.sample();
+		}
+		thread.start();
+	}
+
+	/**
+	 * @return the most recent snapshot, null before the first interval
+	 */
+	public synchronized IntervalSnapshot getLast() {
+		return last;
+	}
+
+	/**
+	 * Stops sampling, takes a last snapshot covering the time since the
+	 * previous one and closes the listeners that are {@link Closeable}.
+	 *
+	 * @throws IOException if a listener fails on the last snapshot, which no
+	 *                     later interval can report
+	 */
+	@Override
+	public void close() throws IOException {
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Exception failure = sample();
+		if (serverPoller != null) {
+			serverPoller.shutdownNow();
+		}
+		for (Listener listener : listeners) {
+			if (listener instanceof Closeable) {
+				((Closeable) listener).close();
+			}
+		}
+		if (failure != null) {
+			throw new IOException("Interval listener failed on the last interval", failure);
+		}
+	}
+
+	private void run() {
+		while (true) {
+			try {
+				Thread.sleep(intervalMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+			sample();
+		}
+	}
+
+	/**
+	 * @return the first listener failure, also reported as a pending event of
+	 *         the test so that the next interval shows it
+	 */
+	private synchronized Exception sample() {
+		ServerMonitor.Sample server = serverMonitor != null ? sampleServer() : null;
+		IntervalSnapshot snapshot = mtt
+				.compute(cc -> new IntervalSnapshot(cc, System.nanoTime() - startNanos, previousTotalErrors, server));
+		previousTotalErrors = snapshot.getTotalErrors();
+		last = snapshot;
+		Exception failure = null;
+		for (Listener listener : listeners) {
+			try {
+				listener.onInterval(snapshot);
+			} catch (IOException | RuntimeException e) {
+				mtt.report("Interval listener failed: " + e);
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		return failure;
+	}
+
+	private ServerMonitor.Sample sampleServer() {
+		if (pendingServerSample == null) {
+			pendingServerSample = serverPoller.submit(serverMonitor::sample);
+		}
+		try {
+			ServerMonitor.Sample sample = pendingServerSample.get(serverTimeoutMillis, TimeUnit.MILLISECONDS);
+			pendingServerSample = null;
+			return sample;
+		} catch (TimeoutException e) {
+			return failedServerSample("no reply within " + serverTimeoutMillis + "ms");
+		} catch (ExecutionException e) {
+			pendingServerSample = null;
+			return failedServerSample(e.getCause().toString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return failedServerSample(e.toString());
+		}
+	}
+
+	private static ServerMonitor.Sample failedServerSample(String error) {
+		return new ServerMonitor.Sample(Collections.emptyMap(), 0, Collections.emptyList(), Collections.emptyList(),
+				error);
+	}
+
+	@FunctionalInterface
+	public static interface Listener {
+		void onInterval(IntervalSnapshot snapshot) throws IOException;
+	}
+}
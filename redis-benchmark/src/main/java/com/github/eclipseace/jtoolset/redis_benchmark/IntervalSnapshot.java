@@ -0,0 +1,284 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.HdrHistogram.Histogram;
+
+import com.github.eclipseace.jtoolset.load_harness.JvmMonitor;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.ComputeContext;
+
+import redis.clients.jedis.util.Slowlog;
+
+/**
+ * Immutable view of one reporting interval, taken by an
+ * {@link IntervalSampler}. Interval histograms carry their start and end
+ * timestamps, in epoch millis.
+ */
+public class IntervalSnapshot {
+	private final long timestamp;
+	private final long elapsedNanos;
+	private final long intervalNanos;
+	private final Histogram intervalHistogram;
+	private final Histogram histogram;
+	private final Histogram correctedIntervalHistogram;
+	private final Histogram correctedHistogram;
+	private final Map<String, Histogram> intervalMetrics = new TreeMap<>();
+	private final Map<String, Histogram> metrics = new TreeMap<>();
+	private final Map<String, Long> counters;
+	private final List<Object> events = new ArrayList<>();
+	private final long errors;
+	private final long totalErrors;
+	private final int activeThreads;
+	private final boolean warmingUp;
+	private final Histogram warmupIntervalHistogram;
+	private final Histogram warmupHistogram;
+	private final long measuredNanos;
+	private final JvmMonitor.Sample jvmSample;
+	private final ServerMonitor.Sample serverSample;
+
+	IntervalSnapshot(ComputeContext cc, long elapsedNanos, long previousTotalErrors, ServerMonitor.Sample serverSample) {
+		this.timestamp = System.currentTimeMillis();
+		this.elapsedNanos = elapsedNanos;
+		this.intervalNanos = cc.getIntervalNanos();
+		long intervalStart = timestamp - intervalNanos / 1000000;
+		this.intervalHistogram = stamp(cc.getIntervalHistogram(), intervalStart);
+		this.histogram = cc.getHistogram();
+		this.correctedIntervalHistogram = stamp(cc.getCorrectedIntervalHistogram(), intervalStart);
+		this.correctedHistogram = cc.getCorrectedHistogram();
+		for (String metric : cc.getMetricNames()) {
+			intervalMetrics.put(metric, stamp(cc.getIntervalHistogram(metric), intervalStart));
+			metrics.put(metric, cc.getHistogram(metric));
+		}
+		this.counters = cc.getCounters();
+		cc.getPendingEvents().drainTo(events);
+		this.totalErrors = cc.getTotalErrors();
+		this.errors = totalErrors - previousTotalErrors;
+		this.activeThreads = cc.getActiveThreads();
+		this.warmingUp = cc.isWarmingUp();
+		this.warmupIntervalHistogram = stamp(cc.getWarmupIntervalHistogram(), intervalStart);
+		this.warmupHistogram = cc.getWarmupHistogram();
+		this.measuredNanos = cc.getMeasuredNanos();
+		this.jvmSample = cc.getJvmSample();
+		this.serverSample = serverSample;
+		if (serverSample != null) {
+			if (serverSample.getError() != null) {
+				events.add("Server poll failed: " + serverSample.getError());
+			}
+			for (ServerMonitor.LatencyEvent event : serverSample.getLatencyEvents()) {
+				events.add("Server latency event: " + event);
+			}
+			serverSample.getSlowlog().stream().max(Comparator.comparingLong(Slowlog::getExecutionTime))
+					.ifPresent(slowest -> events.add(String.format("Server slow log: %d new entries, slowest %d us: %s",
+							serverSample.getSlowlog().size(), slowest.getExecutionTime(),
+							String.join(" ", slowest.getArgs()))));
+		}
+		if (jvmSample != null) {
+			stamp(jvmSample.getHiccupHistogram(), intervalStart);
+			if (isStalledOutlier()) {
+				events.add(String.format("Latency outlier %.3f ms coincides with a client stall of %.3f ms"
+						+ " (%d GCs, %.3f ms GC pause, %.3f ms max hiccup)",
+						Math.max(intervalHistogram.getMaxValue(), warmupIntervalHistogram.getMaxValue()) / 1e6,
+						jvmSample.getStallNanos() / 1e6, jvmSample.getGcCount(), jvmSample.getGcPauseNanos() / 1e6,
+						jvmSample.getHiccupHistogram().getMaxValue() / 1e6));
+			}
+		}
+	}
+
+	/**
+	 * Assembles a snapshot from parts collected elsewhere, e.g. merged from
+	 * several agents by a {@link Coordinator}.
+	 */
+	IntervalSnapshot(long elapsedNanos, long intervalNanos, Histogram intervalHistogram, Histogram histogram,
+			Histogram correctedIntervalHistogram, Histogram correctedHistogram, Map<String, Histogram> intervalMetrics,
+			Map<String, Histogram> metrics, Map<String, Long> counters, List<Object> events, long errors,
+			long totalErrors, int activeThreads, boolean warmingUp, Histogram warmupIntervalHistogram,
+			Histogram warmupHistogram, long measuredNanos, JvmMonitor.Sample jvmSample) {
+		this.timestamp = System.currentTimeMillis();
+		this.elapsedNanos = elapsedNanos;
+		this.intervalNanos = intervalNanos;
+		long intervalStart = timestamp - intervalNanos / 1000000;
+		this.intervalHistogram = stamp(intervalHistogram, intervalStart);
+		this.histogram = histogram;
+		this.correctedIntervalHistogram = stamp(correctedIntervalHistogram, intervalStart);
+		this.correctedHistogram = correctedHistogram;
+		intervalMetrics.forEach((metric, h) -> this.intervalMetrics.put(metric, stamp(h, intervalStart)));
+		this.metrics.putAll(metrics);
+		this.counters = counters;
+		this.events.addAll(events);
+		this.errors = errors;
+		this.totalErrors = totalErrors;
+		this.activeThreads = activeThreads;
+		this.warmingUp = warmingUp;
+		this.warmupIntervalHistogram = stamp(warmupIntervalHistogram, intervalStart);
+		this.warmupHistogram = warmupHistogram;
+		this.measuredNanos = measuredNanos;
+		this.jvmSample = jvmSample;
+		this.serverSample = null;
+		if (jvmSample != null) {
+			stamp(jvmSample.getHiccupHistogram(), intervalStart);
+		}
+	}
+
+	private Histogram stamp(Histogram histogram, long intervalStart) {
+		histogram.setStartTimeStamp(intervalStart);
+		histogram.setEndTimeStamp(timestamp);
+		return histogram;
+	}
+
+	/**
+	 * @return end of the interval, in epoch millis
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return nanoseconds since sampling started
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public long getIntervalNanos() {
+		return intervalNanos;
+	}
+
+	/**
+	 * @return operations per second completed in the interval
+	 */
+	public double getThroughput() {
+		return throughput(intervalHistogram);
+	}
+
+	public double getThroughput(String metric) {
+		return throughput(intervalMetrics.get(metric));
+	}
+
+	private double throughput(Histogram histogram) {
+		return histogram != null && intervalNanos > 0 ? histogram.getTotalCount() * 1e9 / intervalNanos : 0;
+	}
+
+	public Histogram getIntervalHistogram() {
+		return intervalHistogram;
+	}
+
+	public Histogram getHistogram() {
+		return histogram;
+	}
+
+	public Histogram getCorrectedIntervalHistogram() {
+		return correctedIntervalHistogram;
+	}
+
+	public Histogram getCorrectedHistogram() {
+		return correctedHistogram;
+	}
+
+	/**
+	 * @return interval histogram of every named metric, sorted by name
+	 */
+	public Map<String, Histogram> getIntervalMetrics() {
+		return Collections.unmodifiableMap(intervalMetrics);
+	}
+
+	/**
+	 * @return cumulative histogram of every named metric, sorted by name
+	 */
+	public Map<String, Histogram> getMetrics() {
+		return Collections.unmodifiableMap(metrics);
+	}
+
+	public Map<String, Long> getCounters() {
+		return Collections.unmodifiableMap(counters);
+	}
+
+	/**
+	 * @return worker events and errors reported during the interval
+	 */
+	public List<Object> getEvents() {
+		return Collections.unmodifiableList(events);
+	}
+
+	/**
+	 * @return errors in the interval
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	public long getTotalErrors() {
+		return totalErrors;
+	}
+
+	public int getActiveThreads() {
+		return activeThreads;
+	}
+
+	/**
+	 * @return whether the test was still warming up at the end of the interval
+	 */
+	public boolean isWarmingUp() {
+		return warmingUp;
+	}
+
+	public Histogram getWarmupIntervalHistogram() {
+		return warmupIntervalHistogram;
+	}
+
+	public Histogram getWarmupHistogram() {
+		return warmupHistogram;
+	}
+
+	/**
+	 * @return operations per second completed during warmup in the interval
+	 */
+	public double getWarmupThroughput() {
+		return throughput(warmupIntervalHistogram);
+	}
+
+	/**
+	 * @return the client JVM during the interval, that of all agents when
+	 *         merged by a {@link Coordinator}, null when not monitored
+	 */
+	public JvmMonitor.Sample getJvmSample() {
+		return jvmSample;
+	}
+
+	/**
+	 * @return the server polled at the end of the interval, null when not
+	 *         monitored
+	 */
+	public ServerMonitor.Sample getServerSample() {
+		return serverSample;
+	}
+
+	/**
+	 * @return whether the client JVM stalled during the interval, so its
+	 *         latencies may be inflated by the load generator itself
+	 */
+	public boolean isClientStalled() {
+		return jvmSample != null && jvmSample.isStalled();
+	}
+
+	/**
+	 * @return whether the interval saw latencies at least as long as the
+	 *         threshold while the client was stalled
+	 */
+	public boolean isStalledOutlier() {
+		return isClientStalled() && Math.max(intervalHistogram.getMaxValue(),
+				warmupIntervalHistogram.getMaxValue()) >= jvmSample.getStallThreshold();
+	}
+
+	/**
+	 * @return nanoseconds since the measured window started, 0 while warming
+	 *         up
+	 */
+	public long getMeasuredNanos() {
+		return measuredNanos;
+	}
+}
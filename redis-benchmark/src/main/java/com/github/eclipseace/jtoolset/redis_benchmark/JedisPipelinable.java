@@ -0,0 +1,16 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import redis.clients.jedis.Pipeline;
+
+/**
+ * Queues the commands of an operation on a Jedis {@link Pipeline}, so an
+ * {@link AbstractSharedJedisRoutine} can send several operations per round
+ * trip. Routines whose commands need the reply of the previous one do not
+ * implement it.
+ */
+public interface JedisPipelinable {
+	/**
+	 * @param keyIndex in {@code [0, getKeySpace())}
+	 */
+	void execute(Pipeline pipeline, int keyIndex);
+}
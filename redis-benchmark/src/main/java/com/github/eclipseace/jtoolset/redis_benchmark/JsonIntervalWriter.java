@@ -0,0 +1,135 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import com.github.eclipseace.jtoolset.load_harness.JvmMonitor;
+
+import redis.clients.jedis.util.Slowlog;
+
+/**
+ * Writes one JSON object per line and interval, latencies in milliseconds.
+ * Named metrics and counters are included, so the file can be replayed into
+ * any plotting tool.
+ */
+public class JsonIntervalWriter implements IntervalSampler.Listener, Closeable {
+	private final Writer out;
+
+	public JsonIntervalWriter(Writer out) {
+		this.out = new BufferedWriter(out);
+	}
+
+	@Override
+	public void onInterval(IntervalSnapshot snapshot) throws IOException {
+		StringBuilder sb = new StringBuilder(512);
+		sb.append("{\"timestamp\":").append(snapshot.getTimestamp());
+		sb.append(String.format(Locale.ROOT, ",\"elapsed_s\":%.3f,\"interval_s\":%.3f,\"ops_per_s\":%.1f",
+				snapshot.getElapsedNanos() / 1e9, snapshot.getIntervalNanos() / 1e9, snapshot.getThroughput()));
+		sb.append(",\"phase\":\"").append(snapshot.isWarmingUp() ? "warmup" : "measure").append('"');
+		sb.append(",\"errors\":").append(snapshot.getErrors());
+		sb.append(",\"active_threads\":").append(snapshot.getActiveThreads());
+		sb.append(",\"latency\":");
+		appendLatency(sb, snapshot.getIntervalHistogram());
+		if (snapshot.getCorrectedIntervalHistogram().getTotalCount() > 0) {
+			sb.append(",\"corrected_latency\":");
+			appendLatency(sb, snapshot.getCorrectedIntervalHistogram());
+		}
+		if (snapshot.getWarmupIntervalHistogram().getTotalCount() > 0) {
+			sb.append(String.format(Locale.ROOT, ",\"warmup_ops_per_s\":%.1f,\"warmup_latency\":",
+					snapshot.getWarmupThroughput()));
+			appendLatency(sb, snapshot.getWarmupIntervalHistogram());
+		}
+		JvmMonitor.Sample jvm = snapshot.getJvmSample();
+		if (jvm != null) {
+			sb.append(String.format(Locale.ROOT,
+					",\"client\":{\"gc_count\":%d,\"gc_ms\":%.3f,\"cpu\":%.3f,\"alloc_mb_s\":%.3f,\"stall\":%b,"
+							+ "\"hiccup\":",
+					jvm.getGcCount(), jvm.getGcNanos() / 1e6, jvm.getWorkerCpuLoad(),
+					jvm.getWorkerAllocationRate() / 1e6, snapshot.isClientStalled()));
+			appendLatency(sb, jvm.getHiccupHistogram());
+			sb.append('}');
+		}
+		ServerMonitor.Sample server = snapshot.getServerSample();
+		if (server != null && server.getError() == null) {
+			sb.append(String.format(Locale.ROOT,
+					",\"server\":{\"ops_per_s\":%d,\"cpu\":%.3f,\"used_memory\":%d,\"clients\":%d,\"keys\":%d",
+					server.getOpsPerSecond(), server.getCpuLoad(), server.getUsedMemory(),
+					server.getConnectedClients(), server.getKeys()));
+			sb.append(",\"latency_events\":[");
+			String separator = "";
+			for (ServerMonitor.LatencyEvent event : server.getLatencyEvents()) {
+				sb.append(separator).append("{\"event\":");
+				appendString(sb, event.getName());
+				sb.append(",\"latest_ms\":").append(event.getLatestMillis());
+				sb.append(",\"max_ms\":").append(event.getMaxMillis()).append('}');
+				separator = ",";
+			}
+			sb.append("],\"slowlog\":[");
+			separator = "";
+			for (Slowlog entry : server.getSlowlog()) {
+				sb.append(separator).append("{\"id\":").append(entry.getId());
+				sb.append(",\"duration_us\":").append(entry.getExecutionTime()).append(",\"command\":");
+				appendString(sb, String.join(" ", entry.getArgs()));
+				sb.append('}');
+				separator = ",";
+			}
+			sb.append("]}");
+		}
+		sb.append(",\"metrics\":{");
+		String separator = "";
+		for (Map.Entry<String, Histogram> metric : snapshot.getIntervalMetrics().entrySet()) {
+			sb.append(separator);
+			appendString(sb, metric.getKey());
+			sb.append(String.format(Locale.ROOT, ":{\"ops_per_s\":%.1f,\"latency\":",
+					snapshot.getThroughput(metric.getKey())));
+			appendLatency(sb, metric.getValue());
+			sb.append('}');
+			separator = ",";
+		}
+		sb.append("},\"counters\":{");
+		separator = "";
+		for (Map.Entry<String, Long> counter : snapshot.getCounters().entrySet()) {
+			sb.append(separator);
+			appendString(sb, counter.getKey());
+			sb.append(':').append(counter.getValue());
+			separator = ",";
+		}
+		sb.append("}}\n");
+		out.write(sb.toString());
+		out.flush();
+	}
+
+	private static void appendLatency(StringBuilder sb, Histogram h) {
+		sb.append(String.format(Locale.ROOT,
+				"{\"count\":%d,\"mean_ms\":%.3f,\"p50_ms\":%.3f,\"p90_ms\":%.3f,\"p99_ms\":%.3f,\"p99_9_ms\":%.3f,\"max_ms\":%.3f}",
+				h.getTotalCount(), h.getMean() / 1e6, h.getValueAtPercentile(50) / 1e6,
+				h.getValueAtPercentile(90) / 1e6, h.getValueAtPercentile(99) / 1e6,
+				h.getValueAtPercentile(99.9) / 1e6, h.getMaxValue() / 1e6));
+	}
+
+	private static void appendString(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -4,44 +4,72 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.net.URI;
 
-import com.github.eclipseace.jtoolset.redis_benchmark.MultiThreadTest.RoutineContext;
-
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol.Command;
 
-public class MGETRoutine extends AbstractSharedJedisRoutine {
+public class MGETRoutine extends AbstractSharedJedisRoutine implements JedisPipelinable, RespCommandFactory {
 	private static final byte[] KEY_PREFIX = "presstest-value:".getBytes(UTF_8);
-	private static final byte[] CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
-			.getBytes(UTF_8);
 
-	private final byte[] payload;
-	private final byte[][] keys;
+	private final PayloadGenerator payloads;
+	private final byte[][][] keys;
+	private final byte[][][] commands;
 
 	public MGETRoutine(URI jedisUri, int payloadSize, int keyCount) {
-		super(jedisUri);
+		this(jedisUri, payloadSize, keyCount, false);
+	}
 
-		this.payload = new byte[payloadSize];
-		for (int i = 0; i < payloadSize; i++) {
-			this.payload[i] = CHARS[(int) (Math.random() * CHARS.length)];
-		}
+	public MGETRoutine(URI jedisUri, int payloadSize, int keyCount, boolean cluster) {
+		this(jedisUri, new PayloadGenerator(payloadSize), keyCount, cluster);
+	}
+
+	public MGETRoutine(URI jedisUri, PayloadGenerator payloads, int keyCount, boolean cluster) {
+		super(jedisUri, cluster);
 
-		try (Jedis jedis = new Jedis(jedisUri)) {
-			keys = new byte[keyCount][];
+		this.payloads = payloads;
+
+		keys = new byte[getKeyGroups()][keyCount][];
+		for (int g = 0; g < keys.length; g++) {
 			for (int i = 0; i < keyCount; i++) {
-				keys[i] = concatKeyBytes(KEY_PREFIX, String.format("%011d", i).getBytes(UTF_8));
-				jedis.set(keys[i], payload);
+				keys[g][i] = concatKeyBytes(KEY_PREFIX, (getKeyTag(g) + String.format("%011d", i)).getBytes(UTF_8));
 			}
 		}
+
+		seed(keys.length * keyCount, i -> new byte[][] { Command.SET.getRaw(), keys[i / keyCount][i % keyCount],
+				payloads.get(i) }, i -> new byte[][] { Command.EXISTS.getRaw(), keys[i / keyCount][i % keyCount] });
+
+		commands = new byte[keys.length][][];
+		for (int g = 0; g < keys.length; g++) {
+			commands[g] = new byte[keyCount + 1][];
+			commands[g][0] = Command.MGET.getRaw();
+			System.arraycopy(keys[g], 0, commands[g], 1, keyCount);
+		}
+	}
+
+	@Override
+	public int getKeySpace() {
+		return keys.length;
+	}
+
+	@Override
+	protected void execute(Jedis jedis, int keyIndex) {
+		jedis.mget(keys[keyIndex % keys.length]);
+	}
+
+	@Override
+	public void execute(Pipeline pipeline, int keyIndex) {
+		pipeline.mget(keys[keyIndex % keys.length]);
 	}
 
 	@Override
-	public void execute(RoutineContext context) {
-		Jedis jedis = getJedis();
-		context.run(() -> {
-			jedis.mget(keys);
-		});
+	public byte[][] command(int keyIndex) {
+		return commands[keyIndex % commands.length];
 	}
 
 	private byte[] concatKeyBytes(byte[] prefix, byte[] key) {
-		return (new String(prefix, UTF_8) + new String(key, UTF_8)).getBytes(UTF_8);
+		byte[] bytes = new byte[prefix.length + key.length];
+		System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+		System.arraycopy(key, 0, bytes, prefix.length, key.length);
+		return bytes;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+
+/**
+ * Sets consecutive keys in one {@code MULTI}/{@code EXEC} transaction per
+ * operation, to be compared with the same number of plain {@code SET}s.
+ */
+public class MULTIRoutine extends AbstractSharedJedisRoutine implements JedisPipelinable {
+	public static final int DEFAULT_COMMANDS = 3;
+
+	private static final byte[] KEY_PREFIX = "presstest-multi:".getBytes(UTF_8);
+
+	private final PayloadGenerator payloads;
+	private final int commands;
+	private final byte[][] keys;
+
+	public MULTIRoutine(URI jedisUri, PayloadGenerator payloads, int keyCount, int commands) {
+		super(jedisUri);
+
+		this.payloads = payloads;
+		this.commands = commands;
+
+		keys = new byte[keyCount][];
+		for (int i = 0; i < keyCount; i++) {
+			byte[] index = String.format("%011d", i).getBytes(UTF_8);
+			keys[i] = new byte[KEY_PREFIX.length + index.length];
+			System.arraycopy(KEY_PREFIX, 0, keys[i], 0, KEY_PREFIX.length);
+			System.arraycopy(index, 0, keys[i], KEY_PREFIX.length, index.length);
+		}
+	}
+
+	public int getCommands() {
+		return commands;
+	}
+
+	@Override
+	public int getKeySpace() {
+		return keys.length;
+	}
+
+	@Override
+	protected void execute(Jedis jedis, int keyIndex) {
+		Transaction transaction = jedis.multi();
+		for (int c = 0; c < commands; c++) {
+			transaction.set(keys[(keyIndex + c) % keys.length], payloads.next());
+		}
+		checkReplies(transaction.exec());
+	}
+
+	@Override
+	public void execute(Pipeline pipeline, int keyIndex) {
+		pipeline.multi();
+		for (int c = 0; c < commands; c++) {
+			pipeline.set(keys[(keyIndex + c) % keys.length], payloads.next());
+		}
+		pipeline.exec();
+	}
+}
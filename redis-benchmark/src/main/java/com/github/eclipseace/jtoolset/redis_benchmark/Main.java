@@ -1,116 +1,726 @@
 package com.github.eclipseace.jtoolset.redis_benchmark;
 
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.InetAddress;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.HdrHistogram.Histogram;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
-import com.google.common.collect.Lists;
+import com.github.eclipseace.jtoolset.load_harness.JvmMonitor;
+import com.github.eclipseace.jtoolset.load_harness.KeyDistribution;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.RampUp;
+import com.github.eclipseace.jtoolset.load_harness.WorkerRunner;
 
 public class Main {
-	private static int DISPLAY_WIDTH = 100;
+	private static int DISPLAY_WIDTH = 120;
+	private static double NANOS_PER_MILLI = 1000000.0;
 	
 	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && "server".equals(args[0])) {
+			server(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && "compare".equals(args[0])) {
+			System.exit(compare(Arrays.copyOfRange(args, 1, args.length)));
+		}
+		if (args.length > 0 && "agent".equals(args[0])) {
+			agent(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && "routines".equals(args[0])) {
+			routines();
+			return;
+		}
+		if (args.length > 0 && "coordinator".equals(args[0])) {
+			coordinator(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		run(Arrays.asList(args), null, 0);
+	}
+
+	/**
+	 * Options naming local files, refused when a coordinator sends them, as
+	 * they would let any host reaching an agent read or write its files. So is
+	 * a {@code file:} payload size distribution.
+	 */
+	private static final List<String> FILE_OPTIONS = Arrays.asList("workload", "script", "csv", "json", "hdr-log",
+			"curve");
+
+	/**
+	 * Runs one benchmark.
+	 *
+	 * @param remote        receives every interval in addition to the console,
+	 *                      null when running standalone, on an agent on behalf
+	 *                      of a coordinator
+	 * @param startAtMillis epoch millis to wait for before starting, 0 to start
+	 *                      right away
+	 */
+	static void run(List<String> args, IntervalSampler.Listener remote, long startAtMillis) throws Exception {
 		Options opts = new Options()
 				.addRequiredOption("u", "uri", true, "redis connection uri")
-				.addRequiredOption("y", "type", true, "test type")
+				.addOption("y", "type", true, "test type, <name>[:<value>...] with values given in the order of the "
+						+ "type's options or as <option>=<value>, e.g. mget:100 or set:keys=100000:ttl=60, "
+						+ "the routines command lists types and options")
+				.addOption("O", "option", true, "<option>=<value> of every test type declaring the option, repeatable")
+				.addOption(null, "script", true, "same as --option script=<file>")
+				.addOption(null, "consumers", true, "same as --option consumers=<threads>")
+				.addOption("w", "workload", true, "properties file defining a weighted mix of test types, replaces --type")
 				.addOption("t", "threads", true, "total threads, default 100")
 				.addOption("h", "thread-interval", true, "thread startup interval, in millis, default 50")
+				.addOption("R", "ramp-up", true, "thread startup profile, instant, linear or step:<threads>, default linear")
+				.addOption("x", "runner", true, "worker threads, platform, virtual or auto, default platform")
 				.addOption("l", "loops", true, "total loops per thread, default 10")
 				.addOption("o", "loop-interval", true, "interval per loop, in millis, default 10")
-				.addOption("p", "payload", true, "payload size, in bytes, default 1024");
-		CommandLine cl = new DefaultParser().parse(opts, args);
+				.addOption("p", "payload", true,
+						"payload size in bytes, uniform:<min>:<max>, bimodal:<small>:<large>:<fraction> or file:<sizes>, default 1024")
+				.addOption(null, "compressibility", true, "fraction of payload bytes that repeat, default 0")
+				.addOption("k", "key-distribution", true,
+						"sequential, uniform, zipfian[:theta], latest[:theta] or hotspot:<keys>:<ops>, default sequential")
+				.addOption("r", "rate", true, "target ops/s across all threads, enables open-loop mode, default 0")
+				.addOption("P", "pipeline", true, "commands pipelined per loop, default 1")
+				.addOption("m", "pool", true, "share a pool of this many connections across threads, default 0 (one per thread)")
+				.addOption("e", "engine", true, "client engine, jedis or async, default jedis")
+				.addOption("C", "cluster", false, "target is a redis cluster, keys are spread over all hash slots")
+				.addOption("c", "connections", true, "async engine connections, default same as threads")
+				.addOption("L", "event-loops", true, "async engine event-loop threads, default available processors")
+				.addOption("i", "inflight", true, "async engine in-flight requests per thread, default 1")
+				.addOption(null, "warmup-time", true, "warmup recorded apart from results, in millis, default 0")
+				.addOption(null, "warmup-ops", true, "warmup recorded apart from results, in operations, default 0")
+				.addOption(null, "steady-state", true,
+						"warm up until ops/s and p50 are stable, <intervals>:<tolerance>, e.g. 5:0.1")
+				.addOption(null, "stall-threshold", true,
+						"client GC time or hiccup per interval flagged as a client stall, in millis, default 10")
+				.addOption(null, "no-server-stats", false,
+						"do not poll INFO, LATENCY LATEST and SLOWLOG of the target (the seed node in cluster mode)")
+				.addOption(null, "preload-connections", true,
+						"connections writing the dataset of mget and hmget tests in parallel, default 8")
+				.addOption(null, "preload-batch", true, "commands pipelined per preload round trip, default 1000")
+				.addOption(null, "skip-existing", false, "preload only the keys missing from the target")
+				.addOption(null, "saturate", true, "search the highest load within the SLO, threads:<start>[:<factor>] "
+						+ "or rate:<start>[:<factor>], each step held for --step-time, factor default 2")
+				.addOption(null, "slo-p99", true, "p99 latency objective of the saturation search, in millis")
+				.addOption(null, "slo-error-rate", true, "error rate objective of the saturation search, default 0.001")
+				.addOption(null, "step-time", true, "duration of a saturation search step, in millis, default 10000")
+				.addOption(null, "max-steps", true, "saturation search steps before refining, default 10")
+				.addOption(null, "refine", true, "bisection steps around the saturation knee, default 2")
+				.addOption(null, "curve", true, "write the saturation search's latency/throughput curve to this CSV file")
+				.addOption("I", "report-interval", true, "reporting and export interval, in millis, default 500")
+				.addOption(null, "csv", true, "write one row per interval to this CSV file")
+				.addOption(null, "json", true, "write one JSON object per interval to this file")
+				.addOption(null, "hdr-log", true, "write interval histograms to this HdrHistogram log");
+		CommandLine cl = new DefaultParser().parse(opts, args.toArray(new String[0]));
+		if (remote != null) {
+			for (String option : FILE_OPTIONS) {
+				if (cl.hasOption(option)) {
+					throw new IllegalArgumentException("Agents do not accept --" + option + ", it names a local file");
+				}
+			}
+			if (cl.getOptionValue("p", "").startsWith("file:")) {
+				throw new IllegalArgumentException("Agents do not accept --payload file:, it names a local file");
+			}
+		}
 
 		URI uri = URI.create(cl.getOptionValue("u"));
 		int threads = Integer.parseInt(cl.getOptionValue("t", "100"));
 		int threadInterval = Integer.parseInt(cl.getOptionValue("h", "50"));
+		RampUp rampUp = RampUp.parse(cl.getOptionValue("R", "linear"), threadInterval);
+		WorkerRunner runner = WorkerRunner.of(cl.getOptionValue("x", "platform"));
 		int loops = Integer.parseInt(cl.getOptionValue("l", "10"));
 		int loopInterval = Integer.parseInt(cl.getOptionValue("o", "10"));
-		int size = Integer.parseInt(cl.getOptionValue("p", "1024"));
+		PayloadGenerator payloads = new PayloadGenerator(SizeDistribution.parse(cl.getOptionValue("p", "1024")),
+				Double.parseDouble(cl.getOptionValue("compressibility", "0")));
+		KeyDistribution keyDistribution = KeyDistribution.parse(cl.getOptionValue("k", "sequential"));
+		double rate = Double.parseDouble(cl.getOptionValue("r", "0"));
+		int pipeline = Integer.parseInt(cl.getOptionValue("P", "1"));
+		if (pipeline < 1) {
+			throw new IllegalArgumentException("--pipeline must be at least 1: " + pipeline);
+		}
+		int pool = Integer.parseInt(cl.getOptionValue("m", "0"));
 		String type = cl.getOptionValue("y");
+		String workloadFile = cl.getOptionValue("w");
+		if ((type == null) == (workloadFile == null)) {
+			throw new IllegalArgumentException("Exactly one of --type or --workload is required");
+		}
+		Properties workload = null;
+		if (workloadFile != null) {
+			workload = new Properties();
+			try (Reader reader = Files.newBufferedReader(Paths.get(workloadFile))) {
+				workload.load(reader);
+			}
+		}
+		String engine = cl.getOptionValue("e", "jedis");
+		boolean cluster = cl.hasOption("C");
+		if (cluster && (pipeline > 1 || pool > 0 || "async".equals(engine))) {
+			throw new IllegalArgumentException("Cluster mode does not support pipeline, pool or async engine");
+		}
+		int connections = Integer.parseInt(cl.getOptionValue("c", String.valueOf(threads)));
+		int eventLoops = Integer.parseInt(cl.getOptionValue("L",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		int inflight = Integer.parseInt(cl.getOptionValue("i", "1"));
+		long reportInterval = Long.parseLong(cl.getOptionValue("I", "500"));
+		long warmupTime = Long.parseLong(cl.getOptionValue("warmup-time", "0"));
+		long warmupOps = Long.parseLong(cl.getOptionValue("warmup-ops", "0"));
+		String steadyState = cl.getOptionValue("steady-state");
+		Map<String, String> routineOptions = new LinkedHashMap<>();
+		for (String option : cl.hasOption("O") ? cl.getOptionValues("O") : new String[0]) {
+			int eq = option.indexOf('=');
+			if (eq <= 0) {
+				throw new IllegalArgumentException("Routine option is not <option>=<value>: " + option);
+			}
+			routineOptions.put(option.substring(0, eq), option.substring(eq + 1));
+		}
+		RoutineRegistry registry = RoutineRegistry.load();
+		Set<String> unusedOptions = new HashSet<>(routineOptions.keySet());
+		for (String t : workload != null ? WorkloadRoutine.getTypes(workload) : Collections.singletonList(type)) {
+			Map<String, Object> values = remote != null ? registry.resolve(t, routineOptions) : null;
+			for (RoutineOption option : registry.get(t).getOptions()) {
+				unusedOptions.remove(option.getName());
+				if (values != null && option.getType() == RoutineOption.Type.FILE
+						&& values.get(option.getName()) != null) {
+					throw new IllegalArgumentException(
+							"Agents do not accept option " + option.getName() + " of " + t + ", it names a local file");
+				}
+			}
+		}
+		if (!unusedOptions.isEmpty()) {
+			throw new IllegalArgumentException("No test type of this run has the options " + unusedOptions);
+		}
+		for (String shortcut : Arrays.asList("script", "consumers")) {
+			if (cl.hasOption(shortcut)) {
+				routineOptions.putIfAbsent(shortcut, cl.getOptionValue(shortcut));
+			}
+		}
+		double stallThreshold = Double.parseDouble(cl.getOptionValue("stall-threshold", "10"));
 
 		System.out.println(String.join("\r\n", Arrays.asList(
-				"Target Redis     :" + uri.toString(),
+				"Target Redis     :" + uri.toString() + (cluster ? " (cluster)" : ""),
 				"Threads          :" + threads,
-				"Thread interval  :" + threadInterval,
+				"Ramp-up          :" + rampUp,
+				"Runner           :" + runner.name().toLowerCase(),
 				"Loops            :" + loops,
 				"Loops interval   :" + loopInterval,
-				"Payload size     :" + size,
-				"Test type        :" + type)));
+				"Payload size     :" + payloads,
+				"Key distribution :" + keyDistribution,
+				"Warmup           :" + (steadyState != null ? "until steady (" + steadyState + ")" : "")
+						+ (warmupTime > 0 ? " " + warmupTime + "ms" : "") + (warmupOps > 0 ? " " + warmupOps + " ops" : "")
+						+ (steadyState == null && warmupTime <= 0 && warmupOps <= 0 ? "none" : ""),
+				"Pipeline         :" + pipeline,
+				"Pool             :" + (pool > 0 ? pool + " connections" : "none (one connection per thread)"),
+				"Target rate      :" + (rate > 0 ? rate + " ops/s (open-loop, latency shown as service/corrected)" : "unlimited (closed-loop)"),
+				"Saturation       :" + (cl.hasOption("saturate")
+						? cl.getOptionValue("saturate") + " until p99 > " + cl.getOptionValue("slo-p99") + "ms or errors > "
+								+ cl.getOptionValue("slo-error-rate", "0.001") + ", "
+								+ cl.getOptionValue("step-time", "10000") + "ms per step"
+						: "off"),
+				"Test type        :" + (workload != null
+						? "workload " + workloadFile + " (" + workload.getProperty("operations") + ")"
+						: type) + (routineOptions.isEmpty() ? "" : " " + routineOptions),
+				"Engine           :" + ("async".equals(engine)
+						? engine + " (" + connections + " connections, " + eventLoops + " event loops, "
+								+ inflight + " in-flight per thread)"
+						: engine))));
 		for (int n = 0; n < DISPLAY_WIDTH; n++) {
 			System.out.print('=');
 		}
 		System.out.println();
 
-		MultiThreadTest mtt = new MultiThreadTest("test-", threads, threadInterval, loops, loopInterval);
-
-		Thread tui = new Thread(() -> {
-			while (true) {
-				mtt.compute(cc -> {
-					System.out.print('\r');
-					for (int n = 0; n < DISPLAY_WIDTH; n++) {
-						System.out.print(' ');
-					}
-					System.out.print('\r');
-
-					List<Object> events = Lists.newArrayList();
-					cc.getPendingEvents().drainTo(events);
-					if (!events.isEmpty()) {
-						for (Object event : events) {
-							if (event instanceof Throwable) {
-								System.out.println(((Throwable) event).getMessage());
-							} else {
-								System.out.println(event.toString());
-							}
-						}
-					}
-
-					DescriptiveStatistics ds = cc.getStatistics();
-					Object[][] model = {
-							{ "avg", "%.2f", ds.getSum() / ds.getN() },
-							{ "min", "%.0f", ds.getMin() },
-							{ "max", "%.0f", ds.getMax() },
-							{ "50%%", "%.1f", ds.getPercentile(50) },
-							{ "95%%", "%.1f", ds.getPercentile(95) },
-							{ "99%%", "%.1f", ds.getPercentile(99) },
-							{ "smps", "%d", ds.getN() },
-							{ "threads", "%d", cc.getActiveThreads() },
-							{ "errors", "%d", cc.getTotalErrors() },
-					};
-					System.out.print(String.format(
-							Stream.of(model).map(m -> m[0] + "=" + m[1]).collect(Collectors.joining(", ")),
-							Stream.of(model).map(m -> m[2]).collect(Collectors.toList()).toArray()));
-
-					return null;
+		if (cl.hasOption("saturate") && remote != null) {
+			throw new IllegalArgumentException("Saturation search cannot run on an agent");
+		}
+		RespClient client = "async".equals(engine) ? new RespClient(uri, connections, eventLoops) : null;
+		ClusterRouter router = cluster && client == null ? new ClusterRouter(uri) : null;
+		Preloader preloader = new Preloader(uri);
+		preloader.setConnections(Integer.parseInt(cl.getOptionValue("preload-connections", "8")));
+		preloader.setBatchSize(Integer.parseInt(cl.getOptionValue("preload-batch", "1000")));
+		preloader.setSkipExisting(cl.hasOption("skip-existing"));
+		preloader.setProgressListener(Main::printPreload, reportInterval);
+		List<AbstractSharedJedisRoutine> jedisRoutines = new ArrayList<>();
+		WorkloadRoutine.RoutineFactory factory = (t, p) -> {
+			RoutineProvider provider = registry.get(t);
+			RoutineParameters params = new RoutineParameters(uri, p, registry.resolve(t, routineOptions));
+			params.setCluster(cluster);
+			params.setThreads(threads);
+			MultiThreadTest.Routine routine = provider.create(params);
+			if (routine instanceof AbstractMessagingRoutine) {
+				keyDistribution.prepare(((AbstractMessagingRoutine) routine).getKeySpace());
+			}
+			if (!(routine instanceof AbstractSharedJedisRoutine)) {
+				if (client != null || cluster || pipeline > 1 || pool > 0) {
+					throw new IllegalArgumentException(
+							"Test type " + t + " does not support pipeline, pool, cluster or async engine");
+				}
+				return routine;
+			}
+			AbstractSharedJedisRoutine jedisRoutine = (AbstractSharedJedisRoutine) routine;
+			if (!(jedisRoutine instanceof RespCommandFactory) && (client != null || router != null)) {
+				throw new IllegalArgumentException("The async engine and cluster mode do not support test type " + t);
+			}
+			if (!(jedisRoutine instanceof JedisPipelinable) && pipeline > 1) {
+				throw new IllegalArgumentException("Test type " + t + " cannot be pipelined");
+			}
+			jedisRoutine.setPipelineSize(pipeline);
+			jedisRoutine.setPoolSize(pool);
+			jedisRoutines.add(jedisRoutine);
+			jedisRoutine.setPreloader(preloader);
+			jedisRoutine.preload();
+			keyDistribution.prepare(jedisRoutine.getKeySpace());
+			if (client != null) {
+				return new AsyncRespRoutine(client, (RespCommandFactory) jedisRoutine, inflight);
+			} else if (router != null) {
+				return new ClusterRoutine(router, (RespCommandFactory) jedisRoutine);
+			}
+			return jedisRoutine;
+		};
+		try {
+			MultiThreadTest.Routine routine = workload != null ? WorkloadRoutine.load(workload, payloads, factory)
+					: factory.create(type, payloads);
+			if (cl.hasOption("saturate")) {
+				saturate(cl, routine, threads, loopInterval, reportInterval, mtt -> {
+					mtt.setRunner(runner);
+					mtt.setKeyDistribution(keyDistribution);
+					mtt.setTargetRate(mtt.getTargetRate() / pipeline);
+					mtt.setWarmupDuration(warmupTime, TimeUnit.MILLISECONDS);
 				});
+				return;
+			}
+
+			MultiThreadTest mtt = new MultiThreadTest("test-", threads, threadInterval, loops, loopInterval);
+			mtt.setRunner(runner);
+			mtt.setRampUp(rampUp);
+			mtt.setKeyDistribution(keyDistribution);
+			mtt.setTargetRate(rate / pipeline);
+			mtt.setWarmupDuration(warmupTime, TimeUnit.MILLISECONDS);
+			mtt.setWarmupOps(warmupOps);
+			mtt.setWarmupUntilSteady(steadyState != null);
+			JvmMonitor jvmMonitor = new JvmMonitor();
+			ServerMonitor serverMonitor = null;
+			List<Closeable> writers = new ArrayList<>();
+			try {
+				jvmMonitor.setStallThreshold((long) (stallThreshold * NANOS_PER_MILLI));
+				mtt.setJvmMonitor(jvmMonitor);
 
+				IntervalSampler sampler = new IntervalSampler(mtt, reportInterval);
+				serverMonitor = cl.hasOption("no-server-stats") ? null : new ServerMonitor(uri);
+				sampler.setServerMonitor(serverMonitor);
+				if (steadyState != null) {
+					sampler.addListener(SteadyStateDetector.parse(mtt, steadyState));
+				}
+				boolean openLoop = mtt.getTargetRate() > 0;
+				sampler.addListener(snapshot -> printInterval(snapshot, openLoop));
+				if (remote != null) {
+					sampler.addListener(remote);
+				}
+				if (cl.hasOption("csv")) {
+					CsvIntervalWriter writer = new CsvIntervalWriter(
+							Files.newBufferedWriter(Paths.get(cl.getOptionValue("csv"))));
+					writers.add(writer);
+					sampler.addListener(writer);
+				}
+				if (cl.hasOption("json")) {
+					JsonIntervalWriter writer = new JsonIntervalWriter(
+							Files.newBufferedWriter(Paths.get(cl.getOptionValue("json"))));
+					writers.add(writer);
+					sampler.addListener(writer);
+				}
+				if (cl.hasOption("hdr-log")) {
+					HdrLogIntervalWriter writer = new HdrLogIntervalWriter(
+							new PrintStream(cl.getOptionValue("hdr-log"), "UTF-8"));
+					writers.add(writer);
+					sampler.addListener(writer);
+				}
+				long delay = startAtMillis - System.currentTimeMillis();
+				if (delay > 0) {
+					Thread.sleep(delay);
+				}
+				sampler.start();
 				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
-					return;
+					mtt.start(routine);
+					mtt.join();
+				} finally {
+					sampler.close();
 				}
+				System.out.println();
+				printSummary(sampler.getLast());
+				System.out.println(String.format("Client JVM       :gc=%d (%.3f ms), hiccup %s",
+						jvmMonitor.getTotalGcCount(), jvmMonitor.getTotalGcNanos() / NANOS_PER_MILLI,
+						formatLatency(jvmMonitor.getTotalHiccupHistogram())));
+			} finally {
+				for (Closeable writer : writers) {
+					writer.close();
+				}
+				jvmMonitor.close();
+				if (serverMonitor != null) {
+					serverMonitor.close();
+				}
+			}
+		} finally {
+			if (router != null) {
+				router.close();
+			}
+			jedisRoutines.forEach(AbstractSharedJedisRoutine::close);
+			if (client != null) {
+				client.close();
 			}
+		}
+	}
+
+	private static void saturate(CommandLine cl, MultiThreadTest.Routine routine, int threads, long loopInterval,
+			long reportInterval, Consumer<MultiThreadTest> configurer) throws Exception {
+		if (!cl.hasOption("slo-p99")) {
+			throw new IllegalArgumentException("--saturate needs --slo-p99");
+		}
+		SaturationSearch search = SaturationSearch.parse(cl.getOptionValue("saturate"), routine,
+				(long) (Double.parseDouble(cl.getOptionValue("slo-p99")) * NANOS_PER_MILLI));
+		search.setMaxErrorRate(Double.parseDouble(cl.getOptionValue("slo-error-rate", "0.001")));
+		search.setThreads(threads);
+		search.setLoopInterval(loopInterval);
+		search.setStepDuration(Long.parseLong(cl.getOptionValue("step-time", "10000")), TimeUnit.MILLISECONDS);
+		search.setMaxSteps(Integer.parseInt(cl.getOptionValue("max-steps", "10")));
+		search.setRefinements(Integer.parseInt(cl.getOptionValue("refine", "2")));
+		search.setConfigurer(configurer);
+		search.setIntervalListener(snapshot -> printInterval(snapshot, search.isRateMode()), reportInterval);
+		search.setStepListener(step -> {
+			clearLine();
+			System.out.println(String.format("Step             :%s -> %.0f ops/s, p99=%.3f, errors=%.3f%%, %s",
+					formatLoad(search, step), step.getThroughput(), step.getP99Nanos() / NANOS_PER_MILLI,
+					step.getErrorRate() * 100, step.isWithinSlo() ? "within SLO" : "SLO breached"));
 		});
-		tui.start();
-
-		MultiThreadTest.Routine routine;
-		if ("hset".equals(type)) {
-			routine = new HSETRoutine(uri, size, 10000);
-		} else if (type.startsWith("hmget:")) {
-			int keyCount = Integer.parseInt(type.substring("hmget:".length()));
-			routine = new HMGETRoutine(uri, size, keyCount);
-		} else if (type.startsWith("mget:")) {
-			int keyCount = Integer.parseInt(type.substring("mget:".length()));
-			routine = new MGETRoutine(uri, size, keyCount);
-		} else {
-			routine = new SETRoutine(uri, size, 10000);
-		}
-		mtt.start(routine);
+		SaturationSearch.Result result = search.run();
+
+		for (int n = 0; n < DISPLAY_WIDTH; n++) {
+			System.out.print('=');
+		}
+		System.out.println();
+		System.out.println(String.format("  %-12s %8s %12s %10s %10s %10s %9s %s", search.isRateMode() ? "rate" : "threads",
+				"threads", "ops/s", "p50_ms", "p99_ms", "p99_9_ms", "errors", "slo"));
+		for (SaturationSearch.Step step : result.getCurve()) {
+			Histogram h = step.getHistogram();
+			System.out.println(String.format("  %-12.0f %8d %12.0f %10.3f %10.3f %10.3f %8.3f%% %s", step.getLoad(),
+					step.getThreads(), step.getThroughput(), h.getValueAtPercentile(50) / NANOS_PER_MILLI,
+					h.getValueAtPercentile(99) / NANOS_PER_MILLI, h.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+					step.getErrorRate() * 100, step.isWithinSlo() ? "ok" : "breached"));
+		}
+		System.out.println("Knee             :" + (result.getKnee() != null
+				? formatLoad(search, result.getKnee()) + (result.getBreach() != null
+						? ", breached at " + formatLoad(search, result.getBreach())
+						: ", SLO never breached, raise --max-steps")
+				: "none, the first step already breached the SLO"));
+		System.out.println(String.format("Max sustainable  :%.0f ops/s", result.getMaxSustainableThroughput()));
+
+		if (cl.hasOption("curve")) {
+			try (PrintStream out = new PrintStream(cl.getOptionValue("curve"), "UTF-8")) {
+				out.println("load,threads,ops_per_s,p50_ms,p99_ms,p99_9_ms,error_rate,within_slo");
+				for (SaturationSearch.Step step : result.getCurve()) {
+					Histogram h = step.getHistogram();
+					out.println(String.format(Locale.ROOT, "%.3f,%d,%.3f,%.3f,%.3f,%.3f,%.6f,%b", step.getLoad(),
+							step.getThreads(), step.getThroughput(), h.getValueAtPercentile(50) / NANOS_PER_MILLI,
+							h.getValueAtPercentile(99) / NANOS_PER_MILLI,
+							h.getValueAtPercentile(99.9) / NANOS_PER_MILLI, step.getErrorRate(), step.isWithinSlo()));
+				}
+			}
+		}
+	}
+
+	private static String formatLoad(SaturationSearch search, SaturationSearch.Step step) {
+		return search.isRateMode() ? String.format("rate=%.0f/s", step.getLoad())
+				: String.format("threads=%d", step.getThreads());
+	}
+
+	private static void printPreload(long written, long skipped, long total, long elapsedNanos) {
+		clearLine();
+		System.out.print(String.format("Preloading       :%d/%d keys (%.1f%%), %.0f keys/s, %d skipped", written + skipped,
+				total, total > 0 ? (written + skipped) * 100.0 / total : 100,
+				Preloader.ProgressListener.rate(written, skipped, elapsedNanos), skipped));
+		if (written + skipped == total) {
+			System.out.println(String.format(" in %.3f s", elapsedNanos / 1e9));
+		}
+	}
+
+	private static void clearLine() {
+		System.out.print('\r');
+		for (int n = 0; n < DISPLAY_WIDTH; n++) {
+			System.out.print(' ');
+		}
+		System.out.print('\r');
+	}
+
+	private static void printInterval(IntervalSnapshot snapshot, boolean openLoop) {
+		clearLine();
+
+		for (Object event : snapshot.getEvents()) {
+			if (event instanceof Throwable) {
+				System.out.println(((Throwable) event).getMessage());
+			} else {
+				System.out.println(event.toString());
+			}
+		}
+
+		if (snapshot.isWarmingUp()) {
+			Histogram wh = snapshot.getWarmupIntervalHistogram();
+			System.out.print(String.format("warming up, smps=%d, ops/s=%.0f, 50%%=%.3f, 99%%=%.3f, threads=%d",
+					snapshot.getWarmupHistogram().getTotalCount(), snapshot.getWarmupThroughput(),
+					wh.getValueAtPercentile(50) / NANOS_PER_MILLI, wh.getValueAtPercentile(99) / NANOS_PER_MILLI,
+					snapshot.getActiveThreads()));
+			return;
+		}
+		Histogram h = snapshot.getHistogram();
+		Histogram ch = snapshot.getCorrectedHistogram();
+		Object[][] model = openLoop ? new Object[][] {
+				{ "avg", "%.3f/%.3f", h.getMean() / NANOS_PER_MILLI, ch.getMean() / NANOS_PER_MILLI },
+				{ "max", "%.3f/%.3f", h.getMaxValue() / NANOS_PER_MILLI, ch.getMaxValue() / NANOS_PER_MILLI },
+				{ "50%%", "%.3f/%.3f", h.getValueAtPercentile(50) / NANOS_PER_MILLI,
+						ch.getValueAtPercentile(50) / NANOS_PER_MILLI },
+				{ "99%%", "%.3f/%.3f", h.getValueAtPercentile(99) / NANOS_PER_MILLI,
+						ch.getValueAtPercentile(99) / NANOS_PER_MILLI },
+				{ "99.9%%", "%.3f/%.3f", h.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+						ch.getValueAtPercentile(99.9) / NANOS_PER_MILLI },
+				{ "smps", "%d", h.getTotalCount() },
+				{ "ops/s", "%.0f", snapshot.getThroughput() },
+				{ "threads", "%d", snapshot.getActiveThreads() },
+				{ "errors", "%d", snapshot.getTotalErrors() },
+				{ "stall", "%s", snapshot.isClientStalled() ? "yes" : "no" },
+		} : new Object[][] {
+				{ "avg", "%.3f", h.getMean() / NANOS_PER_MILLI },
+				{ "min", "%.3f", h.getMinValue() / NANOS_PER_MILLI },
+				{ "max", "%.3f", h.getMaxValue() / NANOS_PER_MILLI },
+				{ "50%%", "%.3f", h.getValueAtPercentile(50) / NANOS_PER_MILLI },
+				{ "95%%", "%.3f", h.getValueAtPercentile(95) / NANOS_PER_MILLI },
+				{ "99%%", "%.3f", h.getValueAtPercentile(99) / NANOS_PER_MILLI },
+				{ "99.9%%", "%.3f", h.getValueAtPercentile(99.9) / NANOS_PER_MILLI },
+				{ "smps", "%d", h.getTotalCount() },
+				{ "ops/s", "%.0f", snapshot.getThroughput() },
+				{ "threads", "%d", snapshot.getActiveThreads() },
+				{ "errors", "%d", snapshot.getTotalErrors() },
+				{ "stall", "%s", snapshot.isClientStalled() ? "yes" : "no" },
+		};
+		ServerMonitor.Sample server = snapshot.getServerSample();
+		model = Stream.of(
+				Stream.of(model),
+				server != null && server.getError() == null ? Stream.<Object[]> of(new Object[] {
+						"server", "%d/s,cpu=%.2f,mem=%.0fMB,clients=%d", server.getOpsPerSecond(),
+						server.getCpuLoad(), server.getUsedMemory() / 1e6, server.getConnectedClients() })
+						: Stream.<Object[]> empty(),
+				snapshot.getMetrics().entrySet().stream().map(metric -> new Object[] {
+						metric.getKey(), "%.0f/s,99%%=%.3f", snapshot.getThroughput(metric.getKey()),
+						metric.getValue().getValueAtPercentile(99) / NANOS_PER_MILLI }),
+				snapshot.getCounters().entrySet().stream().map(counter -> new Object[] {
+						counter.getKey(), "%d", counter.getValue() }))
+				.flatMap(m -> m).toArray(Object[][]::new);
+		System.out.print(String.format(
+				Stream.of(model).map(m -> m[0] + "=" + m[1]).collect(Collectors.joining(", ")),
+				Stream.of(model).flatMap(m -> Stream.of(m).skip(2)).collect(Collectors.toList()).toArray()));
+	}
+
+	private static void printSummary(IntervalSnapshot snapshot) {
+		for (int n = 0; n < DISPLAY_WIDTH; n++) {
+			System.out.print('=');
+		}
+		System.out.println();
+		Histogram h = snapshot.getHistogram();
+		if (snapshot.getWarmupHistogram().getTotalCount() > 0) {
+			System.out.println("Warmup (ms)      :" + formatLatency(snapshot.getWarmupHistogram()));
+		}
+		double seconds = snapshot.getMeasuredNanos() / 1e9;
+		System.out.println(String.format("Measured         :%.3f s", seconds));
+		System.out.println(String.format("Operations       :%d (%.0f ops/s)", h.getTotalCount(), h.getTotalCount() / seconds));
+		System.out.println("Errors           :" + snapshot.getTotalErrors());
+		System.out.println("Latency (ms)     :" + formatLatency(h));
+		if (snapshot.getCorrectedHistogram().getTotalCount() > 0) {
+			System.out.println("Corrected (ms)   :" + formatLatency(snapshot.getCorrectedHistogram()));
+		}
+		snapshot.getMetrics().forEach((metric, mh) -> System.out.println(
+				String.format("%-17s:%s", metric, formatLatency(mh))));
+		snapshot.getCounters().forEach((counter, value) -> System.out.println(
+				String.format("%-17s:%d", counter, value)));
+	}
+
+	private static String formatLatency(Histogram h) {
+		return String.format("avg=%.3f, 50%%=%.3f, 90%%=%.3f, 99%%=%.3f, 99.9%%=%.3f, max=%.3f, n=%d",
+				h.getMean() / NANOS_PER_MILLI, h.getValueAtPercentile(50) / NANOS_PER_MILLI,
+				h.getValueAtPercentile(90) / NANOS_PER_MILLI, h.getValueAtPercentile(99) / NANOS_PER_MILLI,
+				h.getValueAtPercentile(99.9) / NANOS_PER_MILLI, h.getMaxValue() / NANOS_PER_MILLI, h.getTotalCount());
+	}
+
+	/**
+	 * Runs a {@link RespServer} until the process is killed, as a target for
+	 * calibrating the harness.
+	 */
+	private static void server(String[] args) throws Exception {
+		Options opts = new Options()
+				.addOption("p", "port", true, "listening port, default 6379")
+				.addOption("L", "event-loops", true, "event-loop threads, default available processors")
+				.addOption("d", "latency", true, "latency added to every reply, in micros, default 0")
+				.addOption("j", "jitter", true, "random extra latency up to this value, in micros, default 0");
+		CommandLine cl = new DefaultParser().parse(opts, args);
+
+		int port = Integer.parseInt(cl.getOptionValue("p", "6379"));
+		int eventLoops = Integer.parseInt(cl.getOptionValue("L",
+				String.valueOf(Runtime.getRuntime().availableProcessors())));
+		long latency = Long.parseLong(cl.getOptionValue("d", "0"));
+		long jitter = Long.parseLong(cl.getOptionValue("j", "0"));
+
+		RespServer server = new RespServer(port, eventLoops);
+		server.setLatency(latency, jitter, TimeUnit.MICROSECONDS);
+		System.out.println(String.join("\r\n", Arrays.asList(
+				"Listening        :" + server.getPort(),
+				"Event loops      :" + eventLoops,
+				"Latency          :" + latency + "us + up to " + jitter + "us")));
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * Lists the test types found on the classpath and their options.
+	 */
+	private static void routines() {
+		for (RoutineProvider provider : RoutineRegistry.load().getProviders()) {
+			System.out.println(String.format("%-16s %s", provider.getName(), provider.getDescription()));
+			for (RoutineOption option : provider.getOptions()) {
+				System.out.println(String.format("  %-14s %-8s %-10s %s", option.getName(),
+						option.getType().name().toLowerCase(),
+						option.getDefaultValue() != null ? option.getDefaultValue() : "-", option.getDescription()));
+			}
+		}
+	}
+
+	/**
+	 * Serves coordinators until the process is killed, running their
+	 * benchmarks as if given on the command line.
+	 */
+	private static void agent(String[] args) throws Exception {
+		Options opts = new Options()
+				.addOption("p", "port", true, "listening port, default 7000")
+				.addOption("b", "bind", true, "listening address, default loopback; any host reaching it can "
+						+ "start benchmarks, so bind only to a trusted network");
+		CommandLine cl = new DefaultParser().parse(opts, args);
+
+		InetAddress bindAddress = cl.hasOption("b") ? InetAddress.getByName(cl.getOptionValue("b"))
+				: InetAddress.getLoopbackAddress();
+		try (Agent agent = new Agent(bindAddress, Integer.parseInt(cl.getOptionValue("p", "7000")), Main::run)) {
+			System.out.println("Agent listening  :" + agent.getAddress().getHostAddress() + ":" + agent.getPort());
+			agent.serve();
+		}
+	}
+
+	/**
+	 * Runs the benchmark given after {@code --} on every agent and reports the
+	 * merged results.
+	 */
+	private static void coordinator(String[] args) throws Exception {
+		Options opts = new Options()
+				.addRequiredOption("a", "agents", true, "comma-separated agent addresses, <host>:<port>")
+				.addOption("s", "start-delay", true, "time given to agents to prepare before the shared start, "
+						+ "in millis, default " + Coordinator.DEFAULT_START_DELAY_MILLIS)
+				.addOption(null, "agent-timeout", true, "longest silence of an agent before it is considered lost, "
+						+ "in millis, default " + Coordinator.DEFAULT_AGENT_TIMEOUT_MILLIS)
+				.addOption(null, "csv", true, "write one merged row per interval to this CSV file")
+				.addOption(null, "json", true, "write one merged JSON object per interval to this file")
+				.addOption(null, "hdr-log", true, "write merged interval histograms to this HdrHistogram log");
+		CommandLine cl = new DefaultParser().parse(opts, args, true);
+		if (cl.getArgList().isEmpty()) {
+			throw new IllegalArgumentException("Usage: coordinator -a <agents> [options] -- <benchmark options>");
+		}
+
+		Coordinator coordinator = Coordinator.parse(cl.getOptionValue("a"));
+		coordinator.setStartDelay(Long.parseLong(cl.getOptionValue("s",
+				String.valueOf(Coordinator.DEFAULT_START_DELAY_MILLIS))));
+		coordinator.setAgentTimeout(Integer.parseInt(cl.getOptionValue("agent-timeout",
+				String.valueOf(Coordinator.DEFAULT_AGENT_TIMEOUT_MILLIS))));
+		List<IntervalSampler.Listener> listeners = new ArrayList<>();
+		listeners.add(snapshot -> printInterval(snapshot, snapshot.getCorrectedHistogram().getTotalCount() > 0));
+		if (cl.hasOption("csv")) {
+			listeners.add(new CsvIntervalWriter(Files.newBufferedWriter(Paths.get(cl.getOptionValue("csv")))));
+		}
+		if (cl.hasOption("json")) {
+			listeners.add(new JsonIntervalWriter(Files.newBufferedWriter(Paths.get(cl.getOptionValue("json")))));
+		}
+		if (cl.hasOption("hdr-log")) {
+			listeners.add(new HdrLogIntervalWriter(new PrintStream(cl.getOptionValue("hdr-log"), "UTF-8")));
+		}
+		System.out.println("Agents           :" + coordinator.getAgents());
+		System.out.println("Benchmark        :" + String.join(" ", cl.getArgList()));
+		for (int n = 0; n < DISPLAY_WIDTH; n++) {
+			System.out.print('=');
+		}
+		System.out.println();
+
+		IntervalSnapshot last;
+		try {
+			last = coordinator.run(cl.getArgList(), snapshot -> {
+				for (IntervalSampler.Listener listener : listeners) {
+					listener.onInterval(snapshot);
+				}
+			});
+		} finally {
+			for (IntervalSampler.Listener listener : listeners) {
+				if (listener instanceof Closeable) {
+					((Closeable) listener).close();
+				}
+			}
+		}
+		System.out.println();
+		if (last != null) {
+			printSummary(last);
+		}
+	}
+
+	/**
+	 * Compares runs saved with {@code --csv}, the first being the baseline.
+	 *
+	 * @return 1 when any candidate regresses beyond the threshold, else 0
+	 */
+	private static int compare(String[] args) throws Exception {
+		Options opts = new Options()
+				.addOption("t", "threshold", true, "tolerated change in the wrong direction, in percent, default 5")
+				.addOption("c", "confidence", true, "confidence level of the intervals, default 0.95")
+				.addOption("m", "metrics", true, "CSV columns to compare, default ops_per_s,p50_ms,p99_ms,p99_9_ms");
+		CommandLine cl = new DefaultParser().parse(opts, args);
+		if (cl.getArgList().size() < 2) {
+			throw new IllegalArgumentException("Usage: compare [options] <baseline.csv> <candidate.csv>...");
+		}
+
+		double threshold = Double.parseDouble(cl.getOptionValue("t", "5")) / 100;
+		double confidence = Double.parseDouble(cl.getOptionValue("c", "0.95"));
+		List<String> metrics = Arrays.asList(cl.getOptionValue("m", "ops_per_s,p50_ms,p99_ms,p99_9_ms").split(","));
+		RunComparison comparison = new RunComparison(confidence, threshold);
+
+		RunResult baseline = RunResult.load(Paths.get(cl.getArgList().get(0)));
+		System.out.println("Baseline         :" + baseline.getName() + " (" + baseline.getIntervals() + " intervals)");
+		boolean regressed = false;
+		for (String file : cl.getArgList().subList(1, cl.getArgList().size())) {
+			RunResult candidate = RunResult.load(Paths.get(file));
+			System.out.println("Candidate        :" + candidate.getName() + " (" + candidate.getIntervals() + " intervals)");
+			System.out.println(String.format("  %-12s %12s %12s %9s %11s", "metric", "baseline", "candidate", "change",
+					String.format("%.0f%% CI", confidence * 100)));
+			for (RunComparison.Delta delta : comparison.compare(baseline, candidate, metrics)) {
+				System.out.println(String.format("  %-12s %12.3f %12.3f %+8.2f%% +/-%6.2f%% %s", delta.getMetric(),
+						delta.getBaseline(), delta.getCandidate(), delta.getChange() * 100,
+						delta.getBaseline() != 0 ? delta.getHalfWidth() / delta.getBaseline() * 100 : Double.NaN,
+						delta.isRegression() ? "REGRESSION" : delta.isSignificant() ? "significant" : ""));
+				regressed |= delta.isRegression();
+			}
+		}
+		return regressed ? 1 : 0;
 	}
 }
@@ -0,0 +1,117 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates payloads up front so routines never allocate one per operation.
+ * Content is cut from one buffer whose compressibility is controlled. Jedis
+ * only takes whole arrays, so the cuts are copied once into a bounded pool of
+ * shared arrays, with sizes drawn from the distribution.
+ */
+public class PayloadGenerator {
+	public static final int POOL_BYTES = 64 * 1024 * 1024;
+	public static final int MAX_POOL_SIZE = 4096;
+
+	private static final byte[] CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
+			.getBytes(UTF_8);
+	private static final int BLOCK_SIZE = 4096;
+
+	private final SizeDistribution sizes;
+	private final double compressibility;
+	private final byte[][] pool;
+
+	public PayloadGenerator(int size) {
+		this(SizeDistribution.fixed(size), 0);
+	}
+
+	/**
+	 * @param compressibility fraction of every block that repeats its own
+	 *                        random prefix, 0 for random content
+	 */
+	public PayloadGenerator(SizeDistribution sizes, double compressibility) {
+		this(sizes, compressibility, newBuffer(sizes.getMax(), compressibility), POOL_BYTES);
+	}
+
+	private PayloadGenerator(SizeDistribution sizes, double compressibility, byte[] buffer, int poolBytes) {
+		this.sizes = sizes;
+		this.compressibility = compressibility;
+		Random random = new Random(0);
+		int poolSize = sizes.getMax() == sizes.getMean() ? 1
+				: (int) Math.max(1, Math.min(MAX_POOL_SIZE, poolBytes / Math.max(1, sizes.getMean())));
+		this.pool = new byte[poolSize][];
+		for (int p = 0; p < poolSize; p++) {
+			int size = sizes.next(random);
+			pool[p] = new byte[size];
+			System.arraycopy(buffer, random.nextInt(buffer.length - size + 1), pool[p], 0, size);
+		}
+	}
+
+	/**
+	 * Makes generators for several distributions, e.g. the operations of a
+	 * workload, cut from one buffer sized to the largest payload and sharing
+	 * one {@value #POOL_BYTES} bytes budget instead of one each.
+	 */
+	public static List<PayloadGenerator> shared(List<SizeDistribution> sizes, double compressibility) {
+		int maxSize = 0;
+		for (SizeDistribution distribution : sizes) {
+			maxSize = Math.max(maxSize, distribution.getMax());
+		}
+		byte[] buffer = newBuffer(maxSize, compressibility);
+		List<PayloadGenerator> generators = new ArrayList<>();
+		for (SizeDistribution distribution : sizes) {
+			generators.add(new PayloadGenerator(distribution, compressibility, buffer, POOL_BYTES / sizes.size()));
+		}
+		return generators;
+	}
+
+	private static byte[] newBuffer(int maxSize, double compressibility) {
+		if (compressibility < 0 || compressibility >= 1) {
+			throw new IllegalArgumentException("Compressibility must be in [0, 1)");
+		}
+		Random random = new Random(0);
+		byte[] buffer = new byte[Math.max(maxSize * 2, 1024 * 1024)];
+		int unique = Math.max(1, (int) (BLOCK_SIZE * (1 - compressibility)));
+		for (int block = 0; block < buffer.length; block += BLOCK_SIZE) {
+			int end = Math.min(buffer.length, block + BLOCK_SIZE);
+			for (int i = block; i < Math.min(end, block + unique); i++) {
+				buffer[i] = CHARS[random.nextInt(CHARS.length)];
+			}
+			for (int i = block + unique; i < end; i++) {
+				buffer[i] = buffer[block + (i - block) % unique];
+			}
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return a shared payload, callers must not modify it
+	 */
+	public byte[] next() {
+		return pool.length == 1 ? pool[0] : pool[ThreadLocalRandom.current().nextInt(pool.length)];
+	}
+
+	/**
+	 * @return the payload with a fixed index, for deterministic seeding
+	 */
+	public byte[] get(int index) {
+		return pool[index % pool.length];
+	}
+
+	public SizeDistribution getSizes() {
+		return sizes;
+	}
+
+	public double getCompressibility() {
+		return compressibility;
+	}
+
+	@Override
+	public String toString() {
+		return sizes + (compressibility > 0 ? ", " + compressibility + " compressible" : "");
+	}
+}
@@ -0,0 +1,251 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Loads a dataset before a test by streaming raw RESP over several
+ * connections in parallel, like {@code redis-cli --pipe}: each connection
+ * writes a whole batch of commands before reading its replies, so a batch
+ * costs one round trip. With skipping enabled every batch is preceded by a
+ * batch of existence checks and only missing keys are written, so reloading a
+ * dataset that is already there transfers no payloads.
+ */
+public class Preloader {
+	public static final int DEFAULT_CONNECTIONS = 8;
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final long DEFAULT_REPORT_INTERVAL = 1000;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final URI uri;
+	private int connections = DEFAULT_CONNECTIONS;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private boolean skipExisting;
+	private ProgressListener listener;
+	private long reportInterval = DEFAULT_REPORT_INTERVAL;
+
+	public Preloader(URI uri) {
+		this.uri = uri;
+	}
+
+	public int getConnections() {
+		return connections;
+	}
+
+	public void setConnections(int connections) {
+		this.connections = connections;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize commands written per round trip on a connection
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public boolean isSkipExisting() {
+		return skipExisting;
+	}
+
+	public void setSkipExisting(boolean skipExisting) {
+		this.skipExisting = skipExisting;
+	}
+
+	/**
+	 * @param reportInterval millis between two progress reports
+	 */
+	public void setProgressListener(ProgressListener listener, long reportInterval) {
+		this.listener = listener;
+		this.reportInterval = reportInterval;
+	}
+
+	/**
+	 * Sends {@code count} commands and blocks until all are acknowledged.
+	 *
+	 * @param commandFactory the write of the i-th key
+	 * @param checkFactory   a command replying a positive integer if the i-th
+	 *                       key exists, e.g. {@code EXISTS}, or null if keys
+	 *                       cannot be skipped
+	 * @return commands written, not counting skipped keys
+	 * @throws JedisException if a command fails or a connection is lost
+	 */
+	public long load(int count, IntFunction<byte[][]> commandFactory, IntFunction<byte[][]> checkFactory) {
+		LongAdder written = new LongAdder();
+		LongAdder skipped = new LongAdder();
+		AtomicInteger next = new AtomicInteger();
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		IntFunction<byte[][]> check = skipExisting ? checkFactory : null;
+		List<Thread> threads = new ArrayList<>();
+		for (int c = 0; c < Math.max(1, connections); c++) {
+			Thread thread = new Thread(() -> {
+				try (Connection connection = new Connection()) {
+					int from;
+					while (failure.get() == null && (from = next.getAndAdd(batchSize)) < count) {
+						int to = (int) Math.min(count, (long) from + batchSize);
+						int sent = connection.load(from, to, commandFactory, check);
+						written.add(sent);
+						skipped.add(to - from - sent);
+					}
+				} catch (RuntimeException e) {
+					failure.compareAndSet(null, e);
+				}
+			}, "preloader-" + c);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+
+		long start = System.nanoTime();
+		try {
+			for (Thread thread : threads) {
+				while (thread.isAlive()) {
+					thread.join(reportInterval);
+					if (listener != null && thread.isAlive()) {
+						listener.onProgress(written.sum(), skipped.sum(), count, System.nanoTime() - start);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure.compareAndSet(null, new JedisException("Preload interrupted"));
+			threads.forEach(Thread::interrupt);
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		if (listener != null) {
+			listener.onProgress(written.sum(), skipped.sum(), count, System.nanoTime() - start);
+		}
+		return written.sum();
+	}
+
+	@FunctionalInterface
+	public static interface ProgressListener {
+		void onProgress(long written, long skipped, long total, long elapsedNanos);
+
+		/**
+		 * @return keys per second done, written or skipped
+		 */
+		static double rate(long written, long skipped, long elapsedNanos) {
+			return elapsedNanos > 0 ? (written + skipped) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+		}
+	}
+
+	/**
+	 * Raw socket of a connection Jedis has authenticated.
+	 */
+	private class Connection implements AutoCloseable {
+		private final Jedis jedis = new Jedis(uri);
+		private final RespWriter writer = new RespWriter(BUFFER_SIZE);
+		private final RespParser parser = new RespParser();
+		private final OutputStream out;
+		private final InputStream in;
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		private Connection() {
+			jedis.connect();
+			Socket socket = jedis.getClient().getSocket();
+			try {
+				out = socket.getOutputStream();
+				in = socket.getInputStream();
+			} catch (IOException e) {
+				jedis.close();
+				throw new JedisConnectionException(e);
+			}
+		}
+
+		/**
+		 * @return commands written, the others were skipped
+		 */
+		private int load(int from, int to, IntFunction<byte[][]> commandFactory, IntFunction<byte[][]> check) {
+			boolean[] exists = new boolean[to - from];
+			if (check != null) {
+				writer.reset();
+				for (int i = from; i < to; i++) {
+					writer.writeCommand(check.apply(i));
+				}
+				List<Object> replies = roundTrip(to - from);
+				for (int i = 0; i < exists.length; i++) {
+					exists[i] = replies.get(i) instanceof Long && (Long) replies.get(i) > 0;
+				}
+			}
+			writer.reset();
+			int sent = 0;
+			for (int i = from; i < to; i++) {
+				if (!exists[i - from]) {
+					writer.writeCommand(commandFactory.apply(i));
+					sent++;
+				}
+			}
+			if (sent > 0) {
+				roundTrip(sent);
+			}
+			return sent;
+		}
+
+		private List<Object> roundTrip(int replies) {
+			List<Object> received = new ArrayList<>(replies);
+			try {
+				out.write(writer.array(), 0, writer.size());
+				out.flush();
+				while (received.size() < replies) {
+					buffer.flip();
+					Object reply;
+					while (received.size() < replies && (reply = parser.parse(buffer)) != RespParser.INCOMPLETE) {
+						if (reply instanceof RespError) {
+							throw new JedisDataException(((RespError) reply).getMessage());
+						}
+						received.add(reply);
+					}
+					buffer.compact();
+					if (received.size() < replies) {
+						fill();
+					}
+				}
+			} catch (IOException e) {
+				throw new JedisConnectionException(e);
+			}
+			return received;
+		}
+
+		private void fill() throws IOException {
+			if (!buffer.hasRemaining()) {
+				ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				grown.put(buffer);
+				buffer = grown;
+			}
+			int n = in.read(buffer.array(), buffer.position(), buffer.remaining());
+			if (n < 0) {
+				throw new JedisConnectionException("Unexpected end of stream");
+			}
+			buffer.position(buffer.position() + n);
+		}
+
+		@Override
+		public void close() {
+			jedis.close();
+		}
+	}
+}
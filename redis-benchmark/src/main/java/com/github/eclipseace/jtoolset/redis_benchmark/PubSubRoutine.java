@@ -0,0 +1,166 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Publishes to channels from producer threads while consumer threads
+ * subscribe, consumer {@code i} to channel {@code i % channels}, so a message
+ * fans out to every subscriber of its channel. The receivers counted by
+ * {@code PUBLISH} are summed under {@value #DELIVERIES_COUNTER}, to be compared
+ * with the messages actually received.
+ */
+public class PubSubRoutine extends AbstractMessagingRoutine {
+	public static final String DELIVERIES_COUNTER = "pubsub:deliveries";
+
+	private static final byte[] CHANNEL_PREFIX = "presstest-channel:".getBytes(UTF_8);
+	private static final byte[] SUBSCRIBE = "SUBSCRIBE".getBytes(UTF_8);
+	private static final byte[] MESSAGE = "message".getBytes(UTF_8);
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final URI jedisUri;
+	private final byte[][] channels;
+
+	public PubSubRoutine(URI jedisUri, PayloadGenerator payloads, int channelCount, int subscribers) {
+		super(payloads, subscribers);
+		this.jedisUri = jedisUri;
+
+		channels = new byte[channelCount][];
+		for (int i = 0; i < channelCount; i++) {
+			byte[] index = String.format("%011d", i).getBytes(UTF_8);
+			channels[i] = new byte[CHANNEL_PREFIX.length + index.length];
+			System.arraycopy(CHANNEL_PREFIX, 0, channels[i], 0, CHANNEL_PREFIX.length);
+			System.arraycopy(index, 0, channels[i], CHANNEL_PREFIX.length, index.length);
+		}
+	}
+
+	@Override
+	public int getKeySpace() {
+		return channels.length;
+	}
+
+	@Override
+	protected Producer newProducer(int threadIndex) {
+		Jedis jedis = new Jedis(jedisUri);
+		return new Producer() {
+			@Override
+			protected void send(int keyIndex, byte[] message) {
+				getContext().getCounter(DELIVERIES_COUNTER).add(jedis.publish(channels[keyIndex], message));
+			}
+
+			@Override
+			public void close() {
+				jedis.close();
+			}
+		};
+	}
+
+	@Override
+	protected Consumer newConsumer(int threadIndex) {
+		return new Subscriber(channels[threadIndex % channels.length]);
+	}
+
+	/**
+	 * Reads pushed messages straight off the socket of a connection Jedis has
+	 * authenticated, as Jedis only offers a blocking subscribe loop.
+	 */
+	private class Subscriber extends Consumer {
+		private final Jedis jedis = new Jedis(jedisUri);
+		private final RespParser parser = new RespParser();
+		private final Socket socket;
+		private final InputStream in;
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		private Subscriber(byte[] channel) {
+			jedis.connect();
+			socket = jedis.getClient().getSocket();
+			try {
+				OutputStream out = socket.getOutputStream();
+				out.write(RespWriter.command(SUBSCRIBE, channel));
+				out.flush();
+				in = socket.getInputStream();
+				Object reply;
+				do {
+					fill();
+					buffer.flip();
+					reply = parser.parse(buffer);
+					buffer.compact();
+				} while (reply == RespParser.INCOMPLETE);
+				check(reply);
+			} catch (IOException e) {
+				jedis.close();
+				throw new JedisConnectionException(e);
+			}
+		}
+
+		@Override
+		protected int poll(long timeoutMillis) {
+			int count = 0;
+			try {
+				socket.setSoTimeout((int) timeoutMillis);
+				while (true) {
+					buffer.flip();
+					Object reply;
+					while ((reply = parser.parse(buffer)) != RespParser.INCOMPLETE) {
+						check(reply);
+						List<?> push = (List<?>) reply;
+						if (Arrays.equals(MESSAGE, (byte[]) push.get(0))) {
+							received((byte[]) push.get(2));
+							count++;
+						}
+					}
+					buffer.compact();
+					if (count > 0 && in.available() == 0) {
+						return count;
+					}
+					fill();
+				}
+			} catch (SocketTimeoutException e) {
+				return count;
+			} catch (IOException e) {
+				throw new JedisConnectionException(e);
+			}
+		}
+
+		/**
+		 * Reads what the socket has into the buffer, left in write mode.
+		 */
+		private void fill() throws IOException {
+			if (!buffer.hasRemaining()) {
+				ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				grown.put(buffer);
+				buffer = grown;
+			}
+			int n = in.read(buffer.array(), buffer.position(), buffer.remaining());
+			if (n < 0) {
+				throw new JedisConnectionException("Unexpected end of stream");
+			}
+			buffer.position(buffer.position() + n);
+		}
+
+		private void check(Object reply) {
+			if (reply instanceof RespError) {
+				throw new JedisDataException(((RespError) reply).getMessage());
+			}
+		}
+
+		@Override
+		public void close() {
+			jedis.close();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import com.github.eclipseace.jtoolset.load_harness.JvmMonitor;
+
+/**
+ * Streams every interval of an {@link Agent} to its {@link Coordinator}, one
+ * tab-separated line per record and histograms in their compressed form, so
+ * they can be merged without losing precision. Closing it marks the run as
+ * done but leaves the underlying writer open.
+ */
+public class RemoteIntervalWriter implements IntervalSampler.Listener, Closeable {
+	private final Writer out;
+
+	public RemoteIntervalWriter(Writer out) {
+		this.out = new BufferedWriter(out);
+	}
+
+	@Override
+	public synchronized void onInterval(IntervalSnapshot snapshot) throws IOException {
+		write(Coordinator.INTERVAL, snapshot.getElapsedNanos(), snapshot.getIntervalNanos(), snapshot.getErrors(),
+				snapshot.getTotalErrors(), snapshot.getActiveThreads(), snapshot.isWarmingUp() ? 1 : 0,
+				snapshot.getMeasuredNanos(), Coordinator.encode(snapshot.getIntervalHistogram()),
+				Coordinator.encode(snapshot.getCorrectedIntervalHistogram()),
+				Coordinator.encode(snapshot.getWarmupIntervalHistogram()));
+		JvmMonitor.Sample jvm = snapshot.getJvmSample();
+		if (jvm != null) {
+			write(Coordinator.JVM, jvm.getIntervalNanos(), jvm.getGcCount(), jvm.getGcNanos(), jvm.getGcPauseNanos(),
+					jvm.getWorkerCpuNanos(), jvm.getWorkerAllocatedBytes(), jvm.getStallThreshold(),
+					Coordinator.encode(jvm.getHiccupHistogram()));
+		}
+		for (Map.Entry<String, Histogram> metric : snapshot.getIntervalMetrics().entrySet()) {
+			write(Coordinator.METRIC, metric.getKey(), Coordinator.encode(metric.getValue()));
+		}
+		for (Map.Entry<String, Long> counter : snapshot.getCounters().entrySet()) {
+			write(Coordinator.COUNTER, counter.getKey(), counter.getValue());
+		}
+		for (Object event : snapshot.getEvents()) {
+			write(Coordinator.EVENT, event instanceof Throwable ? ((Throwable) event).getMessage() : event);
+		}
+		write(Coordinator.END_OF_INTERVAL);
+		out.flush();
+	}
+
+	/**
+	 * Reports a run that could not complete.
+	 */
+	public synchronized void fail(Exception e) throws IOException {
+		write(Coordinator.FAILED, e);
+		out.flush();
+	}
+
+	/**
+	 * Tells the coordinator the agent is still alive between intervals.
+	 */
+	public synchronized void heartbeat() throws IOException {
+		write(Coordinator.HEARTBEAT);
+		out.flush();
+	}
+
+	private void write(Object... fields) throws IOException {
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				out.write('\t');
+			}
+			out.write(String.valueOf(fields[i]).replaceAll("[\t\r\n]", " "));
+		}
+		out.write('\n');
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		write(Coordinator.DONE);
+		out.flush();
+	}
+}
@@ -0,0 +1,361 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking RESP client multiplexing many connections, each with any number
+ * of in-flight requests, over a few event-loop threads. Replies are delivered
+ * to callbacks on the event-loop thread owning the connection.
+ */
+public class RespClient implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final long SETUP_TIMEOUT_MILLIS = 2000;
+
+	private final EventLoop[] eventLoops;
+	private final Connection[] connections;
+	private final AtomicInteger nextConnection = new AtomicInteger();
+
+	/**
+	 * Opens the connections, authenticated and on the database of the URI.
+	 *
+	 * @throws IOException if a connection cannot be opened, or the server
+	 *                     rejects its AUTH or SELECT
+	 */
+	public RespClient(URI uri, int connectionCount, int eventLoopCount) throws IOException {
+		this.eventLoops = new EventLoop[eventLoopCount];
+		for (int i = 0; i < eventLoopCount; i++) {
+			eventLoops[i] = new EventLoop("resp-loop-" + i);
+			eventLoops[i].start();
+		}
+
+		String password = null;
+		if (uri.getUserInfo() != null) {
+			String userInfo = uri.getUserInfo();
+			password = userInfo.substring(userInfo.indexOf(':') + 1);
+		}
+		String db = uri.getPath() == null || uri.getPath().length() <= 1 ? null : uri.getPath().substring(1);
+		InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort() < 0 ? 6379 : uri.getPort());
+
+		this.connections = new Connection[connectionCount];
+		List<CompletableFuture<Object>> setup = new ArrayList<>();
+		try {
+			for (int i = 0; i < connectionCount; i++) {
+				SocketChannel channel = SocketChannel.open(address);
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				connections[i] = new Connection(channel, eventLoops[i % eventLoopCount]);
+				connections[i].eventLoop.register(connections[i]);
+				if (password != null && !password.isEmpty()) {
+					setup.add(request(connections[i], "AUTH", password));
+				}
+				if (db != null) {
+					setup.add(request(connections[i], "SELECT", db));
+				}
+			}
+			for (CompletableFuture<Object> reply : setup) {
+				awaitOk(reply);
+			}
+		} catch (IOException | RuntimeException e) {
+			close();
+			for (Connection connection : connections) {
+				if (connection != null) {
+					try {
+						connection.channel.close();
+					} catch (IOException ignored) {
+						// ignore
+					}
+				}
+			}
+			throw e;
+		}
+	}
+
+	private static CompletableFuture<Object> request(Connection connection, String command, String arg) {
+		CompletableFuture<Object> reply = new CompletableFuture<>();
+		connection.send(RespWriter.command(command.getBytes(UTF_8), arg.getBytes(UTF_8)), (r, error) -> {
+			if (error != null) {
+				reply.completeExceptionally(error);
+			} else {
+				reply.complete(r);
+			}
+		});
+		return reply;
+	}
+
+	/**
+	 * @throws IOException if the connection failed or the server replied an
+	 *                     error
+	 */
+	private static void awaitOk(CompletableFuture<Object> reply) throws IOException {
+		Object result;
+		try {
+			result = reply.get(SETUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while connecting");
+		} catch (ExecutionException e) {
+			throw new IOException("Connection setup failed", e.getCause());
+		} catch (TimeoutException e) {
+			throw new IOException("No reply to connection setup in " + SETUP_TIMEOUT_MILLIS + "ms");
+		}
+		if (result instanceof RespError) {
+			throw new IOException("Connection setup failed: " + ((RespError) result).getMessage());
+		}
+	}
+
+	/**
+	 * @return the next connection in round-robin order
+	 */
+	public Connection nextConnection() {
+		return connections[(nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length];
+	}
+
+	public int getConnectionCount() {
+		return connections.length;
+	}
+
+	@Override
+	public void close() {
+		for (EventLoop eventLoop : eventLoops) {
+			eventLoop.interrupt();
+		}
+	}
+
+	@FunctionalInterface
+	public static interface ReplyHandler {
+		/**
+		 * @param reply the decoded reply, may be a {@link RespError}
+		 * @param error set when the connection failed before a reply arrived
+		 */
+		void onReply(Object reply, Throwable error);
+	}
+
+	private static class Request {
+		private final byte[] data;
+		private final ReplyHandler handler;
+
+		private Request(byte[] data, ReplyHandler handler) {
+			this.data = data;
+			this.handler = handler;
+		}
+	}
+
+	public static class Connection {
+		private final SocketChannel channel;
+		private final EventLoop eventLoop;
+		private final Queue<Request> requests = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		// owned by the event loop
+		private final Queue<ReplyHandler> awaiting = new ArrayDeque<>();
+		private final RespParser parser = new RespParser(true);
+		private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+		private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		private Request current;
+		private int currentOffset;
+		private SelectionKey key;
+		private boolean closed;
+
+		private Connection(SocketChannel channel, EventLoop eventLoop) {
+			this.channel = channel;
+			this.eventLoop = eventLoop;
+		}
+
+		/**
+		 * Queues an encoded command, may be called from any thread.
+		 */
+		public void send(byte[] command, ReplyHandler handler) {
+			requests.add(new Request(command, handler));
+			if (scheduled.compareAndSet(false, true)) {
+				eventLoop.schedule(this);
+			}
+		}
+
+		private void flush() throws IOException {
+			while (true) {
+				while (current != null || (current = requests.poll()) != null) {
+					int n = Math.min(out.remaining(), current.data.length - currentOffset);
+					if (n == 0) {
+						break;
+					}
+					out.put(current.data, currentOffset, n);
+					currentOffset += n;
+					if (currentOffset == current.data.length) {
+						awaiting.add(current.handler);
+						current = null;
+						currentOffset = 0;
+					}
+				}
+				out.flip();
+				channel.write(out);
+				boolean drained = !out.hasRemaining();
+				out.compact();
+				if (!drained) {
+					key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+				if (current == null && requests.isEmpty()) {
+					key.interestOps(SelectionKey.OP_READ);
+					return;
+				}
+			}
+		}
+
+		private void read() throws IOException {
+			int n;
+			while ((n = channel.read(in)) > 0) {
+				in.flip();
+				Object reply;
+				while ((reply = parser.parse(in)) != RespParser.INCOMPLETE) {
+					ReplyHandler handler = awaiting.poll();
+					if (handler != null) {
+						handler.onReply(reply, null);
+					}
+				}
+				in.compact();
+				if (!in.hasRemaining()) {
+					ByteBuffer grown = ByteBuffer.allocate(in.capacity() * 2);
+					in.flip();
+					grown.put(in);
+					in = grown;
+				}
+			}
+			if (n < 0) {
+				throw new ClosedChannelException();
+			}
+		}
+
+		private void fail(Throwable error) {
+			if (!closed) {
+				closed = true;
+				try {
+					channel.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+			ReplyHandler handler;
+			while ((handler = awaiting.poll()) != null) {
+				handler.onReply(null, error);
+			}
+			if (current != null) {
+				current.handler.onReply(null, error);
+				current = null;
+			}
+			Request request;
+			while ((request = requests.poll()) != null) {
+				request.handler.onReply(null, error);
+			}
+		}
+	}
+
+	private static class EventLoop extends Thread {
+		private final Selector selector;
+		private final Queue<Connection> registrations = new ConcurrentLinkedQueue<>();
+		private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+
+		private EventLoop(String name) throws IOException {
+			super(name);
+			setDaemon(true);
+			this.selector = Selector.open();
+		}
+
+		private void register(Connection connection) {
+			registrations.add(connection);
+			selector.wakeup();
+		}
+
+		private void schedule(Connection connection) {
+			flushes.add(connection);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!isInterrupted()) {
+					selector.select();
+
+					registerPending();
+					Connection connection;
+					while ((connection = flushes.poll()) != null) {
+						connection.scheduled.set(false);
+						flush(connection);
+					}
+
+					for (SelectionKey key : selector.selectedKeys()) {
+						connection = (Connection) key.attachment();
+						try {
+							if (key.isReadable()) {
+								connection.read();
+							}
+							if (key.isValid() && key.isWritable()) {
+								connection.flush();
+							}
+						} catch (IOException | RuntimeException e) {
+							connection.fail(e);
+						}
+					}
+					selector.selectedKeys().clear();
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					((Connection) key.attachment()).fail(new ClosedChannelException());
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		private void registerPending() throws ClosedChannelException {
+			Connection connection;
+			while ((connection = registrations.poll()) != null) {
+				connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+			}
+		}
+
+		private void flush(Connection connection) {
+			if (connection.closed) {
+				connection.fail(new ClosedChannelException());
+				return;
+			}
+			try {
+				if (connection.key == null) {
+					// registered after this round's registrations were taken
+					registerPending();
+				}
+				connection.flush();
+			} catch (IOException | RuntimeException e) {
+				connection.fail(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+/**
+ * Produces the raw arguments of the command a routine sends for an operation,
+ * so engines other than Jedis can replay the same workload. Routines whose
+ * operations need a connection of their own, e.g. for a transaction, do not
+ * implement it.
+ */
+public interface RespCommandFactory {
+	/**
+	 * @return the number of distinct keys, or key groups, commands address
+	 */
+	int getKeySpace();
+
+	/**
+	 * @param keyIndex in {@code [0, getKeySpace())}
+	 * @return the command, which the next call on the same thread may reuse
+	 */
+	byte[][] command(int keyIndex);
+
+	/**
+	 * Writes the data the commands expect to find, once, before the first
+	 * command is sent.
+	 */
+	default void preload() {
+	}
+}
@@ -0,0 +1,13 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+/**
+ * An error reply ({@code -ERR ...}). Thrown and recorded often under load, so
+ * it does not capture a stack trace.
+ */
+public class RespError extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public RespError(String message) {
+		super(message, null, false, false);
+	}
+}
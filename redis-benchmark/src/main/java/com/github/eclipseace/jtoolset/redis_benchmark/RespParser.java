@@ -0,0 +1,158 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental RESP2 parser. Replies are decoded as {@link String} (simple
+ * strings), {@link RespError}, {@link Long}, {@code byte[]} (bulk strings),
+ * {@link List} (arrays) or {@code null}.
+ */
+public class RespParser {
+	public static final Object INCOMPLETE = new Object();
+	public static final Object DISCARDED = new Object();
+
+	private static final long INCOMPLETE_LONG = Long.MIN_VALUE;
+
+	private final boolean discardValues;
+
+	public RespParser() {
+		this(false);
+	}
+
+	/**
+	 * @param discardValues skip over bulk strings and arrays instead of
+	 *                      materializing them, they are returned as
+	 *                      {@link #DISCARDED}
+	 */
+	public RespParser(boolean discardValues) {
+		this.discardValues = discardValues;
+	}
+
+	/**
+	 * Parses one reply starting at the buffer's position. The position is left
+	 * untouched when the buffer does not yet hold a complete reply.
+	 *
+	 * @return the reply, or {@link #INCOMPLETE}
+	 */
+	public Object parse(ByteBuffer buf) {
+		int start = buf.position();
+		Object reply = parseValue(buf);
+		if (reply == INCOMPLETE) {
+			buf.position(start);
+		}
+		return reply;
+	}
+
+	private Object parseValue(ByteBuffer buf) {
+		if (!buf.hasRemaining()) {
+			return INCOMPLETE;
+		}
+		byte type = buf.get();
+		switch (type) {
+		case '+': {
+			String line = readLine(buf);
+			return line == null ? INCOMPLETE : line;
+		}
+		case '-': {
+			String line = readLine(buf);
+			return line == null ? INCOMPLETE : new RespError(line);
+		}
+		case ':': {
+			long value = readLong(buf);
+			return value == INCOMPLETE_LONG ? INCOMPLETE : (Object) value;
+		}
+		case '$': {
+			long length = readLong(buf);
+			if (length == INCOMPLETE_LONG) {
+				return INCOMPLETE;
+			}
+			if (length < 0) {
+				return null;
+			}
+			if (buf.remaining() < length + 2) {
+				return INCOMPLETE;
+			}
+			if (discardValues) {
+				buf.position(buf.position() + (int) length + 2);
+				return DISCARDED;
+			}
+			byte[] value = new byte[(int) length];
+			buf.get(value);
+			buf.position(buf.position() + 2);
+			return value;
+		}
+		case '*': {
+			long count = readLong(buf);
+			if (count == INCOMPLETE_LONG) {
+				return INCOMPLETE;
+			}
+			if (count < 0) {
+				return null;
+			}
+			List<Object> values = discardValues ? null : new ArrayList<>((int) count);
+			for (long i = 0; i < count; i++) {
+				Object value = parseValue(buf);
+				if (value == INCOMPLETE) {
+					return INCOMPLETE;
+				}
+				if (values != null) {
+					values.add(value);
+				}
+			}
+			return discardValues ? DISCARDED : values;
+		}
+		default:
+			throw new IllegalStateException("Unexpected RESP type byte: " + (char) type);
+		}
+	}
+
+	private String readLine(ByteBuffer buf) {
+		int end = indexOfCrlf(buf);
+		if (end < 0) {
+			return null;
+		}
+		int length = end - buf.position();
+		String line;
+		if (buf.hasArray()) {
+			line = new String(buf.array(), buf.arrayOffset() + buf.position(), length, UTF_8);
+		} else {
+			byte[] bytes = new byte[length];
+			buf.duplicate().get(bytes);
+			line = new String(bytes, UTF_8);
+		}
+		buf.position(end + 2);
+		return line;
+	}
+
+	private long readLong(ByteBuffer buf) {
+		int end = indexOfCrlf(buf);
+		if (end < 0) {
+			return INCOMPLETE_LONG;
+		}
+		long value = 0;
+		boolean negative = false;
+		for (int i = buf.position(); i < end; i++) {
+			byte b = buf.get(i);
+			if (b == '-') {
+				negative = true;
+			} else {
+				value = value * 10 + (b - '0');
+			}
+		}
+		buf.position(end + 2);
+		return negative ? -value : value;
+	}
+
+	private int indexOfCrlf(ByteBuffer buf) {
+		for (int i = buf.position(), limit = buf.limit() - 1; i < limit; i++) {
+			if (buf.get(i) == '\r' && buf.get(i + 1) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
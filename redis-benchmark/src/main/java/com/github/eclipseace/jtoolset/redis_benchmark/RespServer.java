@@ -0,0 +1,1209 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import redis.clients.jedis.HostAndPort;
+
+/**
+ * In-memory stand-in for Redis, implementing the string and hash commands the
+ * routines use. Benchmarking against it measures the harness's own overhead,
+ * and an injected latency lets tests exercise the harness without a network
+ * service. Replies are delayed on the event loops, never by blocking them.
+ * There is one database, 0, and any password is accepted. Several servers can
+ * emulate the slot layout and redirections of a Redis Cluster, see
+ * {@link #assignSlots(int, int, String, int)}.
+ * <p>
+ * {@code MULTI}/{@code EXEC} with {@code WATCH} are isolated from other writes
+ * once a client has used them. Scripts are limited to a sequence of
+ * {@code redis.call(...)} statements whose arguments are literals,
+ * {@code KEYS[n]} or {@code ARGV[n]}; the reply of the last call is returned.
+ * <p>
+ * Published messages reach subscribers without the injected latency. Streams
+ * support {@code XADD} with generated IDs and consumer groups reading new
+ * entries only; a {@code BLOCK}ing {@code XREADGROUP} with nothing to read
+ * returns at once, as if it had timed out.
+ */
+public class RespServer implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long ACCEPT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final Set<String> TRANSACTION_COMMANDS = new HashSet<>(
+			Arrays.asList("MULTI", "EXEC", "DISCARD", "WATCH"));
+	private static final Set<String> KEYED_COMMANDS = new HashSet<>(Arrays.asList("GET", "SET", "MGET", "MSET",
+			"DEL", "EXISTS", "EXPIRE", "INCR", "HSET", "HGET", "HMSET", "HMGET", "HDEL", "XADD", "XACK", "XLEN", "WATCH"));
+	private static final byte[] MESSAGE = "message".getBytes(UTF_8);
+	private static final byte[] SUBSCRIBE = "subscribe".getBytes(UTF_8);
+	private static final byte[] UNSUBSCRIBE = "unsubscribe".getBytes(UTF_8);
+	private static final String INFO = "# Server\r\nredis_version:0.0.0\r\nredis_mode:standalone\r\n"
+			+ "executable:" + RespServer.class.getName() + "\r\n";
+
+	private final ServerSocketChannel serverChannel;
+	private final Thread acceptor;
+	private final EventLoop[] eventLoops;
+	private final ConcurrentMap<Key, Object> data = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Key, Long> versions = new ConcurrentHashMap<>();
+	private final AtomicLong flushes = new AtomicLong();
+	private final ReadWriteLock transactionLock = new ReentrantReadWriteLock();
+	private final ConcurrentMap<String, Script> scripts = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Key, Set<Connection>> subscriptions = new ConcurrentHashMap<>();
+	private volatile boolean transactional;
+	private final HostAndPort[] slotOwners = new HostAndPort[ClusterSlots.SLOT_COUNT];
+	private final ConcurrentMap<Integer, HostAndPort> migratingSlots = new ConcurrentHashMap<>();
+	private volatile boolean cluster;
+	private final AtomicInteger connectedClients = new AtomicInteger();
+	private final LongAdder commandsProcessed = new LongAdder();
+	private final LongAdder rejectedConnections = new LongAdder();
+	private volatile long latencyNanos;
+	private volatile long jitterNanos;
+	private volatile boolean closed;
+
+	/**
+	 * @param port          0 to pick a free port, see {@link #getPort()}
+	 * @param ioThreadCount event-loop threads serving connections
+	 */
+	public RespServer(int port, int ioThreadCount) throws IOException {
+		this.serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port));
+		this.eventLoops = new EventLoop[ioThreadCount];
+		for (int i = 0; i < ioThreadCount; i++) {
+			eventLoops[i] = new EventLoop("resp-server-" + i);
+			eventLoops[i].start();
+		}
+		this.acceptor = new Thread(this::accept, "resp-server-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Delays every reply by {@code latency} plus a uniformly random part of up
+	 * to {@code jitter}. Replies on one connection keep their order. Event
+	 * loops wait for the next reply in whole milliseconds, so a delay may be
+	 * up to a millisecond longer than asked.
+	 */
+	public void setLatency(long latency, long jitter, TimeUnit unit) {
+		this.latencyNanos = unit.toNanos(latency);
+		this.jitterNanos = unit.toNanos(jitter);
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	/**
+	 * Makes the server a node of an emulated Redis Cluster, serving
+	 * {@code CLUSTER SLOTS}. A command on a key of a slot owned by another node
+	 * is answered with a MOVED redirection, unless it follows {@code ASKING}.
+	 * Every node is given the whole layout, its own slots being those assigned
+	 * to its port.
+	 */
+	public void assignSlots(int from, int to, String host, int port) {
+		HostAndPort owner = new HostAndPort(host, port);
+		for (int slot = from; slot <= to; slot++) {
+			slotOwners[slot] = owner;
+			migratingSlots.remove(slot);
+		}
+		cluster = true;
+	}
+
+	/**
+	 * Answers commands on keys of an owned slot with an ASK redirection, as if
+	 * they had all moved to the node importing the slot.
+	 */
+	public void migrateSlot(int slot, String host, int port) {
+		migratingSlots.put(slot, new HostAndPort(host, port));
+		cluster = true;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			// ignore
+		}
+		for (EventLoop eventLoop : eventLoops) {
+			eventLoop.interrupt();
+		}
+	}
+
+	private void accept() {
+		int next = 0;
+		while (!closed) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				eventLoops[next++ % eventLoops.length].register(channel);
+			} catch (IOException e) {
+				if (!closed) {
+					rejectedConnections.increment();
+					LockSupport.parkNanos(ACCEPT_BACKOFF_NANOS);
+				}
+			}
+		}
+	}
+
+	private void execute(Connection connection, List<Object> args, RespWriter out) {
+		String name = new String((byte[]) args.get(0), UTF_8).toUpperCase(Locale.ROOT);
+		if (cluster) {
+			boolean asking = connection.asking;
+			connection.asking = "ASKING".equals(name);
+			if (KEYED_COMMANDS.contains(name) && args.size() > 1) {
+				redirect(ClusterSlots.slot(arg(args, 1)), asking);
+			}
+		}
+		if (connection.queued != null && !TRANSACTION_COMMANDS.contains(name)) {
+			connection.queued.add(args);
+			out.writeSimple("QUEUED");
+			return;
+		}
+		switch (name) {
+		case "MULTI":
+			if (connection.queued != null) {
+				throw new RespError("ERR MULTI calls can not be nested");
+			}
+			transactional = true;
+			connection.queued = new ArrayList<>();
+			out.writeSimple("OK");
+			return;
+		case "DISCARD":
+			if (connection.queued == null) {
+				throw new RespError("ERR DISCARD without MULTI");
+			}
+			connection.queued = null;
+			connection.watched = null;
+			out.writeSimple("OK");
+			return;
+		case "WATCH":
+			if (connection.queued != null) {
+				throw new RespError("ERR WATCH inside MULTI is not allowed");
+			}
+			transactional = true;
+			if (connection.watched == null) {
+				connection.watched = new HashMap<>();
+				connection.watchedFlushes = flushes.get();
+			}
+			for (int i = 1; i < args.size(); i++) {
+				Key key = new Key(arg(args, i));
+				connection.watched.putIfAbsent(key, versions.getOrDefault(key, 0L));
+			}
+			out.writeSimple("OK");
+			return;
+		case "UNWATCH":
+			connection.watched = null;
+			out.writeSimple("OK");
+			return;
+		case "EXEC":
+			exec(connection, out);
+			return;
+		case "SUBSCRIBE":
+			for (int i = 1; i < args.size(); i++) {
+				Key channel = new Key(arg(args, i));
+				if (connection.channels == null) {
+					connection.channels = new HashSet<>();
+				}
+				if (connection.channels.add(channel)) {
+					subscriptions.computeIfAbsent(channel, c -> ConcurrentHashMap.newKeySet()).add(connection);
+				}
+				out.writeArrayHeader(3).writeBulk(SUBSCRIBE).writeBulk(channel.bytes)
+						.writeInteger(connection.channels.size());
+			}
+			return;
+		case "UNSUBSCRIBE": {
+			List<Key> channels = new ArrayList<>();
+			for (int i = 1; i < args.size(); i++) {
+				channels.add(new Key(arg(args, i)));
+			}
+			if (channels.isEmpty() && connection.channels != null) {
+				channels.addAll(connection.channels);
+			}
+			if (channels.isEmpty()) {
+				out.writeArrayHeader(3).writeBulk(UNSUBSCRIBE).writeNull().writeInteger(0);
+			}
+			for (Key channel : channels) {
+				if (connection.channels != null && connection.channels.remove(channel)) {
+					subscriptions.get(channel).remove(connection);
+				}
+				out.writeArrayHeader(3).writeBulk(UNSUBSCRIBE).writeBulk(channel.bytes)
+						.writeInteger(connection.channels == null ? 0 : connection.channels.size());
+			}
+			return;
+		}
+		case "PUBLISH": {
+			Set<Connection> subscribers = subscriptions.get(new Key(arg(args, 1)));
+			int receivers = 0;
+			if (subscribers != null && !subscribers.isEmpty()) {
+				byte[] message = new RespWriter().writeArrayHeader(3).writeBulk(MESSAGE).writeBulk(arg(args, 1))
+						.writeBulk(arg(args, 2)).toByteArray();
+				for (Connection subscriber : subscribers) {
+					subscriber.eventLoop.push(subscriber, message);
+					receivers++;
+				}
+			}
+			commandsProcessed.increment();
+			out.writeInteger(receivers);
+			return;
+		}
+		case "SCRIPT":
+			script(args, out);
+			return;
+		case "EVAL":
+		case "EVALSHA": {
+			Script script = "EVAL".equals(name) ? Script.parse(new String(arg(args, 1), UTF_8))
+					: scripts.get(new String(arg(args, 1), UTF_8).toLowerCase(Locale.ROOT));
+			if (script == null) {
+				throw new RespError("NOSCRIPT No matching script. Please use EVAL.");
+			}
+			eval(script, args, out);
+			return;
+		}
+		default:
+			if (!transactional) {
+				execute(args, out);
+				return;
+			}
+			Lock lock = transactionLock.readLock();
+			lock.lock();
+			try {
+				execute(args, out);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void redirect(int slot, boolean asking) {
+		HostAndPort owner = slotOwners[slot];
+		if (owner == null) {
+			throw new RespError("CLUSTERDOWN Hash slot not served");
+		}
+		if (owner.getPort() != getPort()) {
+			if (!asking) {
+				throw new RespError("MOVED " + slot + " " + owner);
+			}
+			return;
+		}
+		HostAndPort target = migratingSlots.get(slot);
+		if (target != null) {
+			throw new RespError("ASK " + slot + " " + target);
+		}
+	}
+
+	private void clusterSlots(RespWriter out) {
+		List<int[]> ranges = new ArrayList<>();
+		for (int slot = 0; slot < slotOwners.length; slot++) {
+			if (slotOwners[slot] == null) {
+				continue;
+			}
+			int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+			if (last != null && last[1] == slot - 1 && slotOwners[last[0]].equals(slotOwners[slot])) {
+				last[1] = slot;
+			} else {
+				ranges.add(new int[] { slot, slot });
+			}
+		}
+		out.writeArrayHeader(ranges.size());
+		for (int[] range : ranges) {
+			HostAndPort owner = slotOwners[range[0]];
+			out.writeArrayHeader(3).writeInteger(range[0]).writeInteger(range[1]).writeArrayHeader(2)
+					.writeBulk(owner.getHost().getBytes(UTF_8)).writeInteger(owner.getPort());
+		}
+	}
+
+	private void exec(Connection connection, RespWriter out) {
+		List<List<Object>> queued = connection.queued;
+		Map<Key, Long> watched = connection.watched;
+		if (queued == null) {
+			throw new RespError("ERR EXEC without MULTI");
+		}
+		connection.queued = null;
+		connection.watched = null;
+		Lock lock = transactionLock.writeLock();
+		lock.lock();
+		try {
+			if (watched != null && (flushes.get() != connection.watchedFlushes || watched.entrySet().stream()
+					.anyMatch(e -> !e.getValue().equals(versions.getOrDefault(e.getKey(), 0L))))) {
+				out.writeArrayHeader(-1);
+				return;
+			}
+			out.writeArrayHeader(queued.size());
+			for (List<Object> args : queued) {
+				try {
+					execute(args, out);
+				} catch (RespError | ClassCastException | NumberFormatException e) {
+					out.writeError(e instanceof RespError ? e.getMessage() : "ERR " + e);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void script(List<Object> args, RespWriter out) {
+		String subcommand = new String(arg(args, 1), UTF_8).toUpperCase(Locale.ROOT);
+		switch (subcommand) {
+		case "LOAD": {
+			String source = new String(arg(args, 2), UTF_8);
+			Script script = Script.parse(source);
+			String sha = sha1(source);
+			scripts.put(sha, script);
+			out.writeBulk(sha.getBytes(UTF_8));
+			return;
+		}
+		case "EXISTS":
+			out.writeArrayHeader(args.size() - 2);
+			for (int i = 2; i < args.size(); i++) {
+				out.writeInteger(scripts.containsKey(new String(arg(args, i), UTF_8).toLowerCase(Locale.ROOT)) ? 1 : 0);
+			}
+			return;
+		case "FLUSH":
+			scripts.clear();
+			out.writeSimple("OK");
+			return;
+		default:
+			throw new RespError("ERR unknown SCRIPT subcommand '" + subcommand + "'");
+		}
+	}
+
+	private void eval(Script script, List<Object> args, RespWriter out) {
+		int keyCount = Integer.parseInt(new String(arg(args, 2), UTF_8));
+		List<Object> keys = args.subList(3, 3 + keyCount);
+		List<Object> argv = args.subList(3 + keyCount, args.size());
+		transactional = true;
+		RespWriter reply = new RespWriter();
+		Lock lock = transactionLock.writeLock();
+		lock.lock();
+		try {
+			for (Object[] call : script.calls) {
+				List<Object> command = new ArrayList<>(call.length);
+				for (Object token : call) {
+					if (token instanceof byte[]) {
+						command.add(token);
+					} else {
+						int index = (Integer) token;
+						command.add(arg(index > 0 ? keys : argv, Math.abs(index) - 1));
+					}
+				}
+				reply.reset();
+				execute(command, reply);
+				if (reply.size() > 0 && reply.array()[0] == '-') {
+					break;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		out.writeRaw(reply.toByteArray());
+	}
+
+	private static String sha1(String source) {
+		try {
+			StringBuilder sb = new StringBuilder(40);
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(source.getBytes(UTF_8))) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void touch(String name, List<Object> args) {
+		switch (name) {
+		case "FLUSHDB":
+		case "FLUSHALL":
+			flushes.incrementAndGet();
+			return;
+		case "MSET":
+			for (int i = 1; i < args.size(); i += 2) {
+				versions.merge(new Key(arg(args, i)), 1L, Long::sum);
+			}
+			return;
+		case "DEL":
+			for (int i = 1; i < args.size(); i++) {
+				versions.merge(new Key(arg(args, i)), 1L, Long::sum);
+			}
+			return;
+		case "SET":
+		case "INCR":
+		case "XADD":
+		case "HSET":
+		case "HMSET":
+		case "HDEL":
+			versions.merge(new Key(arg(args, 1)), 1L, Long::sum);
+			return;
+		default:
+		}
+	}
+
+	private void execute(List<Object> args, RespWriter out) {
+		String name = new String((byte[]) args.get(0), UTF_8).toUpperCase(Locale.ROOT);
+		commandsProcessed.increment();
+		if (transactional) {
+			touch(name, args);
+		}
+		switch (name) {
+		case "PING":
+			if (args.size() > 1) {
+				out.writeBulk(arg(args, 1));
+			} else {
+				out.writeSimple("PONG");
+			}
+			return;
+		case "ECHO":
+			out.writeBulk(arg(args, 1));
+			return;
+		case "SELECT":
+			if (!"0".equals(new String(arg(args, 1), UTF_8))) {
+				out.writeError("ERR DB index is out of range");
+				return;
+			}
+			out.writeSimple("OK");
+			return;
+		case "AUTH":
+		case "CLIENT":
+		case "READONLY":
+		case "ASKING":
+		case "QUIT":
+			out.writeSimple("OK");
+			return;
+		case "COMMAND":
+			out.writeArrayHeader(0);
+			return;
+		case "CLUSTER":
+			if (!cluster) {
+				throw new RespError("ERR This instance has cluster support disabled");
+			}
+			if (!"SLOTS".equalsIgnoreCase(new String(arg(args, 1), UTF_8))) {
+				throw new RespError("ERR unknown CLUSTER subcommand");
+			}
+			clusterSlots(out);
+			return;
+		case "INFO":
+			out.writeBulk((INFO + "# Clients\r\nconnected_clients:" + connectedClients.get()
+					+ "\r\n# Stats\r\ntotal_commands_processed:" + commandsProcessed.sum()
+					+ "\r\nrejected_connections:" + rejectedConnections.sum()
+					+ "\r\n# Keyspace\r\ndb0:keys=" + data.size() + ",expires=0\r\n").getBytes(UTF_8));
+			return;
+		case "LATENCY":
+		case "SLOWLOG":
+			if (args.size() > 1 && "LEN".equalsIgnoreCase(new String(arg(args, 1), UTF_8))) {
+				out.writeInteger(0);
+			} else if (args.size() > 1 && "RESET".equalsIgnoreCase(new String(arg(args, 1), UTF_8))) {
+				out.writeSimple("OK");
+			} else {
+				out.writeArrayHeader(0);
+			}
+			return;
+		case "DBSIZE":
+			out.writeInteger(data.size());
+			return;
+		case "FLUSHDB":
+		case "FLUSHALL":
+			data.clear();
+			out.writeSimple("OK");
+			return;
+		case "SET":
+			data.put(new Key(arg(args, 1)), arg(args, 2));
+			out.writeSimple("OK");
+			return;
+		case "MSET":
+			for (int i = 1; i + 1 < args.size(); i += 2) {
+				data.put(new Key(arg(args, i)), arg(args, i + 1));
+			}
+			out.writeSimple("OK");
+			return;
+		case "GET":
+			writeString(data.get(new Key(arg(args, 1))), out);
+			return;
+		case "MGET":
+			out.writeArrayHeader(args.size() - 1);
+			for (int i = 1; i < args.size(); i++) {
+				Object value = data.get(new Key(arg(args, i)));
+				out.writeBulk(value instanceof byte[] ? (byte[]) value : null);
+			}
+			return;
+		case "INCR": {
+			Object value = data.compute(new Key(arg(args, 1)), (k, v) -> {
+				if (v != null && !(v instanceof byte[])) {
+					return v;
+				}
+				long n = v == null ? 0 : Long.parseLong(new String((byte[]) v, UTF_8));
+				return String.valueOf(n + 1).getBytes(UTF_8);
+			});
+			if (value instanceof byte[]) {
+				out.writeInteger(Long.parseLong(new String((byte[]) value, UTF_8)));
+			} else {
+				writeWrongType(out);
+			}
+			return;
+		}
+		case "DEL":
+		case "EXISTS": {
+			int count = 0;
+			for (int i = 1; i < args.size(); i++) {
+				Key key = new Key(arg(args, i));
+				if ("DEL".equals(name) ? data.remove(key) != null : data.containsKey(key)) {
+					count++;
+				}
+			}
+			out.writeInteger(count);
+			return;
+		}
+		case "HSET":
+		case "HMSET": {
+			Map<Key, byte[]> hash = hash(arg(args, 1), true);
+			if (hash == null) {
+				writeWrongType(out);
+				return;
+			}
+			int added = 0;
+			for (int i = 2; i + 1 < args.size(); i += 2) {
+				if (hash.put(new Key(arg(args, i)), arg(args, i + 1)) == null) {
+					added++;
+				}
+			}
+			if ("HSET".equals(name)) {
+				out.writeInteger(added);
+			} else {
+				out.writeSimple("OK");
+			}
+			return;
+		}
+		case "HGET": {
+			Map<Key, byte[]> hash = hash(arg(args, 1), false);
+			out.writeBulk(hash == null ? null : hash.get(new Key(arg(args, 2))));
+			return;
+		}
+		case "HMGET": {
+			Map<Key, byte[]> hash = hash(arg(args, 1), false);
+			out.writeArrayHeader(args.size() - 2);
+			for (int i = 2; i < args.size(); i++) {
+				out.writeBulk(hash == null ? null : hash.get(new Key(arg(args, i))));
+			}
+			return;
+		}
+		case "HDEL": {
+			Map<Key, byte[]> hash = hash(arg(args, 1), false);
+			int count = 0;
+			for (int i = 2; hash != null && i < args.size(); i++) {
+				if (hash.remove(new Key(arg(args, i))) != null) {
+					count++;
+				}
+			}
+			out.writeInteger(count);
+			return;
+		}
+		case "HEXISTS": {
+			Map<Key, byte[]> hash = hash(arg(args, 1), false);
+			out.writeInteger(hash != null && hash.containsKey(new Key(arg(args, 2))) ? 1 : 0);
+			return;
+		}
+		case "HLEN": {
+			Map<Key, byte[]> hash = hash(arg(args, 1), false);
+			out.writeInteger(hash == null ? 0 : hash.size());
+			return;
+		}
+		case "HGETALL": {
+			Map<Key, byte[]> hash = hash(arg(args, 1), false);
+			if (hash == null) {
+				out.writeArrayHeader(0);
+				return;
+			}
+			Object[] entries = hash.entrySet().toArray();
+			out.writeArrayHeader(entries.length * 2);
+			for (Object entry : entries) {
+				@SuppressWarnings("unchecked")
+				Map.Entry<Key, byte[]> e = (Map.Entry<Key, byte[]>) entry;
+				out.writeBulk(e.getKey().bytes);
+				out.writeBulk(e.getValue());
+			}
+			return;
+		}
+		case "XADD": {
+			Stream stream = stream(arg(args, 1), true);
+			if (stream == null) {
+				writeWrongType(out);
+				return;
+			}
+			int i = 2;
+			long maxLength = -1;
+			boolean approximate = false;
+			if ("MAXLEN".equalsIgnoreCase(new String(arg(args, i), UTF_8))) {
+				String threshold = new String(arg(args, ++i), UTF_8);
+				if ("~".equals(threshold) || "=".equals(threshold)) {
+					approximate = "~".equals(threshold);
+					threshold = new String(arg(args, ++i), UTF_8);
+				}
+				maxLength = Long.parseLong(threshold);
+				i++;
+			}
+			if (!"*".equals(new String(arg(args, i), UTF_8))) {
+				throw new RespError("ERR RespServer only generates stream IDs, use *");
+			}
+			if ((args.size() - i - 1) % 2 != 0 || args.size() - i - 1 == 0) {
+				throw new RespError("ERR wrong number of arguments for 'xadd' command");
+			}
+			out.writeBulk(stream.add(new ArrayList<>(args.subList(i + 1, args.size())), maxLength, approximate));
+			return;
+		}
+		case "XLEN": {
+			Stream stream = stream(arg(args, 1), false);
+			out.writeInteger(stream == null ? 0 : stream.length());
+			return;
+		}
+		case "XGROUP": {
+			String subcommand = new String(arg(args, 1), UTF_8).toUpperCase(Locale.ROOT);
+			boolean create = "CREATE".equals(subcommand);
+			if (!create && !"DESTROY".equals(subcommand)) {
+				throw new RespError("ERR unknown XGROUP subcommand '" + subcommand + "'");
+			}
+			boolean mkstream = create && args.size() > 5
+					&& "MKSTREAM".equalsIgnoreCase(new String(arg(args, 5), UTF_8));
+			Stream stream = stream(arg(args, 2), mkstream);
+			if (stream == null) {
+				throw new RespError("ERR The XGROUP subcommand requires the key to exist");
+			}
+			if (!create) {
+				out.writeInteger(stream.destroyGroup(new Key(arg(args, 3))) ? 1 : 0);
+				return;
+			}
+			String id = new String(arg(args, 4), UTF_8);
+			if (!"$".equals(id) && !"0".equals(id) && !"0-0".equals(id)) {
+				throw new RespError("ERR RespServer only creates groups at $ or 0");
+			}
+			if (!stream.createGroup(new Key(arg(args, 3)), "$".equals(id))) {
+				throw new RespError("BUSYGROUP Consumer Group name already exists");
+			}
+			out.writeSimple("OK");
+			return;
+		}
+		case "XREADGROUP":
+			readGroup(args, out);
+			return;
+		case "XACK": {
+			Stream stream = stream(arg(args, 1), false);
+			out.writeInteger(stream == null ? 0 : stream.ack(new Key(arg(args, 2)), args.subList(3, args.size())));
+			return;
+		}
+		default:
+			out.writeError("ERR unknown command '" + name + "'");
+		}
+	}
+
+	private void readGroup(List<Object> args, RespWriter out) {
+		if (!"GROUP".equalsIgnoreCase(new String(arg(args, 1), UTF_8))) {
+			throw new RespError("ERR syntax error");
+		}
+		Key group = new Key(arg(args, 2));
+		int count = Integer.MAX_VALUE;
+		boolean noack = false;
+		int i = 4;
+		for (;; i++) {
+			String option = new String(arg(args, i), UTF_8).toUpperCase(Locale.ROOT);
+			if ("COUNT".equals(option)) {
+				count = Integer.parseInt(new String(arg(args, ++i), UTF_8));
+			} else if ("BLOCK".equals(option)) {
+				i++;
+			} else if ("NOACK".equals(option)) {
+				noack = true;
+			} else if ("STREAMS".equals(option)) {
+				break;
+			} else {
+				throw new RespError("ERR syntax error");
+			}
+		}
+		int streams = (args.size() - i - 1) / 2;
+		if (streams == 0 || (args.size() - i - 1) % 2 != 0) {
+			throw new RespError("ERR Unbalanced XREADGROUP list of streams");
+		}
+		List<byte[]> keys = new ArrayList<>();
+		List<List<Object[]>> replies = new ArrayList<>();
+		for (int s = 0; s < streams; s++) {
+			byte[] key = arg(args, i + 1 + s);
+			if (!">".equals(new String(arg(args, i + 1 + streams + s), UTF_8))) {
+				throw new RespError("ERR RespServer only reads new entries, use >");
+			}
+			Stream stream = stream(key, false);
+			List<Object[]> entries = stream == null ? null : stream.read(group, count, noack);
+			if (entries == null) {
+				throw new RespError("NOGROUP No such key '" + new String(key, UTF_8) + "' or consumer group '"
+						+ new String(group.bytes, UTF_8) + "' in XREADGROUP with GROUP option");
+			}
+			if (!entries.isEmpty()) {
+				keys.add(key);
+				replies.add(entries);
+			}
+		}
+		if (keys.isEmpty()) {
+			out.writeArrayHeader(-1);
+			return;
+		}
+		out.writeArrayHeader(keys.size());
+		for (int s = 0; s < keys.size(); s++) {
+			out.writeArrayHeader(2).writeBulk(keys.get(s)).writeArrayHeader(replies.get(s).size());
+			for (Object[] entry : replies.get(s)) {
+				@SuppressWarnings("unchecked")
+				List<Object> fields = (List<Object>) entry[1];
+				out.writeArrayHeader(2).writeBulk((byte[]) entry[0]).writeArrayHeader(fields.size());
+				for (Object field : fields) {
+					out.writeBulk((byte[]) field);
+				}
+			}
+		}
+	}
+
+	private Stream stream(byte[] name, boolean create) {
+		Key key = new Key(name);
+		Object value = create ? data.computeIfAbsent(key, k -> new Stream()) : data.get(key);
+		if (value != null && !(value instanceof Stream)) {
+			throw new RespError("WRONGTYPE Operation against a key holding the wrong kind of value");
+		}
+		return (Stream) value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Key, byte[]> hash(byte[] name, boolean create) {
+		Key key = new Key(name);
+		Object value = create ? data.computeIfAbsent(key, k -> new ConcurrentHashMap<Key, byte[]>()) : data.get(key);
+		if (value instanceof byte[] || value instanceof Stream) {
+			return null;
+		}
+		return (Map<Key, byte[]>) value;
+	}
+
+	private static void writeString(Object value, RespWriter out) {
+		if (value == null || value instanceof byte[]) {
+			out.writeBulk((byte[]) value);
+		} else {
+			writeWrongType(out);
+		}
+	}
+
+	private static void writeWrongType(RespWriter out) {
+		out.writeError("WRONGTYPE Operation against a key holding the wrong kind of value");
+	}
+
+	private static byte[] arg(List<Object> args, int index) {
+		if (index >= args.size()) {
+			throw new RespError("ERR wrong number of arguments");
+		}
+		return (byte[]) args.get(index);
+	}
+
+	private static final class Key {
+		private final byte[] bytes;
+		private final int hash;
+
+		private Key(byte[] bytes) {
+			this.bytes = bytes;
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(bytes, ((Key) obj).bytes);
+		}
+	}
+
+	/**
+	 * Calls of a script, each token a literal {@code byte[]}, a 1-based
+	 * {@code KEYS} index or a negated 1-based {@code ARGV} index.
+	 */
+	private static class Script {
+		private static final Pattern CALL = Pattern
+				.compile("^\\s*(?:return\\s+)?redis\\.call\\((.*)\\)\\s*;?\\s*$");
+		private static final Pattern TOKEN = Pattern
+				.compile("\\s*(?:'([^']*)'|\"([^\"]*)\"|KEYS\\[(\\d+)\\]|ARGV\\[(\\d+)\\])\\s*(,|$)");
+
+		private final List<Object[]> calls = new ArrayList<>();
+
+		private static Script parse(String source) {
+			Script script = new Script();
+			for (String line : source.split("\r?\n")) {
+				if (line.trim().isEmpty() || line.trim().startsWith("--")) {
+					continue;
+				}
+				Matcher call = CALL.matcher(line);
+				if (!call.matches()) {
+					throw new RespError("ERR RespServer only runs scripts made of redis.call(...) statements");
+				}
+				List<Object> tokens = new ArrayList<>();
+				Matcher token = TOKEN.matcher(call.group(1));
+				int end = 0;
+				while (end < call.group(1).length() && token.find(end) && token.start() == end) {
+					if (token.group(1) != null || token.group(2) != null) {
+						tokens.add((token.group(1) != null ? token.group(1) : token.group(2)).getBytes(UTF_8));
+					} else if (token.group(3) != null) {
+						tokens.add(Integer.parseInt(token.group(3)));
+					} else {
+						tokens.add(-Integer.parseInt(token.group(4)));
+					}
+					end = token.end();
+				}
+				if (end < call.group(1).length() || tokens.isEmpty()) {
+					throw new RespError("ERR Unsupported redis.call arguments: " + call.group(1));
+				}
+				script.calls.add(tokens.toArray());
+			}
+			if (script.calls.isEmpty()) {
+				throw new RespError("ERR Empty script");
+			}
+			return script;
+		}
+	}
+
+	/**
+	 * Entries of a stream as {@code {id, fields}} pairs, trimmed from the head,
+	 * and its consumer groups as the offset of the next entry to deliver.
+	 */
+	private static class Stream {
+		private final List<Object[]> entries = new ArrayList<>();
+		private final Map<Key, Group> groups = new HashMap<>();
+		private long trimmed;
+		private long lastMillis;
+		private long lastSequence;
+
+		private synchronized byte[] add(List<Object> fields, long maxLength, boolean approximate) {
+			long millis = System.currentTimeMillis();
+			if (millis > lastMillis) {
+				lastMillis = millis;
+				lastSequence = 0;
+			} else {
+				lastSequence++;
+			}
+			byte[] id = (lastMillis + "-" + lastSequence).getBytes(UTF_8);
+			entries.add(new Object[] { id, fields });
+			if (maxLength >= 0 && entries.size() > (approximate ? maxLength + maxLength / 10 + 1 : maxLength)) {
+				int excess = (int) (entries.size() - maxLength);
+				entries.subList(0, excess).clear();
+				trimmed += excess;
+			}
+			return id;
+		}
+
+		private synchronized int length() {
+			return entries.size();
+		}
+
+		private synchronized boolean createGroup(Key name, boolean fromEnd) {
+			return groups.putIfAbsent(name, new Group(fromEnd ? trimmed + entries.size() : trimmed)) == null;
+		}
+
+		private synchronized boolean destroyGroup(Key name) {
+			return groups.remove(name) != null;
+		}
+
+		/**
+		 * @return entries not yet delivered to the group, null without the group
+		 */
+		private synchronized List<Object[]> read(Key name, int count, boolean noack) {
+			Group group = groups.get(name);
+			if (group == null) {
+				return null;
+			}
+			group.next = Math.max(group.next, trimmed);
+			int from = (int) (group.next - trimmed);
+			int to = (int) Math.min(entries.size(), (long) from + count);
+			List<Object[]> read = new ArrayList<>(entries.subList(from, to));
+			group.next += read.size();
+			if (!noack) {
+				for (Object[] entry : read) {
+					group.pending.add(new Key((byte[]) entry[0]));
+				}
+			}
+			return read;
+		}
+
+		private synchronized int ack(Key name, List<Object> ids) {
+			Group group = groups.get(name);
+			int acked = 0;
+			for (int i = 0; group != null && i < ids.size(); i++) {
+				if (group.pending.remove(new Key((byte[]) ids.get(i)))) {
+					acked++;
+				}
+			}
+			return acked;
+		}
+	}
+
+	private static class Group {
+		private final Set<Key> pending = new HashSet<>();
+		private long next;
+
+		private Group(long next) {
+			this.next = next;
+		}
+	}
+
+	private static class DelayedReply {
+		private final long due;
+		private final byte[] data;
+
+		private DelayedReply(long due, byte[] data) {
+			this.due = due;
+			this.data = data;
+		}
+	}
+
+	private class Connection {
+		private final SocketChannel channel;
+		private final RespParser parser = new RespParser();
+		private final RespWriter out = new RespWriter(BUFFER_SIZE);
+		private final Queue<DelayedReply> delayed = new ArrayDeque<>();
+		private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		private int written;
+		private long lastDue;
+		private final Queue<byte[]> pushes = new ConcurrentLinkedQueue<>();
+		private SelectionKey key;
+		private EventLoop eventLoop;
+		private Set<Key> channels;
+		private List<List<Object>> queued;
+		private Map<Key, Long> watched;
+		private long watchedFlushes;
+		private boolean asking;
+
+		private Connection(SocketChannel channel) {
+			this.channel = channel;
+			connectedClients.incrementAndGet();
+		}
+
+		private void read(RespWriter scratch) throws IOException {
+			int n = channel.read(in);
+			if (n < 0) {
+				throw new ClosedChannelException();
+			}
+			long received = System.nanoTime();
+			in.flip();
+			Object request;
+			while ((request = parser.parse(in)) != RespParser.INCOMPLETE) {
+				if (!(request instanceof List) || ((List<?>) request).isEmpty()) {
+					throw new IllegalStateException("Expected a command array");
+				}
+				@SuppressWarnings("unchecked")
+				List<Object> args = (List<Object>) request;
+				long latency = latencyNanos;
+				RespWriter reply = latency > 0 ? scratch : out;
+				try {
+					execute(this, args, reply);
+				} catch (RespError | ClassCastException | NumberFormatException e) {
+					reply.writeError(e instanceof RespError ? e.getMessage() : "ERR " + e);
+				}
+				if (latency > 0) {
+					long jitter = jitterNanos;
+					long due = received + latency + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+					lastDue = Math.max(lastDue, due);
+					delayed.add(new DelayedReply(lastDue, scratch.toByteArray()));
+					scratch.reset();
+				}
+			}
+			in.compact();
+			if (!in.hasRemaining()) {
+				ByteBuffer grown = ByteBuffer.allocate(in.capacity() * 2);
+				in.flip();
+				grown.put(in);
+				in = grown;
+			}
+		}
+
+		/**
+		 * @return nanos until the next delayed reply is due, or -1 if none
+		 */
+		private long releaseDue(long now) {
+			DelayedReply reply;
+			while ((reply = delayed.peek()) != null && reply.due - now <= 0) {
+				delayed.poll();
+				out.writeRaw(reply.data);
+			}
+			return reply == null ? -1 : reply.due - now;
+		}
+
+		private void flush() throws IOException {
+			if (written < out.size()) {
+				written += channel.write(ByteBuffer.wrap(out.array(), written, out.size() - written));
+			}
+			if (written == out.size()) {
+				out.reset();
+				written = 0;
+				key.interestOps(SelectionKey.OP_READ);
+			} else {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+
+		private void close() {
+			if (channel.isOpen()) {
+				connectedClients.decrementAndGet();
+			}
+			if (channels != null) {
+				for (Key channel : channels) {
+					subscriptions.get(channel).remove(this);
+				}
+			}
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	private class EventLoop extends Thread {
+		private final Selector selector;
+		private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+		private final Queue<Connection> pushed = new ConcurrentLinkedQueue<>();
+		private final Set<Connection> delaying = new LinkedHashSet<>();
+		private final RespWriter scratch = new RespWriter();
+
+		private EventLoop(String name) throws IOException {
+			super(name);
+			setDaemon(true);
+			this.selector = Selector.open();
+		}
+
+		private void register(SocketChannel channel) {
+			registrations.add(channel);
+			selector.wakeup();
+		}
+
+		private void push(Connection connection, byte[] message) {
+			connection.pushes.add(message);
+			pushed.add(connection);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				long timeout = 0;
+				while (!isInterrupted()) {
+					selector.select(timeout);
+
+					SocketChannel channel;
+					while ((channel = registrations.poll()) != null) {
+						Connection connection = new Connection(channel);
+						connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+						connection.eventLoop = this;
+					}
+
+					Connection subscriber;
+					while ((subscriber = pushed.poll()) != null) {
+						byte[] message;
+						while ((message = subscriber.pushes.poll()) != null) {
+							subscriber.out.writeRaw(message);
+						}
+						try {
+							if (subscriber.key.isValid()) {
+								subscriber.flush();
+							}
+						} catch (IOException | RuntimeException e) {
+							delaying.remove(subscriber);
+							subscriber.close();
+						}
+					}
+
+					for (SelectionKey key : selector.selectedKeys()) {
+						Connection connection = (Connection) key.attachment();
+						try {
+							if (key.isReadable()) {
+								connection.read(scratch);
+								if (!connection.delayed.isEmpty()) {
+									delaying.add(connection);
+								}
+							}
+							if (key.isValid()) {
+								connection.flush();
+							}
+						} catch (IOException | RuntimeException e) {
+							delaying.remove(connection);
+							connection.close();
+						}
+					}
+					selector.selectedKeys().clear();
+
+					long nextWait = Long.MAX_VALUE;
+					long now = System.nanoTime();
+					for (Iterator<Connection> it = delaying.iterator(); it.hasNext();) {
+						Connection connection = it.next();
+						try {
+							long wait = connection.releaseDue(now);
+							connection.flush();
+							if (wait < 0) {
+								it.remove();
+							} else {
+								nextWait = Math.min(nextWait, wait);
+							}
+						} catch (IOException | RuntimeException e) {
+							it.remove();
+							connection.close();
+						}
+					}
+					// select takes millis: round up so the loop sleeps until the next reply is due
+					timeout = nextWait == Long.MAX_VALUE ? 0
+							: Math.max(1, (nextWait + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					((Connection) key.attachment()).close();
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+
+/**
+ * Encodes RESP2 commands and replies into a reusable, growable byte array.
+ */
+public class RespWriter {
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private byte[] buf;
+	private int size;
+
+	public RespWriter() {
+		this(256);
+	}
+
+	public RespWriter(int initialCapacity) {
+		this.buf = new byte[initialCapacity];
+	}
+
+	/**
+	 * Encodes a command into an exactly sized array.
+	 */
+	public static byte[] command(byte[]... args) {
+		int length = 1 + digits(args.length) + 2;
+		for (byte[] arg : args) {
+			length += 1 + digits(arg.length) + 2 + arg.length + 2;
+		}
+		RespWriter writer = new RespWriter(length);
+		writer.writeCommand(args);
+		return writer.buf;
+	}
+
+	public RespWriter writeCommand(byte[]... args) {
+		writeArrayHeader(args.length);
+		for (byte[] arg : args) {
+			writeBulk(arg);
+		}
+		return this;
+	}
+
+	public RespWriter writeSimple(String value) {
+		writeByte('+');
+		writeBytes(value.getBytes(UTF_8));
+		writeBytes(CRLF);
+		return this;
+	}
+
+	public RespWriter writeError(String message) {
+		writeByte('-');
+		writeBytes(message.getBytes(UTF_8));
+		writeBytes(CRLF);
+		return this;
+	}
+
+	public RespWriter writeInteger(long value) {
+		writeByte(':');
+		writeLong(value);
+		writeBytes(CRLF);
+		return this;
+	}
+
+	public RespWriter writeBulk(byte[] value) {
+		if (value == null) {
+			return writeNull();
+		}
+		return writeBulk(value, 0, value.length);
+	}
+
+	public RespWriter writeBulk(byte[] value, int offset, int length) {
+		writeByte('$');
+		writeLong(length);
+		writeBytes(CRLF);
+		ensureCapacity(length + 2);
+		System.arraycopy(value, offset, buf, size, length);
+		size += length;
+		writeBytes(CRLF);
+		return this;
+	}
+
+	public RespWriter writeNull() {
+		writeByte('$');
+		writeLong(-1);
+		writeBytes(CRLF);
+		return this;
+	}
+
+	public RespWriter writeArrayHeader(int count) {
+		writeByte('*');
+		writeLong(count);
+		writeBytes(CRLF);
+		return this;
+	}
+
+	/**
+	 * Appends bytes that are already RESP encoded.
+	 */
+	public RespWriter writeRaw(byte[] bytes) {
+		writeBytes(bytes);
+		return this;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public byte[] array() {
+		return buf;
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buf, size);
+	}
+
+	public void reset() {
+		size = 0;
+	}
+
+	private void writeByte(int b) {
+		ensureCapacity(1);
+		buf[size++] = (byte) b;
+	}
+
+	private void writeBytes(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buf, size, bytes.length);
+		size += bytes.length;
+	}
+
+	private void writeLong(long value) {
+		if (value < 0) {
+			writeByte('-');
+			value = -value;
+		}
+		int n = digits(value);
+		ensureCapacity(n);
+		for (int i = size + n - 1; i >= size; i--) {
+			buf[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		size += n;
+	}
+
+	private void ensureCapacity(int extra) {
+		if (size + extra > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+		}
+	}
+
+	private static int digits(long value) {
+		int n = 1;
+		while (value >= 10) {
+			value /= 10;
+			n++;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,81 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+/**
+ * A typed parameter a {@link RoutineProvider} declares, given on the command
+ * line as {@code <type>:<name>=<value>} or as a positional value.
+ */
+public class RoutineOption {
+	/**
+	 * {@link #FILE} is a local path, kept as a String, that agents refuse to
+	 * take from a coordinator.
+	 */
+	public static enum Type {
+		INT, LONG, DOUBLE, BOOLEAN, STRING, FILE
+	}
+
+	private final String name;
+	private final Type type;
+	private final String defaultValue;
+	private final String description;
+
+	/**
+	 * @param defaultValue null if the option is unset unless given
+	 */
+	public RoutineOption(String name, Type type, String defaultValue, String description) {
+		this.name = name;
+		this.type = type;
+		this.defaultValue = defaultValue;
+		this.description = description;
+		if (defaultValue != null) {
+			parse(defaultValue);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getDefaultValue() {
+		return defaultValue;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * @return the value as an Integer, Long, Double, Boolean or String
+	 * @throws IllegalArgumentException if the value does not fit the type
+	 */
+	public Object parse(String value) {
+		try {
+			switch (type) {
+			case INT:
+				return Integer.valueOf(value);
+			case LONG:
+				return Long.valueOf(value);
+			case DOUBLE:
+				return Double.valueOf(value);
+			case BOOLEAN:
+				if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+					throw new IllegalArgumentException();
+				}
+				return Boolean.valueOf(value);
+			default:
+				return value;
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(
+					"Option " + name + " expects " + type.name().toLowerCase() + ", got " + value);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + "=" + (defaultValue != null ? defaultValue : "");
+	}
+}
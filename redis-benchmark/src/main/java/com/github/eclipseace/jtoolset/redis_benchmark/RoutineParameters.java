@@ -0,0 +1,101 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What a {@link RoutineProvider} creates a routine from: the target, the test
+ * settings and the values of the options it declared, defaults included.
+ */
+public class RoutineParameters {
+	private final URI uri;
+	private final PayloadGenerator payloads;
+	private final Map<String, Object> values;
+	private boolean cluster;
+	private int threads = 1;
+
+	public RoutineParameters(URI uri, PayloadGenerator payloads, Map<String, Object> values) {
+		this.uri = uri;
+		this.payloads = payloads;
+		this.values = new HashMap<>(values);
+	}
+
+	public URI getUri() {
+		return uri;
+	}
+
+	public PayloadGenerator getPayloads() {
+		return payloads;
+	}
+
+	public boolean isCluster() {
+		return cluster;
+	}
+
+	public void setCluster(boolean cluster) {
+		this.cluster = cluster;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads threads of the test, e.g. to split them between producers
+	 *                and consumers
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public Map<String, Object> getValues() {
+		return Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * @return false if the option has no default and was not given
+	 */
+	public boolean has(String name) {
+		return values.get(name) != null;
+	}
+
+	public int getInt(String name) {
+		return get(name, Integer.class);
+	}
+
+	public long getLong(String name) {
+		return get(name, Long.class);
+	}
+
+	public double getDouble(String name) {
+		return get(name, Double.class);
+	}
+
+	public boolean getBoolean(String name) {
+		return get(name, Boolean.class);
+	}
+
+	/**
+	 * @return the value, or null if unset
+	 */
+	public String getString(String name) {
+		return get(name, String.class);
+	}
+
+	private <T> T get(String name, Class<T> type) {
+		Object value = values.get(name);
+		if (!values.containsKey(name)) {
+			throw new IllegalArgumentException("Undeclared option " + name);
+		} else if (value == null) {
+			if (type == String.class) {
+				return null;
+			}
+			throw new IllegalArgumentException("Option " + name + " is required");
+		} else if (!type.isInstance(value)) {
+			throw new IllegalArgumentException("Option " + name + " is not " + type.getSimpleName());
+		}
+		return type.cast(value);
+	}
+}
@@ -0,0 +1,37 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.util.List;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+/**
+ * A test type selectable with {@code --type}. Providers are found by
+ * {@link java.util.ServiceLoader}: a jar on the classpath listing its
+ * implementations in
+ * {@code META-INF/services/com.github.eclipseace.jtoolset.redis_benchmark.RoutineProvider}
+ * adds test types without changing the tool.
+ * <p>
+ * A routine extending {@link AbstractSharedJedisRoutine} can be pooled, and
+ * pipelined if it implements {@link JedisPipelinable}, or run on the async
+ * engine or against a cluster if it implements {@link RespCommandFactory}; any
+ * other routine only runs on plain Jedis connections of its own.
+ */
+public interface RoutineProvider {
+	/**
+	 * @return the test type, unique among providers
+	 */
+	String getName();
+
+	String getDescription();
+
+	/**
+	 * @return the options, in the order positional values are assigned to them
+	 */
+	List<RoutineOption> getOptions();
+
+	/**
+	 * @throws IllegalArgumentException if the parameters are not supported,
+	 *                                  e.g. cluster mode
+	 */
+	MultiThreadTest.Routine create(RoutineParameters params) throws Exception;
+}
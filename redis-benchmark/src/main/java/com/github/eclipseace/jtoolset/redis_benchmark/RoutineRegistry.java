@@ -0,0 +1,104 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+/**
+ * The {@link RoutineProvider}s available by name, and the parsing of type
+ * strings: {@code <name>[:<value>...]}, where every value is either
+ * {@code <option>=<value>} or positional, assigned to the provider's options
+ * in their declared order, e.g. {@code mget:100} or
+ * {@code set:keys=100000:ttl=60}.
+ */
+public class RoutineRegistry {
+	private final Map<String, RoutineProvider> providers = new TreeMap<>();
+
+	/**
+	 * Registers the providers found on the classpath of {@code loader}.
+	 */
+	public static RoutineRegistry load(ClassLoader loader) {
+		RoutineRegistry registry = new RoutineRegistry();
+		for (RoutineProvider provider : ServiceLoader.load(RoutineProvider.class, loader)) {
+			registry.register(provider);
+		}
+		return registry;
+	}
+
+	public static RoutineRegistry load() {
+		return load(RoutineRegistry.class.getClassLoader());
+	}
+
+	public void register(RoutineProvider provider) {
+		RoutineProvider previous = providers.putIfAbsent(provider.getName(), provider);
+		if (previous != null) {
+			throw new IllegalStateException("Test type " + provider.getName() + " is provided by both "
+					+ previous.getClass().getName() + " and " + provider.getClass().getName());
+		}
+	}
+
+	/**
+	 * @return providers by name
+	 */
+	public Collection<RoutineProvider> getProviders() {
+		return Collections.unmodifiableCollection(providers.values());
+	}
+
+	/**
+	 * @param type a type string, only its name is used
+	 * @throws IllegalArgumentException if no provider has the name
+	 */
+	public RoutineProvider get(String type) {
+		String name = type.split(":", 2)[0];
+		RoutineProvider provider = providers.get(name);
+		if (provider == null) {
+			throw new IllegalArgumentException("Unknown test type: " + name + ", available: " + providers.keySet());
+		}
+		return provider;
+	}
+
+	/**
+	 * Resolves the option values of a type string.
+	 *
+	 * @param given values applying to every type declaring the option, the type
+	 *              string taking precedence
+	 * @return the value of every declared option, null if unset
+	 * @throws IllegalArgumentException if a value is invalid or its option
+	 *                                  undeclared
+	 */
+	public Map<String, Object> resolve(String type, Map<String, String> given) {
+		RoutineProvider provider = get(type);
+		List<RoutineOption> options = provider.getOptions();
+		Map<String, String> raw = new LinkedHashMap<>();
+		for (RoutineOption option : options) {
+			raw.put(option.getName(), given.getOrDefault(option.getName(), option.getDefaultValue()));
+		}
+		String[] parts = type.split(":");
+		for (int i = 1; i < parts.length; i++) {
+			int eq = parts[i].indexOf('=');
+			if (eq >= 0) {
+				String name = parts[i].substring(0, eq);
+				if (!raw.containsKey(name)) {
+					throw new IllegalArgumentException("Test type " + provider.getName() + " has no option " + name);
+				}
+				raw.put(name, parts[i].substring(eq + 1));
+			} else if (i - 1 < options.size()) {
+				raw.put(options.get(i - 1).getName(), parts[i]);
+			} else {
+				throw new IllegalArgumentException(
+						"Test type " + provider.getName() + " takes " + options.size() + " values: " + type);
+			}
+		}
+
+		Map<String, Object> values = new LinkedHashMap<>();
+		for (RoutineOption option : options) {
+			String value = raw.get(option.getName());
+			values.put(option.getName(), value != null ? option.parse(value) : null);
+		}
+		return values;
+	}
+}
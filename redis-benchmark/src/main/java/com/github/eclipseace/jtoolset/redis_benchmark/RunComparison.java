@@ -0,0 +1,125 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+/**
+ * Compares the per-interval means of a candidate run against a baseline with
+ * Welch's t-interval. A metric regresses when it moved in the wrong direction
+ * by more than the threshold and the confidence interval of the difference
+ * excludes zero.
+ */
+public class RunComparison {
+	public static final String THROUGHPUT = "ops_per_s";
+
+	private final double confidence;
+	private final double threshold;
+
+	/**
+	 * @param confidence e.g. 0.95
+	 * @param threshold  tolerated relative change, e.g. 0.05 for 5%
+	 */
+	public RunComparison(double confidence, double threshold) {
+		this.confidence = confidence;
+		this.threshold = threshold;
+	}
+
+	public List<Delta> compare(RunResult baseline, RunResult candidate, List<String> metrics) {
+		List<Delta> deltas = new ArrayList<>();
+		for (String metric : metrics) {
+			SummaryStatistics base = baseline.get(metric);
+			SummaryStatistics cand = candidate.get(metric);
+			if (base == null || cand == null) {
+				continue;
+			}
+			deltas.add(delta(metric, base, cand));
+		}
+		return deltas;
+	}
+
+	private Delta delta(String metric, SummaryStatistics base, SummaryStatistics cand) {
+		double diff = cand.getMean() - base.getMean();
+		double halfWidth = Double.NaN;
+		if (base.getN() > 1 && cand.getN() > 1) {
+			double vb = base.getVariance() / base.getN();
+			double vc = cand.getVariance() / cand.getN();
+			double se = Math.sqrt(vb + vc);
+			if (se == 0) {
+				halfWidth = 0;
+			} else {
+				double df = (vb + vc) * (vb + vc)
+						/ (vb * vb / (base.getN() - 1) + vc * vc / (cand.getN() - 1));
+				halfWidth = new TDistribution(df).inverseCumulativeProbability(1 - (1 - confidence) / 2) * se;
+			}
+		}
+		boolean higherIsBetter = THROUGHPUT.equals(metric);
+		double change = base.getMean() != 0 ? diff / base.getMean() : 0;
+		double worsening = higherIsBetter ? -change : change;
+		boolean significant = !Double.isNaN(halfWidth) && Math.abs(diff) > halfWidth;
+		return new Delta(metric, base.getMean(), cand.getMean(), diff, halfWidth, significant,
+				significant && worsening > threshold);
+	}
+
+	public static class Delta {
+		private final String metric;
+		private final double baseline;
+		private final double candidate;
+		private final double difference;
+		private final double halfWidth;
+		private final boolean significant;
+		private final boolean regression;
+
+		private Delta(String metric, double baseline, double candidate, double difference, double halfWidth,
+				boolean significant, boolean regression) {
+			this.metric = metric;
+			this.baseline = baseline;
+			this.candidate = candidate;
+			this.difference = difference;
+			this.halfWidth = halfWidth;
+			this.significant = significant;
+			this.regression = regression;
+		}
+
+		public String getMetric() {
+			return metric;
+		}
+
+		public double getBaseline() {
+			return baseline;
+		}
+
+		public double getCandidate() {
+			return candidate;
+		}
+
+		public double getDifference() {
+			return difference;
+		}
+
+		/**
+		 * @return half width of the confidence interval of the difference, NaN
+		 *         when either run has a single interval
+		 */
+		public double getHalfWidth() {
+			return halfWidth;
+		}
+
+		/**
+		 * @return relative change against the baseline
+		 */
+		public double getChange() {
+			return baseline != 0 ? difference / baseline : 0;
+		}
+
+		public boolean isSignificant() {
+			return significant;
+		}
+
+		public boolean isRegression() {
+			return regression;
+		}
+	}
+}
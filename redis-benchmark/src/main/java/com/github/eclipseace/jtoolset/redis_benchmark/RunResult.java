@@ -0,0 +1,91 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+/**
+ * Per-interval statistics of a saved run, loaded from a file written by
+ * {@link CsvIntervalWriter}. Only fully measured intervals that ran at the
+ * run's peak thread count are kept, so warmup, ramp-up and ramp-down do not
+ * skew the comparison.
+ */
+public class RunResult {
+	private final String name;
+	private final Map<String, SummaryStatistics> columns = new LinkedHashMap<>();
+
+	private RunResult(String name) {
+		this.name = name;
+	}
+
+	public static RunResult load(Path file) throws IOException {
+		RunResult result = new RunResult(file.getFileName().toString());
+		try (BufferedReader reader = Files.newBufferedReader(file)) {
+			String header = reader.readLine();
+			if (header == null) {
+				throw new IOException("Empty result file: " + file);
+			}
+			List<String> names = Arrays.asList(header.split(","));
+			int phase = names.indexOf("phase");
+			int ops = names.indexOf("ops_per_s");
+			int warmupOps = names.indexOf("warmup_ops_per_s");
+			int threads = names.indexOf("active_threads");
+			if (ops < 0 || threads < 0) {
+				throw new IOException("Not an interval CSV file: " + file);
+			}
+			List<String[]> rows = new ArrayList<>();
+			int peakThreads = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split(",");
+				if (values.length != names.size() || phase >= 0 && !"measure".equals(values[phase])
+						|| warmupOps >= 0 && Double.parseDouble(values[warmupOps]) > 0
+						|| Double.parseDouble(values[ops]) <= 0) {
+					continue;
+				}
+				rows.add(values);
+				peakThreads = Math.max(peakThreads, Integer.parseInt(values[threads]));
+			}
+			for (String[] values : rows) {
+				if (Integer.parseInt(values[threads]) < peakThreads) {
+					continue;
+				}
+				for (int i = 0; i < values.length; i++) {
+					if (i != phase) {
+						result.columns.computeIfAbsent(names.get(i), n -> new SummaryStatistics())
+								.addValue(Double.parseDouble(values[i]));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the intervals of a column, or null when the run has no such
+	 *         column or no measured interval
+	 */
+	public SummaryStatistics get(String column) {
+		return columns.get(column);
+	}
+
+	/**
+	 * @return measured intervals in the run
+	 */
+	public long getIntervals() {
+		SummaryStatistics ops = columns.get("ops_per_s");
+		return ops == null ? 0 : ops.getN();
+	}
+}
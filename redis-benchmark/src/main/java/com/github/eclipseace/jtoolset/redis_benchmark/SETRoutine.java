@@ -2,49 +2,91 @@ package com.github.eclipseace.jtoolset.redis_benchmark;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.net.URI;
 
-import com.github.eclipseace.jtoolset.redis_benchmark.MultiThreadTest.RoutineContext;
-
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.params.SetParams;
 
-public class SETRoutine extends AbstractSharedJedisRoutine {
+public class SETRoutine extends AbstractSharedJedisRoutine implements JedisPipelinable, RespCommandFactory {
 	private static final byte[] KEY_PREFIX = "presstest-value:".getBytes(UTF_8);
-	private static final byte[] CHARS = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ"
-			.getBytes(UTF_8);
+	private static final byte[] EX = "EX".getBytes(UTF_8);
 
-	private final byte[] payload;
-	private final byte[][] hashKeys;
+	private final PayloadGenerator payloads;
+	private final ThreadLocal<byte[][]> commandHolder = ThreadLocal.withInitial(this::newCommand);
+	private final byte[][] keys;
+	private int ttl;
+	private SetParams setParams;
 
 	public SETRoutine(URI jedisUri, int payloadSize, int keyCount) {
-		super(jedisUri);
+		this(jedisUri, payloadSize, keyCount, false);
+	}
 
-		this.payload = new byte[payloadSize];
-		for (int i = 0; i < payloadSize; i++) {
-			this.payload[i] = CHARS[(int) (Math.random() * CHARS.length)];
-		}
+	public SETRoutine(URI jedisUri, int payloadSize, int keyCount, boolean cluster) {
+		this(jedisUri, new PayloadGenerator(payloadSize), keyCount, cluster);
+	}
+
+	public SETRoutine(URI jedisUri, PayloadGenerator payloads, int keyCount, boolean cluster) {
+		super(jedisUri, cluster);
+
+		this.payloads = payloads;
 
-		hashKeys = new byte[keyCount][];
+		keys = new byte[keyCount][];
 		for (int i = 0; i < keyCount; i++) {
-			hashKeys[i] = String.format("%011d", i).getBytes(UTF_8);
+			byte[] hashKey = (getKeyTag(i % getKeyGroups()) + String.format("%011d", i)).getBytes(UTF_8);
+			keys[i] = new byte[KEY_PREFIX.length + hashKey.length];
+			System.arraycopy(KEY_PREFIX, 0, keys[i], 0, KEY_PREFIX.length);
+			System.arraycopy(hashKey, 0, keys[i], KEY_PREFIX.length, hashKey.length);
+		}
+	}
+
+	public int getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * @param ttl expiry of the keys set, in seconds, 0 to keep them
+	 */
+	public void setTtl(int ttl) {
+		this.ttl = ttl;
+		setParams = ttl > 0 ? SetParams.setParams().ex(ttl) : null;
+	}
+
+	@Override
+	public int getKeySpace() {
+		return keys.length;
+	}
+
+	@Override
+	protected void execute(Jedis jedis, int keyIndex) {
+		if (setParams != null) {
+			jedis.set(keys[keyIndex % keys.length], payloads.next(), setParams);
+		} else {
+			jedis.set(keys[keyIndex % keys.length], payloads.next());
 		}
 	}
 
 	@Override
-	public void execute(RoutineContext context) {
-		Jedis jedis = getJedis();
-		ByteArrayOutputStream s = new ByteArrayOutputStream();
-		try {
-			s.write(KEY_PREFIX);
-			s.write(hashKeys[context.getLoopIndex() % hashKeys.length]);
-		} catch (IOException e) {
-			// imposible
+	public void execute(Pipeline pipeline, int keyIndex) {
+		if (setParams != null) {
+			pipeline.set(keys[keyIndex % keys.length], payloads.next(), setParams);
+		} else {
+			pipeline.set(keys[keyIndex % keys.length], payloads.next());
 		}
-		byte[] key = s.toByteArray();
-		context.run(() -> {
-			jedis.set(key, payload);
-		});
+	}
+
+	@Override
+	public byte[][] command(int keyIndex) {
+		byte[][] command = commandHolder.get();
+		command[1] = keys[keyIndex % keys.length];
+		command[2] = payloads.next();
+		return command;
+	}
+
+	private byte[][] newCommand() {
+		return ttl > 0
+				? new byte[][] { Command.SET.getRaw(), null, null, EX, String.valueOf(ttl).getBytes(UTF_8) }
+				: new byte[][] { Command.SET.getRaw(), null, null };
 	}
 }
\ No newline at end of file
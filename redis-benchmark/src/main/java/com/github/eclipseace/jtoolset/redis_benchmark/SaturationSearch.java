@@ -0,0 +1,311 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.HdrHistogram.Histogram;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+/**
+ * Finds the highest load a target sustains within a latency SLO. Every step
+ * runs the routine on a fresh {@link MultiThreadTest} for a fixed time, with
+ * either the thread count or the open-loop target rate multiplied by a factor
+ * from one step to the next, until a step breaches the p99 or error rate
+ * objective. The gap between the last step within the SLO and the first
+ * breaching one is then bisected a few times to locate the knee. In rate mode
+ * p99 is read from the corrected histogram, so a target falling behind its
+ * schedule breaches the SLO rather than hiding the backlog.
+ */
+public class SaturationSearch {
+	public static final double DEFAULT_FACTOR = 2;
+	public static final long DEFAULT_STEP_MILLIS = 10000;
+	public static final int DEFAULT_MAX_STEPS = 10;
+	public static final int DEFAULT_REFINEMENTS = 2;
+	public static final double DEFAULT_MAX_ERROR_RATE = 0.001;
+
+	private final MultiThreadTest.Routine routine;
+	private final boolean rateMode;
+	private final double start;
+	private final double factor;
+	private final long sloP99Nanos;
+	private double maxErrorRate = DEFAULT_MAX_ERROR_RATE;
+	private int threads = 1;
+	private long loopInterval;
+	private long stepMillis = DEFAULT_STEP_MILLIS;
+	private int maxSteps = DEFAULT_MAX_STEPS;
+	private int refinements = DEFAULT_REFINEMENTS;
+	private long reportInterval;
+	private Consumer<MultiThreadTest> configurer = mtt -> {
+	};
+	private IntervalSampler.Listener intervalListener;
+	private Consumer<Step> stepListener = step -> {
+	};
+
+	/**
+	 * @param rateMode    step the target rate of an open-loop test with a
+	 *                    fixed thread count, rather than the thread count of a
+	 *                    closed-loop test
+	 * @param start       load of the first step, threads or ops/s
+	 * @param factor      load multiplier from one step to the next
+	 * @param sloP99Nanos highest acceptable p99 latency
+	 */
+	public SaturationSearch(MultiThreadTest.Routine routine, boolean rateMode, double start, double factor,
+			long sloP99Nanos) {
+		if (start <= 0 || factor <= 1) {
+			throw new IllegalArgumentException("Start must be positive and factor above 1");
+		}
+		this.routine = routine;
+		this.rateMode = rateMode;
+		this.start = start;
+		this.factor = factor;
+		this.sloP99Nanos = sloP99Nanos;
+	}
+
+	/**
+	 * @param spec {@code threads:<start>[:<factor>]} or
+	 *             {@code rate:<start>[:<factor>]}
+	 */
+	public static SaturationSearch parse(String spec, MultiThreadTest.Routine routine, long sloP99Nanos) {
+		String[] parts = spec.split(":");
+		if (parts.length < 2 || !"threads".equals(parts[0]) && !"rate".equals(parts[0])) {
+			throw new IllegalArgumentException("Unknown saturation search: " + spec);
+		}
+		return new SaturationSearch(routine, "rate".equals(parts[0]), Double.parseDouble(parts[1]),
+				parts.length > 2 ? Double.parseDouble(parts[2]) : DEFAULT_FACTOR, sloP99Nanos);
+	}
+
+	public boolean isRateMode() {
+		return rateMode;
+	}
+
+	/**
+	 * @param maxErrorRate highest acceptable fraction of failed operations
+	 */
+	public void setMaxErrorRate(double maxErrorRate) {
+		this.maxErrorRate = maxErrorRate;
+	}
+
+	/**
+	 * @param threads threads of every step in rate mode
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @param loopInterval sleep between loops in thread mode, in millis
+	 */
+	public void setLoopInterval(long loopInterval) {
+		this.loopInterval = loopInterval;
+	}
+
+	public void setStepDuration(long duration, TimeUnit unit) {
+		this.stepMillis = unit.toMillis(duration);
+	}
+
+	/**
+	 * @param maxSteps steps run while raising the load, not counting
+	 *                 refinements
+	 */
+	public void setMaxSteps(int maxSteps) {
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 * @param refinements bisection steps between the last step within the SLO
+	 *                    and the first breaching it
+	 */
+	public void setRefinements(int refinements) {
+		this.refinements = refinements;
+	}
+
+	/**
+	 * Applies the remaining settings, e.g. key distribution or warmup, to the
+	 * test of every step once its thread count and target rate are set.
+	 */
+	public void setConfigurer(Consumer<MultiThreadTest> configurer) {
+		this.configurer = configurer;
+	}
+
+	/**
+	 * Samples every step with an {@link IntervalSampler}, e.g. to show
+	 * progress.
+	 */
+	public void setIntervalListener(IntervalSampler.Listener intervalListener, long reportInterval) {
+		this.intervalListener = intervalListener;
+		this.reportInterval = reportInterval;
+	}
+
+	/**
+	 * @param stepListener called with the outcome of every step
+	 */
+	public void setStepListener(Consumer<Step> stepListener) {
+		this.stepListener = stepListener;
+	}
+
+	public Result run() throws Exception {
+		List<Step> steps = new ArrayList<>();
+		Step good = null;
+		Step bad = null;
+		double load = start;
+		for (int i = 0; i < maxSteps; i++) {
+			Step step = runStep(load);
+			steps.add(step);
+			if (!step.isWithinSlo()) {
+				bad = step;
+				break;
+			}
+			good = step;
+			load = rateMode ? load * factor : Math.max(load + 1, Math.ceil(load * factor));
+		}
+		for (int i = 0; i < refinements && good != null && bad != null; i++) {
+			double middle = (good.getLoad() + bad.getLoad()) / 2;
+			if (!rateMode) {
+				middle = Math.floor(middle);
+				if (middle <= good.getLoad()) {
+					break;
+				}
+			}
+			Step step = runStep(middle);
+			steps.add(step);
+			if (step.isWithinSlo()) {
+				good = step;
+			} else {
+				bad = step;
+			}
+		}
+		return new Result(steps, good, bad);
+	}
+
+	private Step runStep(double load) throws Exception {
+		int stepThreads = rateMode ? threads : (int) load;
+		MultiThreadTest mtt = new MultiThreadTest("step-", stepThreads, 0, Integer.MAX_VALUE,
+				rateMode ? 0 : loopInterval);
+		mtt.setDuration(stepMillis, TimeUnit.MILLISECONDS);
+		mtt.setTargetRate(rateMode ? load : 0);
+		configurer.accept(mtt);
+		IntervalSampler sampler = null;
+		if (intervalListener != null) {
+			sampler = new IntervalSampler(mtt, reportInterval);
+			sampler.addListener(intervalListener);
+			sampler.start();
+		}
+		try {
+			mtt.start(routine);
+			mtt.join();
+		} finally {
+			if (sampler != null) {
+				sampler.close();
+			}
+		}
+		Step step = mtt.compute(cc -> new Step(load, stepThreads, cc));
+		stepListener.accept(step);
+		return step;
+	}
+
+	/**
+	 * Outcome of one load level.
+	 */
+	public class Step {
+		private final double load;
+		private final int threads;
+		private final double throughput;
+		private final Histogram histogram;
+		private final double errorRate;
+
+		private Step(double load, int threads, MultiThreadTest.ComputeContext cc) {
+			this.load = load;
+			this.threads = threads;
+			this.histogram = rateMode ? cc.getCorrectedHistogram() : cc.getHistogram();
+			long ops = cc.getHistogram().getTotalCount();
+			this.throughput = cc.getMeasuredNanos() > 0 ? ops * 1e9 / cc.getMeasuredNanos() : 0;
+			this.errorRate = ops + cc.getTotalErrors() > 0 ? (double) cc.getTotalErrors() / (ops + cc.getTotalErrors())
+					: 0;
+		}
+
+		/**
+		 * @return threads, or target ops/s in rate mode
+		 */
+		public double getLoad() {
+			return load;
+		}
+
+		public int getThreads() {
+			return threads;
+		}
+
+		/**
+		 * @return measured ops/s
+		 */
+		public double getThroughput() {
+			return throughput;
+		}
+
+		/**
+		 * @return latencies the SLO is checked against, corrected in rate mode
+		 */
+		public Histogram getHistogram() {
+			return histogram;
+		}
+
+		public long getP99Nanos() {
+			return histogram.getValueAtPercentile(99);
+		}
+
+		public double getErrorRate() {
+			return errorRate;
+		}
+
+		public boolean isWithinSlo() {
+			return histogram.getTotalCount() > 0 && getP99Nanos() <= sloP99Nanos && errorRate <= maxErrorRate;
+		}
+	}
+
+	public class Result {
+		private final List<Step> steps;
+		private final Step knee;
+		private final Step breach;
+
+		private Result(List<Step> steps, Step knee, Step breach) {
+			this.steps = steps;
+			this.knee = knee;
+			this.breach = breach;
+		}
+
+		/**
+		 * @return every step by ascending load, the latency/throughput curve
+		 */
+		public List<Step> getCurve() {
+			List<Step> curve = new ArrayList<>(steps);
+			curve.sort(Comparator.comparingDouble(Step::getLoad));
+			return Collections.unmodifiableList(curve);
+		}
+
+		/**
+		 * @return the highest load within the SLO, null if even the first step
+		 *         breached it
+		 */
+		public Step getKnee() {
+			return knee;
+		}
+
+		/**
+		 * @return the lowest load breaching the SLO, null if none did
+		 */
+		public Step getBreach() {
+			return breach;
+		}
+
+		/**
+		 * @return the highest throughput measured within the SLO, 0 if none
+		 */
+		public double getMaxSustainableThroughput() {
+			return steps.stream().filter(Step::isWithinSlo).mapToDouble(Step::getThroughput).max().orElse(0);
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.SafeEncoder;
+import redis.clients.jedis.util.Slowlog;
+
+/**
+ * Polls the target over its own connection with {@code INFO},
+ * {@code LATENCY LATEST} and {@code SLOWLOG GET}, once per interval of an
+ * {@link IntervalSampler}, so server-side load can be read next to the
+ * latencies the clients saw. Probes the server rejects, e.g. when renamed,
+ * are skipped from then on.
+ */
+public class ServerMonitor implements Closeable {
+	public static final int DEFAULT_SLOWLOG_ENTRIES = 128;
+
+	private static final ProtocolCommand LATENCY = () -> SafeEncoder.encode("LATENCY");
+
+	private final Jedis jedis;
+	private int slowlogEntries = DEFAULT_SLOWLOG_ENTRIES;
+	private boolean latencySupported = true;
+	private boolean slowlogSupported = true;
+	private boolean slowlogPolled;
+	private long lastSlowlogId = -1;
+	private Map<String, Long> latencyTimestamps;
+	private long lastSample;
+	private double lastCpuSeconds = -1;
+
+	public ServerMonitor(URI uri) {
+		this.jedis = new Jedis(uri);
+	}
+
+	/**
+	 * @param slowlogEntries newest slow log entries fetched per poll, more
+	 *                       entries logged between two polls are missed
+	 */
+	public void setSlowlogEntries(int slowlogEntries) {
+		this.slowlogEntries = slowlogEntries;
+	}
+
+	/**
+	 * Polls the server. Connection errors are reported in the sample rather
+	 * than thrown, so a struggling server does not stop the run.
+	 */
+	public synchronized Sample sample() {
+		long now = System.nanoTime();
+		long elapsed = lastSample > 0 ? now - lastSample : 0;
+		lastSample = now;
+		try {
+			Map<String, String> info = parseInfo(jedis.info());
+			double cpuSeconds = parseDouble(info.get("used_cpu_sys")) + parseDouble(info.get("used_cpu_user"));
+			double cpuLoad = lastCpuSeconds >= 0 && elapsed > 0 ? (cpuSeconds - lastCpuSeconds) * 1e9 / elapsed : 0;
+			lastCpuSeconds = cpuSeconds;
+			return new Sample(info, cpuLoad, latencyEvents(), slowlog(), null);
+		} catch (RuntimeException e) {
+			jedis.disconnect();
+			return new Sample(Collections.emptyMap(), 0, Collections.emptyList(), Collections.emptyList(),
+					e.toString());
+		}
+	}
+
+	private List<LatencyEvent> latencyEvents() {
+		List<LatencyEvent> events = new ArrayList<>();
+		if (!latencySupported) {
+			return events;
+		}
+		List<?> reply;
+		try {
+			reply = (List<?>) jedis.sendCommand(LATENCY, "LATEST");
+		} catch (JedisDataException e) {
+			latencySupported = false;
+			return events;
+		}
+		boolean baseline = latencyTimestamps == null;
+		if (baseline) {
+			latencyTimestamps = new HashMap<>();
+		}
+		for (Object entry : reply) {
+			List<?> fields = (List<?>) entry;
+			LatencyEvent event = new LatencyEvent(SafeEncoder.encode((byte[]) fields.get(0)), (Long) fields.get(1),
+					(Long) fields.get(2), (Long) fields.get(3));
+			Long previous = latencyTimestamps.put(event.getName(), event.getTimestamp());
+			if (!baseline && (previous == null || previous != event.getTimestamp())) {
+				events.add(event);
+			}
+		}
+		return events;
+	}
+
+	private List<Slowlog> slowlog() {
+		if (!slowlogSupported) {
+			return Collections.emptyList();
+		}
+		List<Slowlog> entries;
+		try {
+			entries = jedis.slowlogGet(slowlogEntries);
+		} catch (JedisDataException e) {
+			slowlogSupported = false;
+			return Collections.emptyList();
+		}
+		return newEntries(entries);
+	}
+
+	/**
+	 * @return the entries logged since the previous call, none on the first
+	 *         call as it only takes the baseline
+	 */
+	List<Slowlog> newEntries(List<Slowlog> entries) {
+		List<Slowlog> fresh = new ArrayList<>();
+		// -1 until an entry is seen, ids start at 0
+		long newest = lastSlowlogId;
+		for (Slowlog entry : entries) {
+			if (entry.getId() > lastSlowlogId) {
+				fresh.add(entry);
+			}
+			newest = Math.max(newest, entry.getId());
+		}
+		boolean baseline = !slowlogPolled;
+		slowlogPolled = true;
+		lastSlowlogId = newest;
+		return baseline ? Collections.emptyList() : fresh;
+	}
+
+	static Map<String, String> parseInfo(String info) {
+		Map<String, String> values = new HashMap<>();
+		long keys = 0;
+		for (String line : info.split("\r?\n")) {
+			int colon = line.indexOf(':');
+			if (line.startsWith("#") || colon < 0) {
+				continue;
+			}
+			String name = line.substring(0, colon);
+			String value = line.substring(colon + 1).trim();
+			values.put(name, value);
+			if (name.startsWith("db") && value.startsWith("keys=")) {
+				int comma = value.indexOf(',');
+				keys += Long.parseLong(value.substring(5, comma < 0 ? value.length() : comma));
+			}
+		}
+		values.put("keys", String.valueOf(keys));
+		return values;
+	}
+
+	private static double parseDouble(String value) {
+		return value != null ? Double.parseDouble(value) : 0;
+	}
+
+	@Override
+	public void close() {
+		jedis.close();
+	}
+
+	/**
+	 * One poll of the server.
+	 */
+	public static class Sample {
+		private final Map<String, String> info;
+		private final double cpuLoad;
+		private final List<LatencyEvent> latencyEvents;
+		private final List<Slowlog> slowlog;
+		private final String error;
+
+		Sample(Map<String, String> info, double cpuLoad, List<LatencyEvent> latencyEvents, List<Slowlog> slowlog,
+				String error) {
+			this.info = info;
+			this.cpuLoad = cpuLoad;
+			this.latencyEvents = latencyEvents;
+			this.slowlog = slowlog;
+			this.error = error;
+		}
+
+		/**
+		 * @return raw {@code INFO} fields, plus {@code keys} summed over all
+		 *         databases
+		 */
+		public Map<String, String> getInfo() {
+			return Collections.unmodifiableMap(info);
+		}
+
+		public long getLong(String field) {
+			String value = info.get(field);
+			return value != null ? (long) Double.parseDouble(value) : 0;
+		}
+
+		public long getOpsPerSecond() {
+			return getLong("instantaneous_ops_per_sec");
+		}
+
+		public long getUsedMemory() {
+			return getLong("used_memory");
+		}
+
+		public long getConnectedClients() {
+			return getLong("connected_clients");
+		}
+
+		public long getKeys() {
+			return getLong("keys");
+		}
+
+		/**
+		 * @return server CPU time per wall-clock time since the previous poll,
+		 *         1 for one fully busy core
+		 */
+		public double getCpuLoad() {
+			return cpuLoad;
+		}
+
+		/**
+		 * @return events of the latency monitor that fired again since the
+		 *         previous poll, always empty unless
+		 *         {@code latency-monitor-threshold} is set on the server
+		 */
+		public List<LatencyEvent> getLatencyEvents() {
+			return Collections.unmodifiableList(latencyEvents);
+		}
+
+		/**
+		 * @return slow log entries added since the previous poll
+		 */
+		public List<Slowlog> getSlowlog() {
+			return Collections.unmodifiableList(slowlog);
+		}
+
+		/**
+		 * @return why the poll failed, null if it succeeded
+		 */
+		public String getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * One line of {@code LATENCY LATEST}.
+	 */
+	public static class LatencyEvent {
+		private final String name;
+		private final long timestamp;
+		private final long latestMillis;
+		private final long maxMillis;
+
+		LatencyEvent(String name, long timestamp, long latestMillis, long maxMillis) {
+			this.name = name;
+			this.timestamp = timestamp;
+			this.latestMillis = latestMillis;
+			this.maxMillis = maxMillis;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return when the event last happened, in epoch seconds
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public long getLatestMillis() {
+			return latestMillis;
+		}
+
+		public long getMaxMillis() {
+			return maxMillis;
+		}
+
+		@Override
+		public String toString() {
+			return name + " latest=" + latestMillis + "ms max=" + maxMillis + "ms";
+		}
+	}
+}
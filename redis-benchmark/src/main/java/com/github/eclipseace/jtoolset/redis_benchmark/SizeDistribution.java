@@ -0,0 +1,188 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Distribution of payload sizes, in bytes.
+ */
+public abstract class SizeDistribution {
+	public abstract int next(Random random);
+
+	public abstract int getMax();
+
+	public abstract double getMean();
+
+	public static SizeDistribution fixed(int size) {
+		checkSize(size);
+		return new SizeDistribution() {
+			@Override
+			public int next(Random random) {
+				return size;
+			}
+
+			@Override
+			public int getMax() {
+				return size;
+			}
+
+			@Override
+			public double getMean() {
+				return size;
+			}
+
+			@Override
+			public String toString() {
+				return String.valueOf(size);
+			}
+		};
+	}
+
+	/**
+	 * @return sizes in {@code [min, max]}
+	 */
+	public static SizeDistribution uniform(int min, int max) {
+		checkSize(min);
+		if (max < min) {
+			throw new IllegalArgumentException("Max size " + max + " below min size " + min);
+		}
+		return new SizeDistribution() {
+			@Override
+			public int next(Random random) {
+				return min + random.nextInt(max - min + 1);
+			}
+
+			@Override
+			public int getMax() {
+				return max;
+			}
+
+			@Override
+			public double getMean() {
+				return (min + max) / 2.0;
+			}
+
+			@Override
+			public String toString() {
+				return "uniform " + min + ".." + max;
+			}
+		};
+	}
+
+	/**
+	 * @param largeFraction fraction of payloads of the large size
+	 */
+	public static SizeDistribution bimodal(int small, int large, double largeFraction) {
+		checkSize(small);
+		checkSize(large);
+		if (!(largeFraction >= 0 && largeFraction <= 1)) {
+			throw new IllegalArgumentException("Large fraction must be in [0, 1]");
+		}
+		return new SizeDistribution() {
+			@Override
+			public int next(Random random) {
+				return random.nextDouble() < largeFraction ? large : small;
+			}
+
+			@Override
+			public int getMax() {
+				return Math.max(small, large);
+			}
+
+			@Override
+			public double getMean() {
+				return small * (1 - largeFraction) + large * largeFraction;
+			}
+
+			@Override
+			public String toString() {
+				return "bimodal " + small + "/" + large + ", " + largeFraction + " large";
+			}
+		};
+	}
+
+	/**
+	 * Samples from sizes recorded in production, e.g. with
+	 * {@code MEMORY USAGE} or {@code STRLEN}.
+	 */
+	public static SizeDistribution empirical(int[] sizes) {
+		if (sizes.length == 0) {
+			throw new IllegalArgumentException("No recorded sizes");
+		}
+		int max = 0;
+		double sum = 0;
+		for (int size : sizes) {
+			checkSize(size);
+			max = Math.max(max, size);
+			sum += size;
+		}
+		int maxSize = max;
+		double mean = sum / sizes.length;
+		return new SizeDistribution() {
+			@Override
+			public int next(Random random) {
+				return sizes[random.nextInt(sizes.length)];
+			}
+
+			@Override
+			public int getMax() {
+				return maxSize;
+			}
+
+			@Override
+			public double getMean() {
+				return mean;
+			}
+
+			@Override
+			public String toString() {
+				return String.format("recorded, %d samples, mean %.0f", sizes.length, mean);
+			}
+		};
+	}
+
+	/**
+	 * @param spec {@code <size>}, {@code uniform:<min>:<max>},
+	 *             {@code bimodal:<small>:<large>:<large fraction>} or
+	 *             {@code file:<path>} with one size per line
+	 */
+	public static SizeDistribution parse(String spec) throws IOException {
+		String[] parts = spec.split(":", -1);
+		try {
+			switch (parts[0]) {
+			case "uniform":
+				checkArgs(spec, parts, 2);
+				return uniform(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+			case "bimodal":
+				checkArgs(spec, parts, 3);
+				return bimodal(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Double.parseDouble(parts[3]));
+			case "file":
+				if (spec.length() <= "file:".length()) {
+					throw new IllegalArgumentException("Missing sizes file in " + spec);
+				}
+				return empirical(Files.readAllLines(Paths.get(spec.substring("file:".length()))).stream()
+						.map(String::trim).filter(line -> !line.isEmpty() && !line.startsWith("#"))
+						.mapToInt(Integer::parseInt).toArray());
+			default:
+				checkArgs(spec, parts, 0);
+				return fixed(Integer.parseInt(spec));
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid payload size " + spec + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static void checkArgs(String spec, String[] parts, int count) {
+		if (parts.length != count + 1) {
+			throw new IllegalArgumentException("Invalid payload size " + spec);
+		}
+	}
+
+	private static void checkSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Negative payload size " + size);
+		}
+	}
+}
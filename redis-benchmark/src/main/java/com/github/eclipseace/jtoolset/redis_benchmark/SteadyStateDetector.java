@@ -0,0 +1,96 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.util.Locale;
+
+import org.HdrHistogram.Histogram;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+/**
+ * Ends the warmup of a {@link MultiThreadTest} once warmup throughput and
+ * median latency have both stayed within a relative tolerance of their mean
+ * over a window of consecutive intervals. Intervals without completed
+ * operations restart the window.
+ */
+public class SteadyStateDetector implements IntervalSampler.Listener {
+	public static final int DEFAULT_WINDOW = 5;
+	public static final double DEFAULT_TOLERANCE = 0.1;
+
+	private final MultiThreadTest mtt;
+	private final double tolerance;
+	private final double[] throughputs;
+	private final double[] medians;
+	private int samples;
+
+	/**
+	 * @param window    consecutive intervals that must be stable
+	 * @param tolerance max coefficient of variation, e.g. 0.1 for 10%
+	 */
+	public SteadyStateDetector(MultiThreadTest mtt, int window, double tolerance) {
+		if (window < 2) {
+			throw new IllegalArgumentException("Steady-state window must span at least 2 intervals");
+		}
+		this.mtt = mtt;
+		this.tolerance = tolerance;
+		this.throughputs = new double[window];
+		this.medians = new double[window];
+	}
+
+	/**
+	 * @param spec {@code <window>:<tolerance>}, either part may be omitted
+	 */
+	public static SteadyStateDetector parse(MultiThreadTest mtt, String spec) {
+		String[] parts = spec.split(":");
+		int window = parts[0].isEmpty() ? DEFAULT_WINDOW : Integer.parseInt(parts[0]);
+		double tolerance = parts.length > 1 ? Double.parseDouble(parts[1]) : DEFAULT_TOLERANCE;
+		return new SteadyStateDetector(mtt, window, tolerance);
+	}
+
+	@Override
+	public void onInterval(IntervalSnapshot snapshot) {
+		if (!snapshot.isWarmingUp()) {
+			return;
+		}
+		Histogram h = snapshot.getWarmupIntervalHistogram();
+		if (h.getTotalCount() == 0) {
+			samples = 0;
+			return;
+		}
+		throughputs[samples % throughputs.length] = snapshot.getWarmupThroughput();
+		medians[samples % medians.length] = h.getValueAtPercentile(50);
+		samples++;
+		if (samples < throughputs.length) {
+			return;
+		}
+		double throughputVariation = variation(throughputs);
+		double medianVariation = variation(medians);
+		if (throughputVariation <= tolerance && medianVariation <= tolerance) {
+			mtt.endWarmup(String.format(Locale.ROOT, "steady over %d intervals (ops/s cv=%.3f, p50 cv=%.3f)",
+					throughputs.length, throughputVariation, medianVariation));
+		}
+	}
+
+	/**
+	 * @return coefficient of variation, standard deviation over mean
+	 */
+	private static double variation(double[] values) {
+		double sum = 0;
+		for (double value : values) {
+			sum += value;
+		}
+		double mean = sum / values.length;
+		if (mean == 0) {
+			return 0;
+		}
+		double squares = 0;
+		for (double value : values) {
+			squares += (value - mean) * (value - mean);
+		}
+		return Math.sqrt(squares / values.length) / mean;
+	}
+
+	@Override
+	public String toString() {
+		return "steady state over " + throughputs.length + " intervals within " + tolerance;
+	}
+}
@@ -0,0 +1,151 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Adds entries to streams from producer threads and reads them back through
+ * one consumer group from consumer threads, consumer {@code i} reading stream
+ * {@code i % streams}, so the consumers of a stream share its entries rather
+ * than each getting all of them. Entries are acknowledged once timed. Streams
+ * are capped near the max length. The group is created at the end of a stream,
+ * or reused if it already exists.
+ */
+public class StreamRoutine extends AbstractMessagingRoutine {
+	public static final String GROUP = "presstest";
+	public static final long DEFAULT_MAX_LENGTH = 100_000;
+	public static final int DEFAULT_READ_COUNT = 100;
+
+	private static final byte[] KEY_PREFIX = "presstest-stream:".getBytes(UTF_8);
+	private static final byte[] FIELD = "m".getBytes(UTF_8);
+	private static final byte[] APPROXIMATE = "~".getBytes(UTF_8);
+	private static final byte[] AUTO_ID = "*".getBytes(UTF_8);
+	private static final byte[] NEW_ENTRIES = ">".getBytes(UTF_8);
+
+	private final URI jedisUri;
+	private final byte[][] keys;
+	private long maxLength = DEFAULT_MAX_LENGTH;
+	private int readCount = DEFAULT_READ_COUNT;
+
+	public StreamRoutine(URI jedisUri, PayloadGenerator payloads, int streamCount, int consumers) {
+		super(payloads, consumers);
+		this.jedisUri = jedisUri;
+
+		keys = new byte[streamCount][];
+		for (int i = 0; i < streamCount; i++) {
+			byte[] index = String.format("%011d", i).getBytes(UTF_8);
+			keys[i] = new byte[KEY_PREFIX.length + index.length];
+			System.arraycopy(KEY_PREFIX, 0, keys[i], 0, KEY_PREFIX.length);
+			System.arraycopy(index, 0, keys[i], KEY_PREFIX.length, index.length);
+		}
+	}
+
+	public long getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * @param maxLength entries kept per stream, trimmed approximately
+	 */
+	public void setMaxLength(long maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	public int getReadCount() {
+		return readCount;
+	}
+
+	/**
+	 * @param readCount max entries per {@code XREADGROUP}
+	 */
+	public void setReadCount(int readCount) {
+		this.readCount = readCount;
+	}
+
+	@Override
+	public int getKeySpace() {
+		return keys.length;
+	}
+
+	@Override
+	protected Producer newProducer(int threadIndex) {
+		Jedis jedis = new Jedis(jedisUri);
+		byte[] maxLengthArg = String.valueOf(maxLength).getBytes(UTF_8);
+		return new Producer() {
+			@Override
+			protected void send(int keyIndex, byte[] message) {
+				jedis.sendCommand(Command.XADD, keys[keyIndex], Protocol.Keyword.MAXLEN.getRaw(), APPROXIMATE,
+						maxLengthArg, AUTO_ID, FIELD, message);
+			}
+
+			@Override
+			public void close() {
+				jedis.close();
+			}
+		};
+	}
+
+	@Override
+	protected Consumer newConsumer(int threadIndex) {
+		byte[] key = keys[threadIndex % keys.length];
+		byte[] group = bytes(GROUP);
+		byte[] consumer = bytes("consumer-" + threadIndex);
+		byte[] count = bytes(String.valueOf(readCount));
+		Jedis jedis = new Jedis(jedisUri, (int) getPollTimeout() + Protocol.DEFAULT_TIMEOUT);
+		try {
+			jedis.sendCommand(Command.XGROUP, Protocol.Keyword.CREATE.getRaw(), key, group, bytes("$"),
+					Protocol.Keyword.MKSTREAM.getRaw());
+		} catch (JedisDataException e) {
+			if (!e.getMessage().startsWith("BUSYGROUP")) {
+				jedis.close();
+				throw e;
+			}
+		}
+		return new Consumer() {
+			@Override
+			protected int poll(long timeoutMillis) {
+				List<?> streams = (List<?>) jedis.sendCommand(Command.XREADGROUP, Protocol.Keyword.GROUP.getRaw(),
+						group, consumer, Protocol.Keyword.COUNT.getRaw(), count, Protocol.Keyword.BLOCK.getRaw(),
+						bytes(String.valueOf(timeoutMillis)), Protocol.Keyword.STREAMS.getRaw(), key, NEW_ENTRIES);
+				if (streams == null) {
+					return 0;
+				}
+				List<?> entries = (List<?>) ((List<?>) streams.get(0)).get(1);
+				byte[][] ack = new byte[2 + entries.size()][];
+				ack[0] = key;
+				ack[1] = group;
+				for (int i = 0; i < entries.size(); i++) {
+					List<?> entry = (List<?>) entries.get(i);
+					List<?> fields = (List<?>) entry.get(1);
+					for (int f = 0; f + 1 < fields.size(); f += 2) {
+						if (Arrays.equals(FIELD, (byte[]) fields.get(f))) {
+							received((byte[]) fields.get(f + 1));
+						}
+					}
+					ack[2 + i] = (byte[]) entry.get(0);
+				}
+				if (!entries.isEmpty()) {
+					jedis.sendCommand(Command.XACK, ack);
+				}
+				return entries.size();
+			}
+
+			@Override
+			public void close() {
+				jedis.close();
+			}
+		};
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(UTF_8);
+	}
+}
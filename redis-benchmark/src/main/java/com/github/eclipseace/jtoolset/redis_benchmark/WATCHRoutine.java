@@ -0,0 +1,86 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.net.URI;
+import java.util.List;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Increments a counter optimistically: {@code WATCH}, {@code GET}, then
+ * {@code SET} of the next value in {@code MULTI}/{@code EXEC}, retried while
+ * other clients change the key in between. Few keys and many threads make for
+ * high contention. Aborted transactions are counted under
+ * {@value #ABORTS_COUNTER} and retries under {@value #RETRIES_COUNTER}; an
+ * operation still aborted after the max retries fails.
+ */
+public class WATCHRoutine extends AbstractSharedJedisRoutine {
+	public static final String ABORTS_COUNTER = "watch:aborts";
+	public static final String RETRIES_COUNTER = "watch:retries";
+	public static final int DEFAULT_MAX_RETRIES = 100;
+
+	private static final byte[] KEY_PREFIX = "presstest-watch:".getBytes(UTF_8);
+
+	private final byte[][] keys;
+	private int maxRetries = DEFAULT_MAX_RETRIES;
+
+	public WATCHRoutine(URI jedisUri, int keyCount) {
+		super(jedisUri);
+
+		keys = new byte[keyCount][];
+		for (int i = 0; i < keyCount; i++) {
+			byte[] index = String.format("%011d", i).getBytes(UTF_8);
+			keys[i] = new byte[KEY_PREFIX.length + index.length];
+			System.arraycopy(KEY_PREFIX, 0, keys[i], 0, KEY_PREFIX.length);
+			System.arraycopy(index, 0, keys[i], KEY_PREFIX.length, index.length);
+		}
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	@Override
+	public int getKeySpace() {
+		return keys.length;
+	}
+
+	@Override
+	protected void execute(Jedis jedis, int keyIndex) {
+		execute(jedis, keyIndex, null);
+	}
+
+	@Override
+	protected void execute(Jedis jedis, int keyIndex, RoutineContext context) {
+		byte[] key = keys[keyIndex % keys.length];
+		for (int attempt = 0;; attempt++) {
+			jedis.watch(key);
+			byte[] value = jedis.get(key);
+			long next = value == null ? 1 : Long.parseLong(new String(value, UTF_8)) + 1;
+			Transaction transaction = jedis.multi();
+			transaction.set(key, String.valueOf(next).getBytes(UTF_8));
+			List<Object> replies = transaction.exec();
+			if (replies != null) {
+				return;
+			}
+			if (context != null) {
+				context.getCounter(ABORTS_COUNTER).increment();
+			}
+			if (attempt >= maxRetries) {
+				throw new JedisException("WATCH conflicts persisted after " + maxRetries + " retries");
+			}
+			if (context != null) {
+				context.getCounter(RETRIES_COUNTER).increment();
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+/**
+ * Runs a weighted mix of routines in one session: every loop picks one
+ * operation at random according to the weights, and its latency is recorded
+ * both in the main histogram and under the operation's own metric.
+ */
+public class WorkloadRoutine implements MultiThreadTest.Routine {
+	private final List<Operation> operations;
+	private final double[] cumulativeWeights;
+
+	public WorkloadRoutine(List<Operation> operations) {
+		if (operations.isEmpty()) {
+			throw new IllegalArgumentException("Workload has no operations");
+		}
+		this.operations = new ArrayList<>(operations);
+		this.cumulativeWeights = new double[operations.size()];
+		double total = 0;
+		for (int i = 0; i < operations.size(); i++) {
+			if (operations.get(i).getWeight() <= 0) {
+				throw new IllegalArgumentException("Weight of " + operations.get(i).getName() + " must be positive");
+			}
+			total += operations.get(i).getWeight();
+			cumulativeWeights[i] = total;
+		}
+	}
+
+	/**
+	 * Reads a workload definition:
+	 *
+	 * <pre>
+	 * operations=read,update
+	 * read.type=mget:10
+	 * read.weight=80
+	 * update.type=hset
+	 * update.weight=20
+	 * update.payload=512
+	 * </pre>
+	 *
+	 * {@code type} takes the same values as the {@code --type} option and
+	 * {@code payload} the same as {@code --payload}, defaulting to
+	 * {@code defaultPayloads}. Payloads of all operations overriding it share
+	 * one buffer and pool budget.
+	 */
+	public static WorkloadRoutine load(Properties props, PayloadGenerator defaultPayloads, RoutineFactory factory)
+			throws Exception {
+		List<String> names = getOperationNames(props);
+		List<SizeDistribution> sizes = new ArrayList<>();
+		for (String name : names) {
+			String payload = props.getProperty(name + ".payload");
+			if (payload != null) {
+				sizes.add(SizeDistribution.parse(payload));
+			}
+		}
+		Iterator<PayloadGenerator> generators = sizes.isEmpty() ? Collections.emptyIterator()
+				: PayloadGenerator.shared(sizes, defaultPayloads.getCompressibility()).iterator();
+
+		List<Operation> operations = new ArrayList<>();
+		for (String name : names) {
+			String type = getType(props, name);
+			double weight = Double.parseDouble(props.getProperty(name + ".weight", "1"));
+			PayloadGenerator payloads = props.getProperty(name + ".payload") == null ? defaultPayloads
+					: generators.next();
+			operations.add(new Operation(name, type, weight, factory.create(type, payloads)));
+		}
+		return new WorkloadRoutine(operations);
+	}
+
+	/**
+	 * @return the type of every operation of a workload definition
+	 */
+	public static List<String> getTypes(Properties props) {
+		List<String> types = new ArrayList<>();
+		for (String name : getOperationNames(props)) {
+			types.add(getType(props, name));
+		}
+		return types;
+	}
+
+	private static List<String> getOperationNames(Properties props) {
+		String names = props.getProperty("operations");
+		if (names == null) {
+			throw new IllegalArgumentException("Workload does not define operations");
+		}
+		List<String> trimmed = new ArrayList<>();
+		for (String name : names.split(",")) {
+			trimmed.add(name.trim());
+		}
+		return trimmed;
+	}
+
+	private static String getType(Properties props, String name) {
+		String type = props.getProperty(name + ".type");
+		if (type == null) {
+			throw new IllegalArgumentException("Workload operation " + name + " has no type");
+		}
+		return type;
+	}
+
+	public List<Operation> getOperations() {
+		return Collections.unmodifiableList(operations);
+	}
+
+	@Override
+	public void execute(RoutineContext context) {
+		double r = ThreadLocalRandom.current().nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+		int i = 0;
+		while (i < cumulativeWeights.length - 1 && r >= cumulativeWeights[i]) {
+			i++;
+		}
+		Operation operation = operations.get(i);
+		operation.getRoutine().execute(context.forOperation(operation.getName()));
+	}
+
+	@Override
+	public void beforeLoop() {
+		for (Operation operation : operations) {
+			operation.getRoutine().beforeLoop();
+		}
+	}
+
+	@Override
+	public void afterLoop() {
+		for (Operation operation : operations) {
+			operation.getRoutine().afterLoop();
+		}
+	}
+
+	@FunctionalInterface
+	public static interface RoutineFactory {
+		MultiThreadTest.Routine create(String type, PayloadGenerator payloads) throws Exception;
+	}
+
+	public static class Operation {
+		private final String name;
+		private final String type;
+		private final double weight;
+		private final MultiThreadTest.Routine routine;
+
+		public Operation(String name, String type, double weight, MultiThreadTest.Routine routine) {
+			this.name = name;
+			this.type = type;
+			this.weight = weight;
+			this.routine = routine;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public double getWeight() {
+			return weight;
+		}
+
+		public MultiThreadTest.Routine getRoutine() {
+			return routine;
+		}
+
+		@Override
+		public String toString() {
+			return name + "=" + type + " x" + weight;
+		}
+	}
+}
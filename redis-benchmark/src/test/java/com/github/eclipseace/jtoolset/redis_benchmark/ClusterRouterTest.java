@@ -0,0 +1,94 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+class ClusterRouterTest {
+	private static final String HOST = "127.0.0.1";
+
+	private RespServer a;
+	private RespServer b;
+
+	@BeforeEach
+	void start() throws Exception {
+		a = new RespServer(0, 1);
+		b = new RespServer(0, 1);
+		for (RespServer server : new RespServer[] { a, b }) {
+			server.assignSlots(0, 8191, HOST, a.getPort());
+			server.assignSlots(8192, ClusterSlots.SLOT_COUNT - 1, HOST, b.getPort());
+		}
+	}
+
+	@AfterEach
+	void stop() {
+		a.close();
+		b.close();
+	}
+
+	@Test
+	void routesKeysToSlotOwners() {
+		try (ClusterRouter router = new ClusterRouter(URI.create("redis://" + HOST + ":" + a.getPort()))) {
+			assertThat(router.getNodes()).containsExactlyInAnyOrder(HOST + ":" + a.getPort(), HOST + ":" + b.getPort());
+			router.send(set(100));
+			router.send(set(10000));
+			router.send(set(10001));
+		}
+		assertThat(a.size()).isEqualTo(1);
+		assertThat(b.size()).isEqualTo(2);
+	}
+
+	@Test
+	void followsMovedAndAskRedirections() throws Exception {
+		ClusterRouter router = new ClusterRouter(URI.create("redis://" + HOST + ":" + b.getPort()));
+		for (RespServer server : new RespServer[] { a, b }) {
+			server.assignSlots(10000, 10000, HOST, a.getPort());
+		}
+		a.migrateSlot(100, HOST, b.getPort());
+
+		MultiThreadTest mtt = new MultiThreadTest("cluster-", 1, 0, 2, 0);
+		mtt.start(new MultiThreadTest.Routine() {
+			@Override
+			public void execute(RoutineContext context) {
+				context.run(() -> router.send(context, set(10000)));
+				context.run(() -> router.send(context, set(100)));
+			}
+
+			@Override
+			public void beforeLoop() {
+			}
+
+			@Override
+			public void afterLoop() {
+				router.close();
+			}
+		});
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		mtt.compute(cc -> {
+			assertThat(cc.getTotalErrors()).isZero();
+			assertThat(cc.getCounters()).containsEntry(ClusterRouter.MOVED_COUNTER, 1L)
+					.containsEntry(ClusterRouter.ASK_COUNTER, 2L);
+			assertThat(cc.getHistogram(ClusterRouter.NODE_METRIC_PREFIX + HOST + ":" + a.getPort()).getTotalCount())
+					.isEqualTo(2);
+			assertThat(cc.getHistogram(ClusterRouter.NODE_METRIC_PREFIX + HOST + ":" + b.getPort()).getTotalCount())
+					.isEqualTo(2);
+			return null;
+		});
+		assertThat(a.size()).isEqualTo(1);
+		assertThat(b.size()).isEqualTo(1);
+	}
+
+	private static byte[][] set(int slot) {
+		return new byte[][] { "SET".getBytes(UTF_8), (ClusterSlots.hashTag(slot) + "key").getBytes(UTF_8),
+				"value".getBytes(UTF_8) };
+	}
+}
@@ -0,0 +1,142 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CoordinatorTest {
+	private RespServer server;
+	private List<Agent> agents = new ArrayList<>();
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new RespServer(0, 2);
+		for (int i = 0; i < 2; i++) {
+			Agent agent = new Agent(0, Main::run);
+			agents.add(agent);
+			Thread thread = new Thread(() -> {
+				try {
+					agent.serve();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	@AfterEach
+	void stop() throws IOException {
+		for (Agent agent : agents) {
+			agent.close();
+		}
+		server.close();
+	}
+
+	@Test
+	void mergesAgentHistograms() throws Exception {
+		Coordinator coordinator = new Coordinator(Arrays.asList(
+				new InetSocketAddress("127.0.0.1", agents.get(0).getPort()),
+				new InetSocketAddress("127.0.0.1", agents.get(1).getPort())));
+		coordinator.setStartDelay(500);
+		List<IntervalSnapshot> snapshots = new ArrayList<>();
+		IntervalSnapshot last = coordinator.run(Arrays.asList("-u", "redis://127.0.0.1:" + server.getPort(),
+				"-y", "set:100", "-t", "2", "-h", "0", "-l", "500", "-o", "0", "-I", "100"), snapshots::add);
+
+		assertThat(last.getHistogram().getTotalCount()).isEqualTo(2 * 2 * 500);
+		Histogram intervals = new Histogram(3);
+		for (IntervalSnapshot snapshot : snapshots) {
+			intervals.add(snapshot.getIntervalHistogram());
+		}
+		assertThat(intervals).isEqualTo(last.getHistogram());
+		assertThat(snapshots).anyMatch(snapshot -> snapshot.getActiveThreads() == 4);
+		assertThat(last.getJvmSample()).isNotNull();
+		assertThat(last.getJvmSample().getHiccupHistogram().getTotalCount()).isPositive();
+	}
+
+	@Test
+	void repliesToMalformedRequests() throws Exception {
+		for (String request : new String[] { "R\tabc\t1\n", "R\t0\t2\n-u\n" }) {
+			try (Socket socket = new Socket("127.0.0.1", agents.get(0).getPort())) {
+				socket.getOutputStream().write(request.getBytes(UTF_8));
+				socket.shutdownOutput();
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+				assertThat(in.readLine()).startsWith(Coordinator.FAILED + "\t");
+			}
+		}
+	}
+
+	@Test
+	void reportsAgentFailures() {
+		Coordinator coordinator = new Coordinator(Arrays.asList(
+				new InetSocketAddress("127.0.0.1", agents.get(0).getPort())));
+		coordinator.setStartDelay(0);
+		assertThatThrownBy(() -> coordinator.run(Arrays.asList("-u", "redis://127.0.0.1:1", "-y", "nope"),
+				snapshot -> {
+				})).isInstanceOf(IOException.class).hasMessageContaining("failed");
+	}
+
+	@Test
+	void losesSilentAgents() throws Exception {
+		try (ServerSocket silent = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			Coordinator coordinator = new Coordinator(Arrays.asList(
+					new InetSocketAddress("127.0.0.1", silent.getLocalPort())));
+			coordinator.setAgentTimeout(200);
+			assertThatThrownBy(() -> coordinator.run(Arrays.asList("-y", "set"), snapshot -> {
+			})).isInstanceOf(IOException.class).hasMessageContaining("silent for 200ms");
+		}
+	}
+
+	@Test
+	void releasesResourcesWhenCoordinatorIsLost() throws Exception {
+		assertThatThrownBy(() -> Main.run(Arrays.asList("-u", "redis://127.0.0.1:" + server.getPort(), "-y", "set:100",
+				"-t", "1", "-h", "0", "-l", "20", "-o", "0", "-I", "100"), snapshot -> {
+					throw new IOException("coordinator lost");
+				}, 0)).isInstanceOf(IOException.class);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (hiccupMeterRunning() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(hiccupMeterRunning()).isFalse();
+	}
+
+	private static boolean hiccupMeterRunning() {
+		return Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals("hiccup-meter"));
+	}
+
+	@Test
+	void refusesLocalFilesFromCoordinator() {
+		assertThat(agents.get(0).getAddress().isLoopbackAddress()).isTrue();
+		Coordinator coordinator = new Coordinator(Arrays.asList(
+				new InetSocketAddress("127.0.0.1", agents.get(0).getPort())));
+		coordinator.setStartDelay(0);
+		String uri = "redis://127.0.0.1:" + server.getPort();
+		assertThatThrownBy(() -> coordinator.run(Arrays.asList("-u", uri, "-y", "set", "--csv", "out.csv"),
+				snapshot -> {
+				})).isInstanceOf(IOException.class).hasMessageContaining("--csv");
+		assertThatThrownBy(() -> coordinator.run(Arrays.asList("-u", uri, "-y", "evalsha:1:script.lua"),
+				snapshot -> {
+				})).isInstanceOf(IOException.class).hasMessageContaining("local file");
+		assertThatThrownBy(() -> coordinator.run(Arrays.asList("-u", uri, "-y", "set", "-p", "file:/etc/passwd"),
+				snapshot -> {
+				})).isInstanceOf(IOException.class).hasMessageContaining("--payload file:")
+						.hasMessageNotContaining("root");
+	}
+}
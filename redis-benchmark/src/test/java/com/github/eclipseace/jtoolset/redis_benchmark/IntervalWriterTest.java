@@ -0,0 +1,280 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.load_harness.JvmMonitor;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+class IntervalWriterTest {
+	private static final String METRIC = "get value";
+
+	private MultiThreadTest mtt;
+	private JvmMonitor jvmMonitor;
+
+	@BeforeEach
+	void run() throws Exception {
+		mtt = new MultiThreadTest("writer-", 1, 0, 100, 0);
+		jvmMonitor = new JvmMonitor();
+		mtt.setJvmMonitor(jvmMonitor);
+		mtt.compute(cc -> null);
+		mtt.start(new MultiThreadTest.Routine() {
+			@Override
+			public void execute(RoutineContext context) {
+				context.run(() -> context.getRecorder(METRIC).record(1000));
+				context.getCounter("hits").increment();
+			}
+
+			@Override
+			public void beforeLoop() {
+			}
+
+			@Override
+			public void afterLoop() {
+			}
+		});
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void writesCsvRows() throws Exception {
+		StringWriter out = new StringWriter();
+		try (CsvIntervalWriter writer = new CsvIntervalWriter(out)) {
+			writer.onInterval(snapshot());
+			writer.onInterval(snapshot());
+		}
+		jvmMonitor.close();
+
+		String[] lines = out.toString().split("\n");
+		assertThat(lines).hasSize(3);
+		String[] header = lines[0].split(",", -1);
+		assertThat(header).startsWith("timestamp", "elapsed_s").contains("ops_per_s", "p99_ms", "client_stall");
+		for (int i = 1; i < lines.length; i++) {
+			String[] row = lines[i].split(",", -1);
+			assertThat(row).hasSameSizeAs(header);
+			assertThat(row[3]).isEqualTo("measure");
+		}
+		assertThat(lines[1].split(",", -1)[column(header, "client_stall")]).isIn("0", "1");
+		assertThat(lines[1].split(",", -1)[column(header, "server_ops_per_s")]).isEmpty();
+	}
+
+	@Test
+	void writesJsonLines() throws Exception {
+		StringWriter out = new StringWriter();
+		try (JsonIntervalWriter writer = new JsonIntervalWriter(out)) {
+			writer.onInterval(snapshot());
+			writer.onInterval(snapshot());
+		}
+		jvmMonitor.close();
+
+		String[] lines = out.toString().split("\n");
+		assertThat(lines).hasSize(2);
+		@SuppressWarnings("unchecked")
+		Map<String, Object> first = (Map<String, Object>) new JsonReader(lines[0]).read();
+		assertThat(first).containsKeys("timestamp", "ops_per_s", "latency", "client", "metrics", "counters");
+		assertThat(first.get("phase")).isEqualTo("measure");
+		assertThat(first.get("metrics")).asInstanceOf(InstanceOfAssertFactories.MAP).containsKey(METRIC);
+		assertThat(first.get("counters")).asInstanceOf(InstanceOfAssertFactories.MAP).containsEntry("hits", 100.0);
+		assertThat(new JsonReader(lines[1]).read()).isInstanceOf(Map.class);
+	}
+
+	@Test
+	void writesReadableHdrLog() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (HdrLogIntervalWriter writer = new HdrLogIntervalWriter(new PrintStream(bytes, false, "UTF-8"))) {
+			writer.onInterval(snapshot());
+			writer.onInterval(snapshot());
+		}
+		jvmMonitor.close();
+
+		HistogramLogReader reader = new HistogramLogReader(new ByteArrayInputStream(bytes.toByteArray()));
+		long untagged = 0;
+		int intervals = 0;
+		Set<String> tags = new HashSet<>();
+		EncodableHistogram histogram;
+		while ((histogram = reader.nextIntervalHistogram()) != null) {
+			if (histogram.getTag() == null) {
+				untagged += ((Histogram) histogram).getTotalCount();
+				intervals++;
+			} else {
+				tags.add(histogram.getTag());
+			}
+		}
+		assertThat(intervals).isEqualTo(2);
+		assertThat(untagged).isEqualTo(100);
+		assertThat(tags).contains(HdrLogIntervalWriter.HICCUP_TAG, "get_value");
+	}
+
+	@Test
+	void reportsListenerFailuresAsEvents() throws Exception {
+		List<IntervalSnapshot> snapshots = new CopyOnWriteArrayList<>();
+		IntervalSampler sampler = new IntervalSampler(mtt, 20);
+		sampler.addListener(snapshot -> {
+			throw new IOException("disk full");
+		});
+		sampler.addListener(snapshots::add);
+		sampler.start();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (snapshots.size() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThatThrownBy(sampler::close).isInstanceOf(IOException.class).hasRootCauseMessage("disk full");
+		jvmMonitor.close();
+
+		assertThat(snapshots.get(0).getEvents()).noneMatch(event -> event.toString().contains("disk full"));
+		assertThat(snapshots.get(1).getEvents()).contains("Interval listener failed: java.io.IOException: disk full");
+	}
+
+	private IntervalSnapshot snapshot() {
+		return mtt.compute(cc -> new IntervalSnapshot(cc, cc.getIntervalNanos(), 0, null));
+	}
+
+	private static int column(String[] header, String name) {
+		for (int i = 0; i < header.length; i++) {
+			if (header[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	/**
+	 * Strict reader of the JSON subset the writer emits, failing on anything
+	 * malformed.
+	 */
+	private static class JsonReader {
+		private final String json;
+		private int pos;
+
+		private JsonReader(String json) {
+			this.json = json;
+		}
+
+		private Object read() {
+			Object value = value();
+			if (pos != json.length()) {
+				throw error("trailing characters");
+			}
+			return value;
+		}
+
+		private Object value() {
+			char c = peek();
+			if (c == '{') {
+				Map<String, Object> object = new LinkedHashMap<>();
+				pos++;
+				if (peek() != '}') {
+					do {
+						String key = string();
+						expect(':');
+						object.put(key, value());
+					} while (accept(','));
+				}
+				expect('}');
+				return object;
+			} else if (c == '[') {
+				List<Object> array = new ArrayList<>();
+				pos++;
+				if (peek() != ']') {
+					do {
+						array.add(value());
+					} while (accept(','));
+				}
+				expect(']');
+				return array;
+			} else if (c == '"') {
+				return string();
+			} else if (json.startsWith("true", pos) || json.startsWith("false", pos)) {
+				boolean value = json.startsWith("true", pos);
+				pos += value ? 4 : 5;
+				return value;
+			}
+			int start = pos;
+			while (pos < json.length() && "+-.eE0123456789".indexOf(json.charAt(pos)) >= 0) {
+				pos++;
+			}
+			try {
+				return Double.parseDouble(json.substring(start, pos));
+			} catch (NumberFormatException e) {
+				throw error("invalid value");
+			}
+		}
+
+		private String string() {
+			expect('"');
+			StringBuilder sb = new StringBuilder();
+			char c;
+			while ((c = next()) != '"') {
+				if (c == '\\') {
+					c = next();
+					if (c == 'u') {
+						sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+						pos += 4;
+					} else if (c == '"' || c == '\\') {
+						sb.append(c);
+					} else {
+						throw error("invalid escape");
+					}
+				} else if (c < 0x20) {
+					throw error("unescaped control character");
+				} else {
+					sb.append(c);
+				}
+			}
+			return sb.toString();
+		}
+
+		private boolean accept(char c) {
+			if (peek() == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) {
+			if (next() != c) {
+				throw error("expected " + c);
+			}
+		}
+
+		private char peek() {
+			if (pos >= json.length()) {
+				throw error("unexpected end");
+			}
+			return json.charAt(pos);
+		}
+
+		private char next() {
+			char c = peek();
+			pos++;
+			return c;
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at " + pos + ": " + json);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+import redis.clients.jedis.Jedis;
+
+class MessagingRoutineTest {
+	private RespServer server;
+	private URI uri;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new RespServer(0, 2);
+		uri = URI.create("redis://127.0.0.1:" + server.getPort());
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void fansOutPublishedMessages() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("pubsub-", 5, 50, 100, 0);
+		PubSubRoutine routine = new PubSubRoutine(uri, new PayloadGenerator(64), 1, 3);
+		routine.setDrainTimeout(200);
+		mtt.start(routine);
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		mtt.compute(cc -> {
+			assertThat(cc.getTotalErrors()).isZero();
+			assertThat(cc.getHistogram().getTotalCount()).isEqualTo(2 * 100);
+			assertThat(cc.getCounters()).containsEntry(PubSubRoutine.DELIVERIES_COUNTER, 3L * 2 * 100);
+			assertThat(cc.getHistogram(AbstractMessagingRoutine.E2E_METRIC).getTotalCount()).isEqualTo(3 * 2 * 100);
+			return null;
+		});
+	}
+
+	@Test
+	void sharesStreamEntriesAcrossGroupConsumers() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("stream-", 4, 50, 100, 0);
+		StreamRoutine routine = new StreamRoutine(uri, new PayloadGenerator(8), 1, 2);
+		routine.setDrainTimeout(200);
+		mtt.start(routine);
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		mtt.compute(cc -> {
+			assertThat(cc.getTotalErrors()).isZero();
+			assertThat(cc.getHistogram(AbstractMessagingRoutine.E2E_METRIC).getTotalCount()).isEqualTo(2 * 100);
+			return null;
+		});
+		try (Jedis jedis = new Jedis(uri)) {
+			assertThat(jedis.xlen("presstest-stream:00000000000")).isEqualTo(2 * 100);
+		}
+	}
+}
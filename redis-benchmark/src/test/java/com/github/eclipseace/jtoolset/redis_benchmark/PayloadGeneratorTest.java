@@ -0,0 +1,64 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Test;
+
+class PayloadGeneratorTest {
+
+	@Test
+	void drawsSizesFromDistribution() {
+		PayloadGenerator payloads = new PayloadGenerator(SizeDistribution.bimodal(100, 10000, 0.2), 0);
+		int large = 0;
+		for (int i = 0; i < 10000; i++) {
+			int length = payloads.next().length;
+			assertThat(length).isIn(100, 10000);
+			if (length == 10000) {
+				large++;
+			}
+		}
+		assertThat(large / 10000.0).isBetween(0.1, 0.3);
+	}
+
+	@Test
+	void rejectsInvalidSizes() {
+		for (String spec : new String[] { "-1", "uniform:10:5", "uniform:-5:5", "uniform:10", "bimodal:1:2",
+				"bimodal:1:2:1.5", "bimodal:1:2:0.5:3", "1k", "file:" }) {
+			assertThatThrownBy(() -> SizeDistribution.parse(spec)).as(spec)
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test
+	void sharesOneBudgetAcrossDistributions() {
+		List<PayloadGenerator> generators = PayloadGenerator.shared(
+				Arrays.asList(SizeDistribution.fixed(100), SizeDistribution.uniform(1000, 2000)), 0);
+		assertThat(generators.get(0).next()).hasSize(100);
+		assertThat(generators.get(1).next().length).isBetween(1000, 2000);
+	}
+
+	@Test
+	void controlsCompressibility() {
+		double random = compressionRatio(new PayloadGenerator(SizeDistribution.fixed(64 * 1024), 0).next());
+		double half = compressionRatio(new PayloadGenerator(SizeDistribution.fixed(64 * 1024), 0.5).next());
+		double most = compressionRatio(new PayloadGenerator(SizeDistribution.fixed(64 * 1024), 0.9).next());
+		assertThat(random).isGreaterThan(half);
+		assertThat(half).isGreaterThan(most);
+		assertThat(most).isLessThan(0.2);
+	}
+
+	private static double compressionRatio(byte[] data) {
+		Deflater deflater = new Deflater();
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] out = new byte[data.length * 2];
+		int compressed = deflater.deflate(out);
+		deflater.end();
+		return (double) compressed / data.length;
+	}
+}
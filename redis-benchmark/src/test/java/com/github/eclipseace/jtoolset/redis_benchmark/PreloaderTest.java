@@ -0,0 +1,50 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import redis.clients.jedis.Jedis;
+
+class PreloaderTest {
+	private RespServer server;
+	private URI uri;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new RespServer(0, 2);
+		uri = URI.create("redis://127.0.0.1:" + server.getPort());
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void loadsInParallelAndSkipsExistingKeys() {
+		IntFunction<byte[][]> set = i -> new byte[][] { "SET".getBytes(UTF_8), ("k" + i).getBytes(UTF_8),
+				("v" + i).getBytes(UTF_8) };
+		IntFunction<byte[][]> exists = i -> new byte[][] { "EXISTS".getBytes(UTF_8), ("k" + i).getBytes(UTF_8) };
+		Preloader preloader = new Preloader(uri);
+		preloader.setConnections(4);
+		preloader.setBatchSize(100);
+		assertThat(preloader.load(10_000, set, exists)).isEqualTo(10_000);
+		assertThat(server.size()).isEqualTo(10_000);
+
+		try (Jedis jedis = new Jedis(uri)) {
+			jedis.del("k42", "k9999");
+		}
+		preloader.setSkipExisting(true);
+		assertThat(preloader.load(10_000, set, exists)).isEqualTo(2);
+		try (Jedis jedis = new Jedis(uri)) {
+			assertThat(jedis.get("k9999")).isEqualTo("v9999");
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RespClientTest {
+	private RespServer server;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new RespServer(0, 1);
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void selectsDatabaseBeforeReturning() throws Exception {
+		try (RespClient client = new RespClient(uri("/0"), 4, 2)) {
+			CompletableFuture<Object> reply = new CompletableFuture<>();
+			client.nextConnection().send(RespWriter.command("PING".getBytes(UTF_8)), (r, e) -> reply.complete(r));
+			assertThat(reply.get(5, TimeUnit.SECONDS)).isEqualTo("PONG");
+		}
+	}
+
+	@Test
+	void failsOnRejectedSelect() {
+		assertThatThrownBy(() -> new RespClient(uri("/1"), 2, 1)).isInstanceOf(IOException.class)
+				.hasMessageContaining("DB index is out of range");
+	}
+
+	private URI uri(String path) {
+		return URI.create("redis://:secret@127.0.0.1:" + server.getPort() + path);
+	}
+}
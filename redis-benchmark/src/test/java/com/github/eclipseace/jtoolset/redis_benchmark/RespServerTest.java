@@ -0,0 +1,93 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+class RespServerTest {
+	private RespServer server;
+	private URI uri;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new RespServer(0, 2);
+		uri = URI.create("redis://127.0.0.1:" + server.getPort());
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void servesRoutineCommands() {
+		try (Jedis jedis = new Jedis(uri)) {
+			assertThat(jedis.ping()).isEqualTo("PONG");
+			assertThat(jedis.set("a", "1")).isEqualTo("OK");
+			assertThat(jedis.get("a")).isEqualTo("1");
+			assertThat(jedis.mget("a", "missing")).isEqualTo(Arrays.asList("1", null));
+			assertThat(jedis.hset("h", "f", "v")).isEqualTo(1L);
+			assertThat(jedis.hmget("h", "f", "g")).isEqualTo(Arrays.asList("v", null));
+			assertThat(jedis.incr("n")).isEqualTo(1L);
+			assertThat(jedis.del("a", "h", "n")).isEqualTo(3L);
+			assertThat(jedis.dbSize()).isZero();
+			jedis.set("s", "x");
+			assertThatThrownBy(() -> jedis.hset("s", "f", "v")).isInstanceOf(JedisDataException.class)
+					.hasMessageStartingWith("WRONGTYPE");
+		}
+	}
+
+	@Test
+	void delaysReplies() {
+		server.setLatency(50, 0, TimeUnit.MILLISECONDS);
+		try (Jedis jedis = new Jedis(uri)) {
+			long begin = System.nanoTime();
+			jedis.ping();
+			assertThat(System.nanoTime() - begin).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+		}
+	}
+
+	@Test
+	void runsBenchmarkOffline() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("offline-", 4, 0, 500, 0);
+		mtt.start(new SETRoutine(uri, 64, 100));
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		mtt.compute(cc -> {
+			assertThat(cc.getHistogram().getTotalCount()).isEqualTo(2000);
+			assertThat(cc.getTotalErrors()).isZero();
+			return null;
+		});
+		assertThat(server.size()).isEqualTo(100);
+	}
+
+	@Test
+	void closesSharedPool() throws Exception {
+		SETRoutine routine = new SETRoutine(uri, 64, 100);
+		routine.setPoolSize(2);
+		routine.setPoolSize(3);
+		MultiThreadTest mtt = new MultiThreadTest("pooled-", 4, 0, 100, 0);
+		mtt.start(routine);
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		routine.close();
+		try (Jedis jedis = new Jedis(uri)) {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!jedis.info("clients").contains("connected_clients:1\r\n")
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(jedis.info("clients")).contains("connected_clients:1\r\n");
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.redis_benchmark.RoutineOption.Type;
+
+class RoutineRegistryTest {
+	@Test
+	void findsBuiltinTypesThroughServiceLoader() {
+		RoutineRegistry registry = RoutineRegistry.load();
+		assertThat(registry.getProviders()).extracting(RoutineProvider::getName).contains("set", "hset", "mget",
+				"hmget", "multi", "evalsha", "watch", "pubsub", "stream");
+		assertThat(registry.get("mget:100").getOptions()).extracting(RoutineOption::getName).containsExactly("keys");
+	}
+
+	@Test
+	void resolvesPositionalNamedAndSharedValues() {
+		RoutineRegistry registry = new RoutineRegistry();
+		registry.register(new AbstractRoutineProvider("custom", "test type",
+				new RoutineOption("keys", Type.INT, "10", "keys"),
+				new RoutineOption("ttl", Type.LONG, null, "expiry"),
+				new RoutineOption("name", Type.STRING, "a", "name")) {
+			@Override
+			public MultiThreadTest.Routine create(RoutineParameters params) {
+				return new SETRoutine(params.getUri(), 64, params.getInt("keys"));
+			}
+		});
+
+		Map<String, Object> values = registry.resolve("custom:20:name=b", Collections.singletonMap("ttl", "60"));
+		assertThat(values).containsEntry("keys", 20).containsEntry("ttl", 60L).containsEntry("name", "b");
+		RoutineParameters params = new RoutineParameters(URI.create("redis://localhost"), null,
+				registry.resolve("custom", Collections.emptyMap()));
+		assertThat(params.getInt("keys")).isEqualTo(10);
+		assertThat(params.has("ttl")).isFalse();
+
+		assertThatThrownBy(() -> registry.resolve("custom:x", Collections.emptyMap()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> registry.resolve("custom:other=1", Collections.emptyMap()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> registry.resolve("custom:1:2:3:4", Collections.emptyMap()))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
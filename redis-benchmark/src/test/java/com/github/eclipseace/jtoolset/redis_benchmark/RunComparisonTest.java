@@ -0,0 +1,43 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RunComparisonTest {
+	@TempDir
+	Path dir;
+
+	@Test
+	void flagsSignificantRegressionsOnly() throws IOException {
+		RunResult baseline = RunResult.load(write("base.csv", 1000, 1.0));
+		RunResult slower = RunResult.load(write("slower.csv", 800, 1.5));
+		RunResult same = RunResult.load(write("same.csv", 1002, 1.01));
+		assertThat(baseline.getIntervals()).isEqualTo(10);
+
+		RunComparison comparison = new RunComparison(0.95, 0.05);
+		List<String> metrics = Arrays.asList("ops_per_s", "p99_ms");
+		assertThat(comparison.compare(baseline, slower, metrics)).allMatch(RunComparison.Delta::isRegression);
+		assertThat(comparison.compare(baseline, same, metrics)).noneMatch(RunComparison.Delta::isRegression);
+		assertThat(comparison.compare(slower, baseline, metrics)).allMatch(RunComparison.Delta::isSignificant)
+				.noneMatch(RunComparison.Delta::isRegression);
+	}
+
+	private Path write(String name, double ops, double p99) throws IOException {
+		StringBuilder sb = new StringBuilder("elapsed_s,phase,ops_per_s,active_threads,p99_ms\n");
+		sb.append("0.5,warmup,0,4,0\n");
+		for (int i = 0; i < 10; i++) {
+			double noise = i % 2 == 0 ? 1.01 : 0.99;
+			sb.append(i + 1).append(",measure,").append(ops * noise).append(",4,").append(p99 * noise).append('\n');
+		}
+		sb.append("11,measure,100,1,9\n");
+		return Files.write(dir.resolve(name), sb.toString().getBytes());
+	}
+}
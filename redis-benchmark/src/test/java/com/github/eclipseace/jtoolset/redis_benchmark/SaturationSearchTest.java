@@ -0,0 +1,44 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SaturationSearchTest {
+	private RespServer server;
+	private URI uri;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new RespServer(0, 2);
+		server.setLatency(10, 0, TimeUnit.MILLISECONDS);
+		uri = URI.create("redis://127.0.0.1:" + server.getPort());
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void stopsAtTheRateTheThreadsCannotKeepUp() throws Exception {
+		SaturationSearch search = SaturationSearch.parse("rate:10:4", new SETRoutine(uri, 64, 100),
+				TimeUnit.MILLISECONDS.toNanos(100));
+		search.setThreads(1);
+		search.setStepDuration(600, TimeUnit.MILLISECONDS);
+		search.setConfigurer(mtt -> mtt.setWarmupDuration(100, TimeUnit.MILLISECONDS));
+		SaturationSearch.Result result = search.run();
+
+		assertThat(result.getKnee()).isNotNull();
+		assertThat(result.getBreach()).isNotNull();
+		assertThat(result.getKnee().getLoad()).isLessThan(result.getBreach().getLoad()).isLessThanOrEqualTo(100);
+		assertThat(result.getBreach().getLoad()).isLessThanOrEqualTo(160);
+		assertThat(result.getMaxSustainableThroughput()).isPositive().isLessThan(1000 / 10 * 1.1);
+		assertThat(result.getCurve()).isSortedAccordingTo((a, b) -> Double.compare(a.getLoad(), b.getLoad()));
+	}
+}
@@ -0,0 +1,87 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.util.Slowlog;
+
+class ServerMonitorTest {
+
+	@Test
+	void parsesInfo() {
+		ServerMonitor.Sample sample = new ServerMonitor.Sample(ServerMonitor.parseInfo(
+				"# Stats\r\ninstantaneous_ops_per_sec:1234\r\n# Memory\r\nused_memory:1048576\r\n"
+						+ "# Keyspace\r\ndb0:keys=10,expires=1,avg_ttl=0\r\ndb3:keys=5,expires=0,avg_ttl=0\r\n"),
+				0, null, null, null);
+		assertThat(sample.getOpsPerSecond()).isEqualTo(1234);
+		assertThat(sample.getUsedMemory()).isEqualTo(1048576);
+		assertThat(sample.getKeys()).isEqualTo(15);
+	}
+
+	@Test
+	void pollsServer() throws Exception {
+		try (RespServer server = new RespServer(0, 1)) {
+			URI uri = URI.create("redis://127.0.0.1:" + server.getPort());
+			try (ServerMonitor monitor = new ServerMonitor(uri); Jedis jedis = new Jedis(uri)) {
+				jedis.set("a", "1");
+				jedis.set("b", "2");
+				ServerMonitor.Sample sample = monitor.sample();
+				assertThat(sample.getError()).isNull();
+				assertThat(sample.getConnectedClients()).isEqualTo(2);
+				assertThat(sample.getKeys()).isEqualTo(2);
+				assertThat(sample.getSlowlog()).isEmpty();
+			}
+			ServerMonitor unreachable = new ServerMonitor(URI.create("redis://127.0.0.1:1"));
+			assertThat(unreachable.sample().getError()).isNotNull();
+			unreachable.close();
+		}
+	}
+
+	@Test
+	void reportsFirstSlowlogEntryAfterEmptyBaseline() {
+		ServerMonitor monitor = new ServerMonitor(URI.create("redis://127.0.0.1:1"));
+		assertThat(monitor.newEntries(Collections.emptyList())).isEmpty();
+		assertThat(monitor.newEntries(slowlog(0))).extracting(Slowlog::getId).containsExactly(0L);
+		assertThat(monitor.newEntries(slowlog(2, 1, 0))).extracting(Slowlog::getId).containsExactly(2L, 1L);
+		assertThat(monitor.newEntries(slowlog(2, 1))).isEmpty();
+		monitor.close();
+	}
+
+	@Test
+	void keepsIntervalsWhenServerIsSlow() throws Exception {
+		try (RespServer server = new RespServer(0, 1)) {
+			MultiThreadTest mtt = new MultiThreadTest("slow-", 1, 0, 1, 0);
+			IntervalSampler sampler = new IntervalSampler(mtt, 100);
+			ServerMonitor monitor = new ServerMonitor(URI.create("redis://127.0.0.1:" + server.getPort()));
+			sampler.setServerMonitor(monitor);
+			List<IntervalSnapshot> snapshots = new ArrayList<>();
+			sampler.addListener(snapshots::add);
+			sampler.start();
+			server.setLatency(1000, 0, TimeUnit.MILLISECONDS);
+			Thread.sleep(600);
+			sampler.close();
+			monitor.close();
+			assertThat(snapshots.size()).isGreaterThanOrEqualTo(3);
+			assertThat(snapshots.get(0).getServerSample().getError()).startsWith("no reply");
+		}
+	}
+
+	private static List<Slowlog> slowlog(long... ids) {
+		List<Object> entries = new ArrayList<>();
+		for (long id : ids) {
+			entries.add(Arrays.<Object>asList(id, 0L, 10L, Collections.singletonList("GET".getBytes())));
+		}
+		return Slowlog.from(entries);
+	}
+}
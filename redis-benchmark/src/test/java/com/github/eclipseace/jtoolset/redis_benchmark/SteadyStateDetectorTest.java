@@ -0,0 +1,42 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+class SteadyStateDetectorTest {
+	private RespServer server;
+	private URI uri;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new RespServer(0, 2);
+		uri = URI.create("redis://127.0.0.1:" + server.getPort());
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void endsWarmupOnceSteady() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("steady-", 2, 0, 3000, 1);
+		mtt.setWarmupUntilSteady(true);
+		IntervalSampler sampler = new IntervalSampler(mtt, 100);
+		sampler.addListener(new SteadyStateDetector(mtt, 3, 0.5));
+		sampler.start();
+		mtt.start(new SETRoutine(uri, 64, 100));
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		sampler.close();
+		assertThat(mtt.isWarmingUp()).isFalse();
+		assertThat(sampler.getLast().getHistogram().getTotalCount()).isPositive();
+	}
+}
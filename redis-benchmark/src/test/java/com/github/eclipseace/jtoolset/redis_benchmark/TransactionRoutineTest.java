@@ -0,0 +1,76 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+
+import redis.clients.jedis.Jedis;
+
+class TransactionRoutineTest {
+	private RespServer server;
+	private URI uri;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new RespServer(0, 4);
+		uri = URI.create("redis://127.0.0.1:" + server.getPort());
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void watchRetriesConflictsWithoutLosingUpdates() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("watch-", 8, 0, 200, 0);
+		mtt.start(new WATCHRoutine(uri, 1));
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		long aborts = mtt.getCounter(WATCHRoutine.ABORTS_COUNTER).sum();
+		long retries = mtt.getCounter(WATCHRoutine.RETRIES_COUNTER).sum();
+		long errors = mtt.compute(MultiThreadTest.ComputeContext::getTotalErrors);
+		assertThat(aborts).isPositive().isEqualTo(retries + errors);
+		try (Jedis jedis = new Jedis(uri)) {
+			assertThat(Long.parseLong(jedis.get("presstest-watch:00000000000"))).isEqualTo(8 * 200 - errors);
+		}
+	}
+
+	@Test
+	void runsTransactionsAndScripts() throws Exception {
+		MultiThreadTest mtt = new MultiThreadTest("tx-", 2, 0, 100, 0);
+		mtt.start(new MULTIRoutine(uri, new PayloadGenerator(16), 10, 3));
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		mtt.start(new EVALSHARoutine(uri, new PayloadGenerator(16), 1));
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		assertThat(mtt.compute(MultiThreadTest.ComputeContext::getTotalErrors)).isZero();
+		try (Jedis jedis = new Jedis(uri)) {
+			assertThat(jedis.get("presstest-multi:00000000009")).hasSize(16);
+			assertThat(jedis.get("presstest-script-version:00000000000")).isEqualTo("200");
+			assertThat(jedis.get("presstest-script:00000000000")).hasSize(16);
+		}
+	}
+
+	@Test
+	void pipelinesTransactionsButNotWatch() throws Exception {
+		MULTIRoutine multi = new MULTIRoutine(uri, new PayloadGenerator(16), 10, 3);
+		multi.setPipelineSize(4);
+		MultiThreadTest mtt = new MultiThreadTest("tx-", 2, 0, 25, 0);
+		mtt.start(multi);
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		mtt.compute(cc -> {
+			assertThat(cc.getTotalErrors()).isZero();
+			assertThat(cc.getHistogram().getTotalCount()).isEqualTo(200);
+			return null;
+		});
+		assertThatThrownBy(() -> new WATCHRoutine(uri, 1).setPipelineSize(2))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,66 @@
+package com.github.eclipseace.jtoolset.redis_benchmark;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest;
+import com.github.eclipseace.jtoolset.load_harness.MultiThreadTest.RoutineContext;
+
+class WorkloadRoutineTest {
+	@Test
+	void mixesOperationsByWeightWithOwnMetrics() throws Exception {
+		Properties props = new Properties();
+		props.setProperty("operations", "read, fail");
+		props.setProperty("read.type", "read");
+		props.setProperty("read.weight", "3");
+		props.setProperty("fail.type", "fail");
+		WorkloadRoutine workload = WorkloadRoutine.load(props, new PayloadGenerator(16),
+				(type, payloads) -> new StubRoutine("fail".equals(type)));
+		assertThat(workload.getOperations()).extracting(WorkloadRoutine.Operation::getWeight).containsExactly(3.0, 1.0);
+
+		MultiThreadTest mtt = new MultiThreadTest("workload-", 2, 0, 4000, 0);
+		mtt.start(workload);
+		assertThat(mtt.join(30, TimeUnit.SECONDS)).isTrue();
+		mtt.compute(cc -> {
+			long reads = cc.getHistogram(MultiThreadTest.OPERATION_METRIC_PREFIX + "read").getTotalCount();
+			long failures = cc.getCounters().get(MultiThreadTest.OPERATION_ERRORS_PREFIX + "fail");
+			assertThat(reads + failures).isEqualTo(8000);
+			assertThat(cc.getHistogram().getTotalCount()).isEqualTo(reads);
+			assertThat(cc.getTotalErrors()).isEqualTo(failures);
+			assertThat((double) reads / 8000).isCloseTo(0.75, within(0.03));
+			assertThat(cc.getHistogram(MultiThreadTest.OPERATION_METRIC_PREFIX + "fail")).isNull();
+			assertThat(cc.getCounters()).doesNotContainKey(MultiThreadTest.OPERATION_ERRORS_PREFIX + "read");
+			return null;
+		});
+	}
+
+	private static class StubRoutine implements MultiThreadTest.Routine {
+		private final boolean failing;
+
+		private StubRoutine(boolean failing) {
+			this.failing = failing;
+		}
+
+		@Override
+		public void execute(RoutineContext context) {
+			context.run(() -> {
+				if (failing) {
+					throw new IllegalStateException("failed");
+				}
+			});
+		}
+
+		@Override
+		public void beforeLoop() {
+		}
+
+		@Override
+		public void afterLoop() {
+		}
+	}
+}